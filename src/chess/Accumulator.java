@@ -0,0 +1,100 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * The hidden layers of a {@link Network} for one position, one per side. A board with a network attached
+ * ({@link BitBoard#setNetwork(Network)}) updates its accumulator with every piece it adds or removes, so that
+ * {@link Network#evaluate(Accumulator, int)} only has to compute the output layer.
+ * <p>
+ *     The values are 16 bit and may wrap while features are switched on and off, but adding and subtracting the same
+ *     weights always gives back the same values, so taking back a move restores the accumulator exactly.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class Accumulator {
+    private final Network network;
+    // values[perspective][neuron]
+    final short[][] values;
+
+    /**
+     * @param network the network whose first layer is accumulated
+     */
+    public Accumulator(Network network) {
+        this.network = network;
+        values = new short[2][network.hiddenSize];
+    }
+
+    private Accumulator(Accumulator other) {
+        network = other.network;
+        values = new short[][] {other.values[BitBoard.WHITE].clone(), other.values[BitBoard.BLACK].clone()};
+    }
+
+    public Accumulator copy() {
+        return new Accumulator(this);
+    }
+
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Computes the hidden layers of a position from scratch.
+     * @param board the position
+     */
+    public void refresh(BitBoard board) {
+        for(int perspective = BitBoard.WHITE; perspective <= BitBoard.BLACK; perspective++)
+            System.arraycopy(network.featureBiases, 0, values[perspective], 0, network.hiddenSize);
+        for(int square = 0; square < 64; square++) {
+            int piece = board.pieceAt(square);
+            if(piece != BitBoard.NO_PIECE)
+                add(piece, square);
+        }
+    }
+
+    /**
+     * Switches on the features of a piece added to the board.
+     * @param piece BitBoard piece constant
+     * @param square square index, i * 8 + j
+     */
+    public void add(int piece, int square) {
+        int size = network.hiddenSize;
+        short[] weights = network.featureWeights;
+        int white = Network.feature(BitBoard.WHITE, piece, square) * size;
+        int black = Network.feature(BitBoard.BLACK, piece, square) * size;
+        short[] whiteValues = values[BitBoard.WHITE];
+        short[] blackValues = values[BitBoard.BLACK];
+        for(int k = 0; k < size; k++)
+            whiteValues[k] += weights[white + k];
+        for(int k = 0; k < size; k++)
+            blackValues[k] += weights[black + k];
+    }
+
+    /**
+     * Switches off the features of a piece removed from the board.
+     * @param piece BitBoard piece constant
+     * @param square square index, i * 8 + j
+     */
+    public void remove(int piece, int square) {
+        int size = network.hiddenSize;
+        short[] weights = network.featureWeights;
+        int white = Network.feature(BitBoard.WHITE, piece, square) * size;
+        int black = Network.feature(BitBoard.BLACK, piece, square) * size;
+        short[] whiteValues = values[BitBoard.WHITE];
+        short[] blackValues = values[BitBoard.BLACK];
+        for(int k = 0; k < size; k++)
+            whiteValues[k] -= weights[white + k];
+        for(int k = 0; k < size; k++)
+            blackValues[k] -= weights[black + k];
+    }
+
+    /**
+     * @param other another accumulator
+     * @return true if both hold the same values
+     */
+    public boolean matches(Accumulator other) {
+        return Arrays.equals(values[BitBoard.WHITE], other.values[BitBoard.WHITE]) &&
+                Arrays.equals(values[BitBoard.BLACK], other.values[BitBoard.BLACK]);
+    }
+}
@@ -0,0 +1,256 @@
+package chess;
+
+/**
+ * Precomputed attack tables used by {@link BitBoard}.
+ * <p>
+ *     Knight, king and pawn attacks are stored per square. Rook and bishop attacks use magic bitboards: the blockers
+ *     on the relevant squares of a piece are multiplied by a magic number and the top bits of the product index a
+ *     table holding the attack set for that exact occupancy, so a slider costs one mask, one multiplication, one
+ *     shift and one array read regardless of how many squares its rays cover. Queens are the union of both lookups.
+ * </p>
+ * <p>
+ *     The magic numbers were found with a seeded generator ({@link #findMagic}) and are stored as constants, so
+ *     loading the class only fills the tables. Every entry is verified while filling, and a new magic is searched for
+ *     if a stored one does not fit. The time this takes and the memory used by the tables are available through
+ *     {@link #getInitTimeNanos()} and {@link #getTableBytes()}.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public final class Attacks {
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    // PAWN[colour][square] holds the squares a pawn of that colour on that square attacks
+    private static final long[][] PAWN = new long[2][64];
+    // BETWEEN[a][b] holds the squares strictly between a and b if they share a row, column or diagonal, 0 otherwise
+    private static final long[][] BETWEEN = new long[64][64];
+    // LINE[a][b] holds the whole row, column or diagonal through a and b (edge to edge), 0 if there is none
+    private static final long[][] LINE = new long[64][64];
+
+    private static final long[] ROOK_MASK = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    // Magic numbers produced by findMagic, stored so that loading the class only has to fill the tables
+    private static final long[] ROOK_MAGIC = {
+            0x0A80004000801220L, 0x8040004010002008L, 0x2080200010008008L, 0x1100100008210004L,
+            0xC200209084020008L, 0x2100010004000208L, 0x0400081000822421L, 0x0200010422048844L,
+            0x0800800080400024L, 0x0001402000401000L, 0x3000801000802001L, 0x4400800800100083L,
+            0x0904802402480080L, 0x4040800400020080L, 0x0018808042000100L, 0x4040800080004100L,
+            0x0040048001458024L, 0x00A0004000205000L, 0x3100808010002000L, 0x4825010010000820L,
+            0x5004808008000401L, 0x2024818004000A00L, 0x0005808002000100L, 0x2100060004806104L,
+            0x0080400880008421L, 0x4062220600410280L, 0x010A004A00108022L, 0x0000100080080080L,
+            0x0021000500080010L, 0x0044000202001008L, 0x0000100400080102L, 0xC020128200040545L,
+            0x0080002000400040L, 0x0000804000802004L, 0x0000120022004080L, 0x010A386103001001L,
+            0x9010080080800400L, 0x8440020080800400L, 0x0004228824001001L, 0x000000490A000084L,
+            0x0080002000504000L, 0x200020005000C000L, 0x0012088020420010L, 0x0010010080080800L,
+            0x0085001008010004L, 0x0002000204008080L, 0x0040413002040008L, 0x0000304081020004L,
+            0x0080204000800080L, 0x3008804000290100L, 0x1010100080200080L, 0x2008100208028080L,
+            0x5000850800910100L, 0x8402019004680200L, 0x0120911028020400L, 0x0000008044010200L,
+            0x0020850200244012L, 0x0020850200244012L, 0x0000102001040841L, 0x140900040A100021L,
+            0x000200282410A102L, 0x000200282410A102L, 0x000200282410A102L, 0x4048240043802106L
+    };
+    private static final long[] BISHOP_MAGIC = {
+            0x40106000A1160020L, 0x0020010250810120L, 0x2010010220280081L, 0x002806004050C040L,
+            0x0002021018000000L, 0x2001112010000400L, 0x0881010120218080L, 0x1030820110010500L,
+            0x0000120222042400L, 0x2000020404040044L, 0x8000480094208000L, 0x0003422A02000001L,
+            0x000A220210100040L, 0x8004820202226000L, 0x0018234854100800L, 0x0100004042101040L,
+            0x0004001004082820L, 0x0010000810010048L, 0x1014004208081300L, 0x2080818802044202L,
+            0x0040880C00A00100L, 0x0080400200522010L, 0x0001000188180B04L, 0x0080249202020204L,
+            0x1004400004100410L, 0x00013100A0022206L, 0x2148500001040080L, 0x4241080011004300L,
+            0x4020848004002000L, 0x10101380D1004100L, 0x0008004422020284L, 0x01010A1041008080L,
+            0x0808080400082121L, 0x0808080400082121L, 0x0091128200100C00L, 0x0202200802010104L,
+            0x8C0A020200440085L, 0x01A0008080B10040L, 0x0889520080122800L, 0x100902022202010AL,
+            0x04081A0816002000L, 0x0000681208005000L, 0x8170840041008802L, 0x0A00004200810805L,
+            0x0830404408210100L, 0x2602208106006102L, 0x1048300680802628L, 0x2602208106006102L,
+            0x0602010120110040L, 0x0941010801043000L, 0x000040440A210428L, 0x0008240020880021L,
+            0x0400002012048200L, 0x00AC102001210220L, 0x0220021002009900L, 0x84440C080A013080L,
+            0x0001008044200440L, 0x0004C04410841000L, 0x2000500104011130L, 0x1A0C010011C20229L,
+            0x0044800112202200L, 0x0434804908100424L, 0x0300404822C08200L, 0x48081010008A2A80L
+    };
+
+    private static final long INIT_TIME_NANOS;
+    // Seeds per row that lead the generator to valid magics after few attempts
+    private static final long[] SEEDS = {728, 10316, 55013, 32803, 12281, 15100, 16645, 255};
+    private static long seed;
+
+    static {
+        long start = System.nanoTime();
+        for(int sq = 0; sq < 64; sq++) {
+            long bit = 1L << sq;
+            KNIGHT[sq] = BitBoard.knightAttacks(bit);
+            KING[sq] = BitBoard.kingAttacks(bit);
+            PAWN[BitBoard.WHITE][sq] = ((bit << 7) & BitBoard.NOT_FILE_H) | ((bit << 9) & BitBoard.NOT_FILE_A);
+            PAWN[BitBoard.BLACK][sq] = ((bit >>> 9) & BitBoard.NOT_FILE_H) | ((bit >>> 7) & BitBoard.NOT_FILE_A);
+        }
+        for(int sq = 0; sq < 64; sq++) {
+            ROOK_MASK[sq] = relevantOccupancy(sq, true);
+            ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+            ROOK_TABLE[sq] = new long[1 << Long.bitCount(ROOK_MASK[sq])];
+            if(!fillTable(sq, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_SHIFT[sq], ROOK_TABLE[sq], true))
+                ROOK_MAGIC[sq] = findMagic(sq, ROOK_MASK[sq], ROOK_SHIFT[sq], ROOK_TABLE[sq], true);
+
+            BISHOP_MASK[sq] = relevantOccupancy(sq, false);
+            BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+            BISHOP_TABLE[sq] = new long[1 << Long.bitCount(BISHOP_MASK[sq])];
+            if(!fillTable(sq, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_SHIFT[sq], BISHOP_TABLE[sq], false))
+                BISHOP_MAGIC[sq] = findMagic(sq, BISHOP_MASK[sq], BISHOP_SHIFT[sq], BISHOP_TABLE[sq], false);
+        }
+        for(int a = 0; a < 64; a++)
+            for(int b = 0; b < 64; b++) {
+                if(a == b)
+                    continue;
+                long bitB = 1L << b;
+                if((rook(a, 0) & bitB) != 0) {
+                    BETWEEN[a][b] = rook(a, bitB) & rook(b, 1L << a);
+                    LINE[a][b] = (rook(a, 0) & rook(b, 0)) | (1L << a) | bitB;
+                } else if((bishop(a, 0) & bitB) != 0) {
+                    BETWEEN[a][b] = bishop(a, bitB) & bishop(b, 1L << a);
+                    LINE[a][b] = (bishop(a, 0) & bishop(b, 0)) | (1L << a) | bitB;
+                }
+            }
+        INIT_TIME_NANOS = System.nanoTime() - start;
+    }
+
+    private Attacks() {}
+
+    public static long knight(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long king(int square) {
+        return KING[square];
+    }
+
+    /**
+     * @param colour {@link BitBoard#WHITE} or {@link BitBoard#BLACK}
+     * @param square the square of the pawn
+     * @return the squares a pawn of the given colour attacks from the square
+     */
+    public static long pawn(int colour, int square) {
+        return PAWN[colour][square];
+    }
+
+    public static long rook(int square, long occupied) {
+        return ROOK_TABLE[square][(int) (((occupied & ROOK_MASK[square]) * ROOK_MAGIC[square]) >>> ROOK_SHIFT[square])];
+    }
+
+    public static long bishop(int square, long occupied) {
+        return BISHOP_TABLE[square][(int) (((occupied & BISHOP_MASK[square]) * BISHOP_MAGIC[square]) >>> BISHOP_SHIFT[square])];
+    }
+
+    public static long queen(int square, long occupied) {
+        return rook(square, occupied) | bishop(square, occupied);
+    }
+
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    public static long line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    /**
+     * @return the time spent building the tables when the class was loaded, in nanoseconds
+     */
+    public static long getInitTimeNanos() {
+        return INIT_TIME_NANOS;
+    }
+
+    /**
+     * @return the memory used by the attack tables and the magic lookup data, in bytes (array headers excluded)
+     */
+    public static long getTableBytes() {
+        long longs = KNIGHT.length + KING.length + 2 * 64 + 4 * 64 + 2 * 64 * 64;
+        for(int sq = 0; sq < 64; sq++)
+            longs += ROOK_TABLE[sq].length + BISHOP_TABLE[sq].length;
+        return longs * Long.BYTES + 2 * 64 * Integer.BYTES;
+    }
+
+    public static String report() {
+        return String.format("[Attacks] Tables built in %.2f ms, using %d KB",
+                INIT_TIME_NANOS / 1e6, getTableBytes() / 1024);
+    }
+
+    // Squares whose occupancy changes the attacks of a slider on the square. The last square of every ray is left
+    // out, because a piece there does not block anything further.
+    private static long relevantOccupancy(int square, boolean rook) {
+        long mask = 0;
+        int i = square >>> 3, j = square & 7;
+        int[][] directions = rook ? new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}} :
+                new int[][] {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+        for(int[] d : directions) {
+            int i2 = i + d[0], j2 = j + d[1];
+            while(i2 + d[0] >= 0 && i2 + d[0] < 8 && j2 + d[1] >= 0 && j2 + d[1] < 8) {
+                mask |= 1L << BitBoard.square(i2, j2);
+                i2 += d[0];
+                j2 += d[1];
+            }
+        }
+        return mask;
+    }
+
+    // Fills the table for the given magic, returning false if two occupancies with different attacks collide
+    private static boolean fillTable(int square, long mask, long magic, int shift, long[] table, boolean rook) {
+        boolean[] used = new boolean[table.length];
+        long subset = 0;
+        do {
+            long attacks = rook ? BitBoard.rookAttacks(square, subset) : BitBoard.bishopAttacks(square, subset);
+            int index = (int) ((subset * magic) >>> shift);
+            if(used[index] && table[index] != attacks)
+                return false;
+            used[index] = true;
+            table[index] = attacks;
+            // Enumerate every subset of the mask (Carry-Rippler trick)
+            subset = (subset - mask) & mask;
+        } while(subset != 0);
+        return true;
+    }
+
+    private static long findMagic(int square, long mask, int shift, long[] table, boolean rook) {
+        int size = 1 << Long.bitCount(mask);
+        long[] occupancies = new long[size];
+        long[] attacks = new long[size];
+        // Enumerate every subset of the mask (Carry-Rippler trick)
+        long subset = 0;
+        for(int k = 0; k < size; k++) {
+            occupancies[k] = subset;
+            attacks[k] = rook ? BitBoard.rookAttacks(square, subset) : BitBoard.bishopAttacks(square, subset);
+            subset = (subset - mask) & mask;
+        }
+
+        seed = SEEDS[square >>> 3];
+        int[] used = new int[size];
+        int attempt = 0;
+        while(true) {
+            long magic = nextRandom() & nextRandom() & nextRandom();
+            if(Long.bitCount((mask * magic) >>> 56) < 6)
+                continue;
+            attempt++;
+            boolean ok = true;
+            for(int k = 0; k < size && ok; k++) {
+                int index = (int) ((occupancies[k] * magic) >>> shift);
+                if(used[index] != attempt) {
+                    used[index] = attempt;
+                    table[index] = attacks[k];
+                } else if(table[index] != attacks[k])
+                    ok = false;
+            }
+            if(ok)
+                return magic;
+        }
+    }
+
+    private static long nextRandom() {
+        // xorshift64*
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+}
@@ -0,0 +1,287 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of the engine, run from the command line. They use fixed positions, the
+ * {@link Perft.Position standard test positions} and a small suite of tactics, so the numbers are comparable between
+ * versions of the engine and between {@link EngineOptions}.
+ * <ul>
+ *     <li><code>see</code>: static exchange evaluations per second;</li>
+ *     <li><code>eval [hidden size]</code>: evaluations per second of the handcrafted evaluation and of a
+ *     {@link Network} with the given hidden layer;</li>
+ *     <li><code>search [depth]</code>: nodes and time needed to reach a fixed depth;</li>
+ *     <li><code>solve [nodes]</code>: tactics solved within a node limit;</li>
+ *     <li><code>smp [depth]</code>: time to depth and nodes per second with 1, 2, 4, ... threads, up to the number of
+ *     processors or the <code>Threads</code> option, in every {@link EngineOptions.ParallelMode parallel mode}.</li>
+ * </ul>
+ * Engine options are given after the benchmark as <code>Name=value</code>, for example
+ * <code>search 7 NullMove=false</code>.
+ *
+ * @author Daniel Barac
+ */
+public class Benchmark {
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 2000;
+    public static final int DEFAULT_SEARCH_DEPTH = 6;
+    public static final long DEFAULT_SOLVE_NODES = 200_000;
+    public static final int DEFAULT_HIDDEN_SIZE = 256;
+
+    /**
+     * Tactics with a single winning move, as a FEN followed by the move. Most are forced mates.
+     */
+    static final String[][] TACTICS = {
+            {"r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4", "h5f7"},
+            {"6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1", "d1d8"},
+            {"2q3k1/8/8/3N4/8/8/8/6K1 w - - 0 1", "d5e7"},
+            {"r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0", "d5d8"},
+            {"6k1/pp4p1/2p5/2bp4/8/P5Pb/1P3rrP/2BRRN1K b - - 0 1", "g2g1"},
+            {"r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0", "d5f6"},
+            {"1k5r/pP3ppp/3p2b1/1BN1n3/1Q2P3/P1B5/KP3P1P/7q w - - 1 0", "c5a6"},
+            {"3r1r1k/1p3p1p/p2p4/4n1NN/6bQ/1BPq4/P3p1PP/1R5K w - - 0 1", "g5f7"},
+            {"2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1", "g3g6"}
+    };
+
+    /**
+     * Times the static exchange evaluation of every capture of the test positions and of the positions after each of
+     * their moves, so that there are enough exchanges with several attackers.
+     * @return number of evaluations per second
+     */
+    public static double seeBenchmark() {
+        MoveList positions = new MoveList();
+        List<BitBoard> boards = new ArrayList<>();
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard root = BitBoard.fromFen(position.fen);
+            MoveList moves = new MoveList();
+            root.generateMoves(moves);
+            boards.add(root);
+            for(int k = 0; k < moves.size(); k++) {
+                BitBoard child = root.copy();
+                child.makeMove(moves.get(k));
+                boards.add(child);
+            }
+        }
+
+        // The captures of every board, with the index of the board they belong to
+        MoveList captures = new MoveList();
+        MoveList moves = new MoveList();
+        for(int b = 0; b < boards.size(); b++) {
+            moves.clear();
+            boards.get(b).generateCaptures(moves);
+            for(int k = 0; k < moves.size(); k++) {
+                if(PackedMove.isCapture(moves.get(k))) {
+                    captures.add(moves.get(k));
+                    positions.add(b);
+                }
+            }
+        }
+
+        long checksum = 0;
+        for(int round = 0; round < WARMUP_ROUNDS; round++)
+            checksum += seeRound(boards, positions, captures);
+        long start = System.nanoTime();
+        for(int round = 0; round < ROUNDS; round++)
+            checksum += seeRound(boards, positions, captures);
+        long nanos = System.nanoTime() - start;
+        double perSecond = (double) ROUNDS * captures.size() / (nanos / 1e9);
+        System.out.printf("[Benchmark] SEE: %,d captures in %d positions, %,.0f evaluations/s (checksum %d)%n",
+                captures.size(), boards.size(), perSecond, checksum);
+        return perSecond;
+    }
+
+    private static long seeRound(List<BitBoard> boards, MoveList positions, MoveList captures) {
+        long sum = 0;
+        for(int k = 0; k < captures.size(); k++)
+            sum += boards.get(positions.get(k)).see(captures.get(k));
+        return sum;
+    }
+
+    /**
+     * Times the evaluation of the positions after every move of the test positions and of the positions after each
+     * of their moves, with the handcrafted evaluation and with a network. Every evaluation includes playing and taking
+     * back the move, which is where the network updates its accumulator. The network has random weights, which cost
+     * the same to evaluate as trained ones.
+     * @param hiddenSize hidden layer size of the network
+     * @return evaluations per second of the handcrafted evaluation and of the network
+     */
+    public static double[] evaluationBenchmark(int hiddenSize) {
+        Network network = Network.random(hiddenSize, 1);
+        List<BitBoard> boards = new ArrayList<>();
+        List<BitBoard> networkBoards = new ArrayList<>();
+        List<MoveList> moves = new ArrayList<>();
+        int evaluations = 0;
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard root = BitBoard.fromFen(position.fen);
+            MoveList rootMoves = new MoveList();
+            root.generateMoves(rootMoves);
+            List<BitBoard> positions = new ArrayList<>();
+            positions.add(root);
+            for(int k = 0; k < rootMoves.size(); k++) {
+                BitBoard child = root.copy();
+                child.makeMove(rootMoves.get(k));
+                positions.add(child);
+            }
+            for(BitBoard board : positions) {
+                MoveList list = new MoveList();
+                board.generateMoves(list);
+                BitBoard networkBoard = board.copy();
+                networkBoard.setNetwork(network);
+                boards.add(board);
+                networkBoards.add(networkBoard);
+                moves.add(list);
+                evaluations += list.size();
+            }
+        }
+
+        PawnHashTable pawnTable = new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES);
+        double[] perSecond = new double[2];
+        long checksum = 0;
+        for(int evaluator = 0; evaluator < 2; evaluator++) {
+            List<BitBoard> list = evaluator == 0 ? boards : networkBoards;
+            for(int round = 0; round < WARMUP_ROUNDS / 10; round++)
+                checksum += evaluationRound(list, moves, pawnTable);
+            long start = System.nanoTime();
+            for(int round = 0; round < ROUNDS / 10; round++)
+                checksum += evaluationRound(list, moves, pawnTable);
+            long nanos = System.nanoTime() - start;
+            perSecond[evaluator] = (double) ROUNDS / 10 * evaluations / (nanos / 1e9);
+        }
+        System.out.printf("[Benchmark] Evaluation: %,d positions, handcrafted %,.0f/s, network (%d hidden) %,.0f/s " +
+                "(checksum %d)%n", evaluations, perSecond[0], hiddenSize, perSecond[1], checksum);
+        return perSecond;
+    }
+
+    private static long evaluationRound(List<BitBoard> boards, List<MoveList> moves, PawnHashTable pawnTable) {
+        long sum = 0;
+        for(int b = 0; b < boards.size(); b++) {
+            BitBoard board = boards.get(b);
+            MoveList list = moves.get(b);
+            for(int k = 0; k < list.size(); k++) {
+                board.makeMove(list.get(k));
+                Accumulator accumulator = board.getAccumulator();
+                sum += accumulator != null ? accumulator.getNetwork().evaluate(accumulator, board.getSideToMove()) :
+                        Evaluation.evaluate(board, pawnTable);
+                board.unmakeMove();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Searches every standard test position to a fixed depth with a new engine and an empty table.
+     * @param options options of the engines
+     * @param depth depth to search to
+     * @return total number of nodes searched
+     */
+    public static long searchBenchmark(EngineOptions options, int depth) {
+        long totalNodes = 0, totalNanos = 0;
+        for(Perft.Position position : Perft.Position.values()) {
+            ChessAI ai = new ChessAI("WHITE");
+            ai.setEngineOptions(options);
+            long start = System.nanoTime();
+            SearchResult result = ai.search(BitBoard.fromFen(position.fen), SearchLimits.depth(depth));
+            long nanos = System.nanoTime() - start;
+            ai.shutdown();
+            totalNodes += result.getNodes();
+            totalNanos += nanos;
+            System.out.printf("[Benchmark] %-10s depth %d: %-6s %6d cp %,12d nodes %8.0f ms%n", position, depth,
+                    PackedMove.toString(result.getBestMove()), result.getScore(), result.getNodes(), nanos / 1e6);
+        }
+        System.out.printf("[Benchmark] Search to depth %d: %,d nodes in %.0f ms, %,.0f knps%n", depth, totalNodes,
+                totalNanos / 1e6, totalNodes / (totalNanos / 1e6));
+        return totalNodes;
+    }
+
+    /**
+     * Searches every position of {@link #TACTICS} with a node limit and counts the ones where the winning move is
+     * found.
+     * @param options options of the engines
+     * @param nodes node limit of every search
+     * @return number of positions solved
+     */
+    public static int solveBenchmark(EngineOptions options, long nodes) {
+        int solved = 0;
+        for(String[] tactic : TACTICS) {
+            ChessAI ai = new ChessAI("WHITE");
+            ai.setEngineOptions(options);
+            String move = PackedMove.toString(ai.findMove(BitBoard.fromFen(tactic[0]), SearchLimits.nodes(nodes)));
+            ai.shutdown();
+            boolean found = move.equals(tactic[1]);
+            if(found)
+                solved++;
+            System.out.printf("[Benchmark] %-6s %s %s%n", move, found ? "OK  " : "FAIL", tactic[0]);
+        }
+        System.out.printf("[Benchmark] Solved %d of %d with %,d nodes%n", solved, TACTICS.length, nodes);
+        return solved;
+    }
+
+    /**
+     * Searches every standard test position to a fixed depth with 1, 2, 4, ... threads in every parallel mode and
+     * compares the time to depth and the nodes per second with those of a single thread.
+     * @param options options of the engines, except for the number of threads and the parallel mode
+     * @param depth depth to search to
+     * @param maxThreads the largest number of threads, also measured if it is not a power of two
+     */
+    public static void smpBenchmark(EngineOptions options, int depth, int maxThreads) {
+        double singleThreadMillis = smpBenchmark(options, EngineOptions.ParallelMode.LAZY_SMP, 1, depth, 0);
+        for(EngineOptions.ParallelMode mode : EngineOptions.ParallelMode.values()) {
+            for(int threads = 2; threads <= maxThreads; threads = Math.min(threads * 2, maxThreads)) {
+                smpBenchmark(options, mode, threads, depth, singleThreadMillis);
+                if(threads == maxThreads)
+                    break;
+            }
+        }
+    }
+
+    private static double smpBenchmark(EngineOptions options, EngineOptions.ParallelMode mode, int threads, int depth,
+                                       double singleThreadMillis) {
+        EngineOptions threadOptions = options.copy();
+        threadOptions.setThreads(threads);
+        threadOptions.setParallelMode(mode);
+        long nodes = 0, nanos = 0;
+        for(Perft.Position position : Perft.Position.values()) {
+            ChessAI ai = new ChessAI("WHITE");
+            ai.setEngineOptions(threadOptions);
+            long start = System.nanoTime();
+            nodes += ai.search(BitBoard.fromFen(position.fen), SearchLimits.depth(depth)).getNodes();
+            nanos += System.nanoTime() - start;
+            ai.shutdown();
+        }
+        double millis = nanos / 1e6;
+        System.out.printf("[Benchmark] %-8s %3d thread(s), depth %d: %8.0f ms, %,14d nodes, %,8.0f knps, " +
+                "speedup %.2f%n", mode, threads, depth, millis, nodes, nodes / millis,
+                threads == 1 ? 1 : singleThreadMillis / millis);
+        return millis;
+    }
+
+    /**
+     * Runs the benchmark named by the first argument, or all of them.
+     * @param args benchmark, optional depth or node count, then engine options as <code>Name=value</code>
+     */
+    public static void main(String[] args) {
+        String benchmark = args.length > 0 ? args[0] : "all";
+        long parameter = 0;
+        EngineOptions options = new EngineOptions();
+        for(int k = 1; k < args.length; k++) {
+            int separator = args[k].indexOf('=');
+            if(separator < 0)
+                parameter = Long.parseLong(args[k]);
+            else
+                options.setOption(args[k].substring(0, separator), args[k].substring(separator + 1));
+        }
+        System.out.println("[Benchmark] " + options);
+
+        if(benchmark.equals("see") || benchmark.equals("all"))
+            seeBenchmark();
+        if(benchmark.equals("eval") || benchmark.equals("all"))
+            evaluationBenchmark(parameter > 0 ? (int) parameter : DEFAULT_HIDDEN_SIZE);
+        if(benchmark.equals("search") || benchmark.equals("all"))
+            searchBenchmark(options, parameter > 0 ? (int) parameter : DEFAULT_SEARCH_DEPTH);
+        if(benchmark.equals("solve") || benchmark.equals("all"))
+            solveBenchmark(options, parameter > 0 ? parameter : DEFAULT_SOLVE_NODES);
+        if(benchmark.equals("smp") || benchmark.equals("all"))
+            smpBenchmark(options, parameter > 0 ? (int) parameter : DEFAULT_SEARCH_DEPTH,
+                    options.getThreads() > 1 ? options.getThreads() : Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,1013 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Bitboard implementation of the position, meant as a faster replacement for {@link LightBoard}.
+ * <p>
+ *     The position is stored as twelve <code>long</code> piece sets (one bit per square, one set per piece type and
+ *     colour) plus one occupancy set per colour. Squares are numbered <code>i * 8 + j</code>, so bit 0 is the square
+ *     (0, 0) and bit 63 is (7, 7), matching the row/column convention used by {@link Board}. Move generation works on
+ *     whole sets at a time with shifts and masks instead of scanning the 64 squares of a matrix.
+ * </p>
+ * <p>
+ *     Pieces are identified by the constants {@link #WHITE_PAWN} ... {@link #BLACK_KING}; a mailbox array is kept
+ *     alongside the sets so that {@link #getPiece(int, int)} does not need to test twelve sets.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class BitBoard {
+    public static final int WHITE_PAWN = 0;
+    public static final int WHITE_KNIGHT = 1;
+    public static final int WHITE_BISHOP = 2;
+    public static final int WHITE_ROOK = 3;
+    public static final int WHITE_QUEEN = 4;
+    public static final int WHITE_KING = 5;
+    public static final int BLACK_PAWN = 6;
+    public static final int BLACK_KNIGHT = 7;
+    public static final int BLACK_BISHOP = 8;
+    public static final int BLACK_ROOK = 9;
+    public static final int BLACK_QUEEN = 10;
+    public static final int BLACK_KING = 11;
+    public static final int NO_PIECE = 12;
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    // Castling rights, stored as a 4 bit mask
+    public static final int WHITE_KING_SIDE = 1;
+    public static final int WHITE_QUEEN_SIDE = 2;
+    public static final int BLACK_KING_SIDE = 4;
+    public static final int BLACK_QUEEN_SIDE = 8;
+
+    static final long FILE_A = 0x0101010101010101L;
+    static final long FILE_H = FILE_A << 7;
+    static final long NOT_FILE_A = ~FILE_A;
+    static final long NOT_FILE_H = ~FILE_H;
+    static final long NOT_FILE_AB = ~(FILE_A | FILE_A << 1);
+    static final long NOT_FILE_GH = ~(FILE_H | FILE_H >>> 1);
+    static final long RANK_1 = 0xFFL;
+    static final long RANK_3 = RANK_1 << 16;
+    static final long RANK_6 = RANK_1 << 40;
+    static final long RANK_8 = RANK_1 << 56;
+
+    private static final int UNDO_CAPACITY = 256;
+
+    private static final char[] SYMBOLS = {'p', 'n', 'b', 'r', 'q', 'k', 'P', 'N', 'B', 'R', 'Q', 'K', ' '};
+
+    final long[] pieces = new long[12];
+    final long[] occupancy = new long[2];
+    long occupied;
+    final int[] mailbox = new int[64];
+
+    int sideToMove;
+    int castlingRights;
+    // Square a pawn can move to when capturing en passant, -1 if there is none
+    int enPassantSquare;
+    // Zobrist hash of the position, updated incrementally by every change to the board
+    long key;
+    // Zobrist hash of the pawns alone, the key of the pawn hash table
+    long pawnKey;
+    // Terms of the evaluation, updated incrementally like the hash: material plus piece-square values from the point
+    // of view of white, for the middlegame and the endgame, and the game phase (see Evaluation)
+    int middlegameScore;
+    int endgameScore;
+    int phase;
+    // Hidden layers of the attached network, null if there is none
+    Accumulator accumulator;
+
+    // Undo stack: for every move played with makeMove(int) the move itself (which also stores the captured piece),
+    // the castling rights and en passant square before the move, and the hash before the move
+    private int[] undoMoves = new int[UNDO_CAPACITY];
+    private int[] undoStates = new int[UNDO_CAPACITY];
+    private long[] undoKeys = new long[UNDO_CAPACITY];
+    private int undoSize;
+
+    /**
+     * Piece values used by the static exchange evaluation, in centipawns, indexed by piece type (the white piece
+     * constants). The king is worth more than everything else together, so it only ever captures last.
+     */
+    public static final int[] SEE_VALUES = {100, 300, 300, 500, 900, 20000};
+    // Swap list of the static exchange evaluation, reused between calls
+    private final int[] swapList = new int[32];
+
+    /**
+     * Builds the position from an existing {@link Board}, including the side to move, the castling rights and the
+     * en passant square.
+     * @param board the board to convert
+     */
+    public BitBoard(Board board) {
+        this(board.getBoardAsMatrix(), board.turn, board.getCastlingRights(), board.getEnPassantSquare());
+    }
+
+    /**
+     * Builds the position from a matrix in the format returned by {@link Board#getBoardAsMatrix()}. Castling rights
+     * are given to every king and rook still standing on its starting square.
+     * @param matrix char[8][8] matrix, lowercase for white and uppercase for black
+     * @param turn the side to move
+     */
+    public BitBoard(char[][] matrix, PieceColour turn) {
+        for(int sq = 0; sq < 64; sq++)
+            mailbox[sq] = NO_PIECE;
+        for(int i = 0; i < 8; i++)
+            for(int j = 0; j < 8; j++) {
+                int piece = pieceFromSymbol(matrix[i][j]);
+                if(piece != NO_PIECE)
+                    addPiece(piece, square(i, j));
+            }
+        sideToMove = turn == PieceColour.WHITE ? WHITE : BLACK;
+        enPassantSquare = -1;
+        if(mailbox[4] == WHITE_KING) {
+            if(mailbox[7] == WHITE_ROOK) castlingRights |= WHITE_KING_SIDE;
+            if(mailbox[0] == WHITE_ROOK) castlingRights |= WHITE_QUEEN_SIDE;
+        }
+        if(mailbox[60] == BLACK_KING) {
+            if(mailbox[63] == BLACK_ROOK) castlingRights |= BLACK_KING_SIDE;
+            if(mailbox[56] == BLACK_ROOK) castlingRights |= BLACK_QUEEN_SIDE;
+        }
+        // addPiece already hashed the pieces
+        key ^= stateKey();
+    }
+
+    /**
+     * Builds the position from a matrix in the format returned by {@link Board#getBoardAsMatrix()}, with the given
+     * castling rights and en passant square.
+     * @param matrix char[8][8] matrix, lowercase for white and uppercase for black
+     * @param turn the side to move
+     * @param castlingRights mask of {@link #WHITE_KING_SIDE}, {@link #WHITE_QUEEN_SIDE}, {@link #BLACK_KING_SIDE} and
+     *                       {@link #BLACK_QUEEN_SIDE}
+     * @param enPassantSquare square a pawn can move to when capturing en passant, -1 if there is none
+     */
+    public BitBoard(char[][] matrix, PieceColour turn, int castlingRights, int enPassantSquare) {
+        this(matrix, turn);
+        key ^= stateKey();
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+        key ^= stateKey();
+    }
+
+    public BitBoard() {
+        this(new Board());
+    }
+
+    private BitBoard(BitBoard other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, 12);
+        System.arraycopy(other.mailbox, 0, mailbox, 0, 64);
+        occupancy[WHITE] = other.occupancy[WHITE];
+        occupancy[BLACK] = other.occupancy[BLACK];
+        occupied = other.occupied;
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        enPassantSquare = other.enPassantSquare;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        middlegameScore = other.middlegameScore;
+        endgameScore = other.endgameScore;
+        phase = other.phase;
+        accumulator = other.accumulator == null ? null : other.accumulator.copy();
+    }
+
+    /**
+     * Builds a position from a FEN string. The halfmove clock and move number fields are optional and ignored.
+     * @param fen the position in Forsyth-Edwards Notation
+     * @return the position
+     * @throws IllegalArgumentException if the string is not a valid FEN
+     */
+    public static BitBoard fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        String[] rows = fields[0].split("/");
+        if(fields.length < 2 || rows.length != 8)
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        char[][] matrix = new char[8][8];
+        for(int r = 0; r < 8; r++) {
+            int i = 7 - r;
+            int j = 0;
+            for(char c : rows[r].toCharArray()) {
+                if(Character.isDigit(c)) {
+                    for(int k = 0; k < c - '0' && j < 8; k++)
+                        matrix[i][j++] = ' ';
+                } else if(j < 8) {
+                    // FEN uses uppercase for white, the matrix format uses lowercase for white
+                    matrix[i][j++] = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+                }
+            }
+            if(j != 8)
+                throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        BitBoard board = new BitBoard(matrix, fields[1].equals("b") ? PieceColour.BLACK : PieceColour.WHITE);
+        board.key ^= board.stateKey();
+        board.castlingRights = 0;
+        if(fields.length > 2) {
+            for(char c : fields[2].toCharArray()) {
+                switch (c) {
+                    case 'K' -> board.castlingRights |= WHITE_KING_SIDE;
+                    case 'Q' -> board.castlingRights |= WHITE_QUEEN_SIDE;
+                    case 'k' -> board.castlingRights |= BLACK_KING_SIDE;
+                    case 'q' -> board.castlingRights |= BLACK_QUEEN_SIDE;
+                }
+            }
+        }
+        if(fields.length > 3 && !fields[3].equals("-"))
+            board.enPassantSquare = square(fields[3].charAt(1) - '1', fields[3].charAt(0) - 'a');
+        board.key ^= board.stateKey();
+        return board;
+    }
+
+    // The part of the Zobrist key that does not depend on the pieces: the side to move, the castling rights and the
+    // en passant file, as in Zobrist.compute
+    private long stateKey() {
+        long state = Zobrist.CASTLING[castlingRights];
+        if(sideToMove == BLACK)
+            state ^= Zobrist.SIDE;
+        if(enPassantSquare >= 0)
+            state ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        return state;
+    }
+
+    /**
+     * @return the position in Forsyth-Edwards Notation, with the halfmove clock and move number set to "0 1"
+     */
+    public String toFen() {
+        StringBuilder out = new StringBuilder();
+        for(int i = 7; i >= 0; i--) {
+            int empty = 0;
+            for(int j = 0; j < 8; j++) {
+                char c = getPiece(i, j);
+                if(c == ' ') {
+                    empty++;
+                    continue;
+                }
+                if(empty > 0)
+                    out.append(empty);
+                empty = 0;
+                out.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+            }
+            if(empty > 0)
+                out.append(empty);
+            if(i > 0)
+                out.append('/');
+        }
+        out.append(sideToMove == WHITE ? " w " : " b ");
+        if(castlingRights == 0)
+            out.append('-');
+        if((castlingRights & WHITE_KING_SIDE) != 0) out.append('K');
+        if((castlingRights & WHITE_QUEEN_SIDE) != 0) out.append('Q');
+        if((castlingRights & BLACK_KING_SIDE) != 0) out.append('k');
+        if((castlingRights & BLACK_QUEEN_SIDE) != 0) out.append('q');
+        out.append(' ');
+        if(enPassantSquare < 0)
+            out.append('-');
+        else
+            out.append((char) ('a' + (enPassantSquare & 7))).append((enPassantSquare >>> 3) + 1);
+        return out.append(" 0 1").toString();
+    }
+
+    /**
+     * Returns all legal moves for the side to move, in the same format as {@link LightBoard#getAllLegalMoves()}.
+     * Promotions are listed once, as promotions to a queen.
+     * <p>
+     *     A move is represented as an array of int with 4 elements, with source(int[0], int[1]) and dest(int[2], int[3]).
+     * </p>
+     * @return  an ArrayList of int[4].
+     */
+    public ArrayList<int[]> getAllLegalMoves() {
+        MoveList moves = new MoveList();
+        generateMoves(moves);
+        ArrayList<int[]> result = new ArrayList<>(moves.size());
+        for(int k = 0; k < moves.size(); k++) {
+            int move = moves.get(k);
+            if(PackedMove.isPromotion(move) && PackedMove.promotion(move) % 6 != WHITE_QUEEN)
+                continue;
+            result.add(new int[] {
+                    PackedMove.fromRow(move), PackedMove.fromColumn(move),
+                    PackedMove.toRow(move), PackedMove.toColumn(move)
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Appends all legal moves for the side to move to the list, packed as described in {@link PackedMove}. The list
+     * is not cleared first.
+     * <p>
+     *     Legality is established without playing the moves: the pieces giving check and the pieces pinned to the
+     *     king are computed once per position. With two checkers only king moves are generated; with one, every
+     *     other piece is limited to capturing the checker or blocking the ray between it and the king. A pinned piece
+     *     is limited to the line through its king and the pinning piece. King moves are tested against the enemy
+     *     attacks with the king removed from the board, so that the king cannot step back along a checking ray. En
+     *     passant, the only move that removes two pieces from a row, is checked against the sliders seen from the
+     *     king once both pawns are gone.
+     * </p>
+     * @param list the list the moves are added to
+     */
+    public void generateMoves(MoveList list) {
+        generate(list, false);
+    }
+
+    /**
+     * Appends the legal captures, en passant captures and promotions of the side to move to the list, for the
+     * quiescence search. Quiet moves, including castling and quiet king moves, are left out, so when the side to move
+     * is in check the list does not hold every evasion.
+     * @param list the list the moves are added to
+     */
+    public void generateCaptures(MoveList list) {
+        generate(list, true);
+    }
+
+    // Quiet moves are masked out with quietMask when only captures and promotions are wanted
+    private void generate(MoveList list, boolean capturesOnly) {
+        int us = sideToMove;
+        int them = us ^ 1;
+        int offset = us * 6;
+        long own = occupancy[us];
+        long enemies = occupancy[them];
+        long king = pieces[WHITE_KING + offset];
+        int kingSquare = Long.numberOfTrailingZeros(king);
+
+        long checkers = 0;
+        long pinned = 0;
+        if(king != 0) {
+            checkers = attackersTo(kingSquare, them, occupied);
+            pinned = pinnedPieces(kingSquare, us);
+
+            // King moves, with the king taken off the board so that sliders see through it
+            long withoutKing = occupied ^ king;
+            for(long set = Attacks.king(kingSquare) & (capturesOnly ? enemies : ~own); set != 0; set &= set - 1) {
+                int to = Long.numberOfTrailingZeros(set);
+                if(attackersTo(to, them, withoutKing) == 0)
+                    list.add(PackedMove.encode(kingSquare, to, WHITE_KING + offset, mailbox[to], 0, PackedMove.QUIET));
+            }
+            if(Long.bitCount(checkers) > 1)
+                return;
+            if(checkers == 0 && !capturesOnly)
+                addCastlingMoves(list, kingSquare, us);
+        }
+
+        // Squares the other pieces may move to: anywhere when not in check, otherwise the checker or a square
+        // between it and the king
+        long checkMask = ~0L;
+        if(checkers != 0)
+            checkMask = checkers | Attacks.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+        long targets = (capturesOnly ? enemies : ~own) & checkMask;
+        long empty = ~occupied;
+        // Pawn pushes are only kept when they promote
+        long pushMask = capturesOnly ? (us == WHITE ? RANK_8 : RANK_1) : ~0L;
+
+        // Pawns that are not pinned, generated set-wise
+        long pawns = pieces[WHITE_PAWN + offset] & ~pinned;
+        if(us == WHITE) {
+            long single = (pawns << 8) & empty;
+            addPawnMoves(list, single & checkMask & pushMask, -8, 0);
+            addPawnMoves(list, ((single & RANK_3) << 8) & empty & checkMask & pushMask, -16, PackedMove.DOUBLE_PUSH);
+            addPawnMoves(list, (pawns << 7) & NOT_FILE_H & enemies & checkMask, -7, 0);
+            addPawnMoves(list, (pawns << 9) & NOT_FILE_A & enemies & checkMask, -9, 0);
+        } else {
+            long single = (pawns >>> 8) & empty;
+            addPawnMoves(list, single & checkMask & pushMask, 8, 0);
+            addPawnMoves(list, ((single & RANK_6) >>> 8) & empty & checkMask & pushMask, 16, PackedMove.DOUBLE_PUSH);
+            addPawnMoves(list, (pawns >>> 9) & NOT_FILE_H & enemies & checkMask, 9, 0);
+            addPawnMoves(list, (pawns >>> 7) & NOT_FILE_A & enemies & checkMask, 7, 0);
+        }
+        // Pinned pawns, one at a time, limited to the line of the pin
+        for(long set = pieces[WHITE_PAWN + offset] & pinned; set != 0; set &= set - 1) {
+            int from = Long.numberOfTrailingZeros(set);
+            long bit = 1L << from;
+            long single = (us == WHITE ? bit << 8 : bit >>> 8) & empty;
+            long dbl = (us == WHITE ? (single & RANK_3) << 8 : (single & RANK_6) >>> 8) & empty;
+            long pin = Attacks.line(kingSquare, from) & checkMask & pushMask;
+            addPawnMoves(list, single & pin, us == WHITE ? -8 : 8, 0);
+            addPawnMoves(list, dbl & pin, us == WHITE ? -16 : 16, PackedMove.DOUBLE_PUSH);
+            for(long captures = Attacks.pawn(us, from) & enemies & Attacks.line(kingSquare, from) & checkMask;
+                captures != 0; captures &= captures - 1) {
+                int to = Long.numberOfTrailingZeros(captures);
+                addPawnMoves(list, 1L << to, from - to, 0);
+            }
+        }
+        if(enPassantSquare >= 0)
+            addEnPassantMoves(list, kingSquare, king != 0);
+
+        for(long set = pieces[WHITE_KNIGHT + offset] & ~pinned; set != 0; set &= set - 1) {
+            int from = Long.numberOfTrailingZeros(set);
+            addMoves(list, from, Attacks.knight(from) & targets);
+        }
+        for(long set = pieces[WHITE_BISHOP + offset] | pieces[WHITE_QUEEN + offset]; set != 0; set &= set - 1) {
+            int from = Long.numberOfTrailingZeros(set);
+            long moves = Attacks.bishop(from, occupied) & targets;
+            if((pinned & (1L << from)) != 0)
+                moves &= Attacks.line(kingSquare, from);
+            addMoves(list, from, moves);
+        }
+        for(long set = pieces[WHITE_ROOK + offset] | pieces[WHITE_QUEEN + offset]; set != 0; set &= set - 1) {
+            int from = Long.numberOfTrailingZeros(set);
+            long moves = Attacks.rook(from, occupied) & targets;
+            if((pinned & (1L << from)) != 0)
+                moves &= Attacks.line(kingSquare, from);
+            addMoves(list, from, moves);
+        }
+    }
+
+    // En passant captures are checked by looking at the king's attackers once both pawns have left their squares,
+    // which covers the pawn being pinned, the captured pawn being the checker and the horizontal pin where the two
+    // pawns are the only pieces between the king and a rook or queen.
+    private void addEnPassantMoves(MoveList list, int kingSquare, boolean hasKing) {
+        int us = sideToMove;
+        int them = us ^ 1;
+        int pawn = WHITE_PAWN + us * 6;
+        int captured = pawn == WHITE_PAWN ? BLACK_PAWN : WHITE_PAWN;
+        int capturedSquare = enPassantSquare + (us == WHITE ? -8 : 8);
+        // Our pawns that attack the en passant square are the squares an enemy pawn there would attack
+        for(long set = Attacks.pawn(them, enPassantSquare) & pieces[pawn]; set != 0; set &= set - 1) {
+            int from = Long.numberOfTrailingZeros(set);
+            if(hasKing) {
+                long after = (occupied ^ (1L << from) ^ (1L << capturedSquare)) | (1L << enPassantSquare);
+                long attackers = attackersTo(kingSquare, them, after) & ~(1L << capturedSquare);
+                if(attackers != 0)
+                    continue;
+            }
+            list.add(PackedMove.encode(from, enPassantSquare, pawn, captured, 0, PackedMove.EN_PASSANT));
+        }
+    }
+
+    // Pieces of the given colour that are the only piece between their king and an enemy slider
+    private long pinnedPieces(int kingSquare, int us) {
+        int them = us ^ 1;
+        long enemyQueens = pieces[WHITE_QUEEN + them * 6];
+        long snipers = (Attacks.rook(kingSquare, occupancy[them]) & (pieces[WHITE_ROOK + them * 6] | enemyQueens)) |
+                (Attacks.bishop(kingSquare, occupancy[them]) & (pieces[WHITE_BISHOP + them * 6] | enemyQueens));
+        long pinned = 0;
+        for(; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Attacks.between(kingSquare, Long.numberOfTrailingZeros(snipers)) & occupied;
+            if(Long.bitCount(blockers) == 1)
+                pinned |= blockers & occupancy[us];
+        }
+        return pinned;
+    }
+    private void addCastlingMoves(MoveList list, int king, int us) {
+        int kingSide = us == WHITE ? WHITE_KING_SIDE : BLACK_KING_SIDE;
+        int queenSide = us == WHITE ? WHITE_QUEEN_SIDE : BLACK_QUEEN_SIDE;
+        int home = us == WHITE ? 4 : 60;
+        if(king != home || (castlingRights & (kingSide | queenSide)) == 0 || isSquareAttacked(home, us ^ 1))
+            return;
+        int piece = WHITE_KING + us * 6;
+        if((castlingRights & kingSide) != 0 && (occupied & (3L << (home + 1))) == 0 &&
+                !isSquareAttacked(home + 1, us ^ 1) && !isSquareAttacked(home + 2, us ^ 1))
+            list.add(PackedMove.encode(home, home + 2, piece, NO_PIECE, 0, PackedMove.CASTLING));
+        if((castlingRights & queenSide) != 0 && (occupied & (7L << (home - 3))) == 0 &&
+                !isSquareAttacked(home - 1, us ^ 1) && !isSquareAttacked(home - 2, us ^ 1))
+            list.add(PackedMove.encode(home, home - 2, piece, NO_PIECE, 0, PackedMove.CASTLING));
+    }
+
+    // Pawn moves to every square of the set, coming from the square at 'delta' from the destination. Moves to the
+    // last row are expanded into the four promotions.
+    private void addPawnMoves(MoveList list, long destinations, int delta, int flags) {
+        int piece = WHITE_PAWN + sideToMove * 6;
+        for(; destinations != 0; destinations &= destinations - 1) {
+            int to = Long.numberOfTrailingZeros(destinations);
+            int from = to + delta;
+            int captured = flags == PackedMove.EN_PASSANT ? (sideToMove == WHITE ? BLACK_PAWN : WHITE_PAWN) : mailbox[to];
+            if(to >= 56 || to < 8) {
+                for(int promotion = WHITE_QUEEN; promotion >= WHITE_KNIGHT; promotion--)
+                    list.add(PackedMove.encode(from, to, piece, captured, promotion + sideToMove * 6, flags));
+            } else
+                list.add(PackedMove.encode(from, to, piece, captured, 0, flags));
+        }
+    }
+
+    private void addMoves(MoveList list, int from, long destinations) {
+        int piece = mailbox[from];
+        for(; destinations != 0; destinations &= destinations - 1) {
+            int to = Long.numberOfTrailingZeros(destinations);
+            list.add(PackedMove.encode(from, to, piece, mailbox[to], 0, PackedMove.QUIET));
+        }
+    }
+
+    /**
+     * Executes the specified move. Like {@link LightBoard#makeMove(int, int, int, int)}, this method
+     * <mark>DOES NOT</mark> check if the move is correct. Castling is recognised by the king moving two columns, en
+     * passant by a pawn moving diagonally to the en passant square, and pawns reaching the last row are promoted to
+     * queens.
+     * @param i0 piece row
+     * @param j0 piece column
+     * @param i1 destination row
+     * @param j1 destination column
+     */
+    public void makeMove(int i0, int j0, int i1, int j1) {
+        makeMove(toPackedMove(i0, j0, i1, j1, WHITE_QUEEN));
+    }
+
+    /**
+     * Builds the packed move for a piece moving between the two squares in the current position, filling in the
+     * moving and captured pieces and the flags.
+     * @param i0 piece row
+     * @param j0 piece column
+     * @param i1 destination row
+     * @param j1 destination column
+     * @param promotion piece type a pawn reaching the last row promotes to, as a white piece constant
+     * @return the packed move
+     */
+    public int toPackedMove(int i0, int j0, int i1, int j1, int promotion) {
+        int from = square(i0, j0);
+        int to = square(i1, j1);
+        int piece = mailbox[from];
+        int captured = mailbox[to];
+        int flags = PackedMove.QUIET;
+        int promoted = 0;
+        if(piece == WHITE_PAWN || piece == BLACK_PAWN) {
+            if(to == enPassantSquare) {
+                flags = PackedMove.EN_PASSANT;
+                captured = piece == WHITE_PAWN ? BLACK_PAWN : WHITE_PAWN;
+            } else if(Math.abs(to - from) == 16)
+                flags = PackedMove.DOUBLE_PUSH;
+            if(i1 == 0 || i1 == 7)
+                promoted = promotion + (piece == WHITE_PAWN ? 0 : 6);
+        } else if((piece == WHITE_KING || piece == BLACK_KING) && Math.abs(j1 - j0) == 2)
+            flags = PackedMove.CASTLING;
+        return PackedMove.encode(from, to, piece, captured, promoted, flags);
+    }
+
+    /**
+     * Executes a packed move and records what is needed to take it back with {@link #unmakeMove()}. This method
+     * <mark>DOES NOT</mark> check if the move is correct.
+     * @param move packed move, as produced by {@link #generateMoves(MoveList)}
+     */
+    public void makeMove(int move) {
+        if(undoSize == undoMoves.length)
+            growUndoStack();
+        undoMoves[undoSize] = move;
+        undoStates[undoSize] = castlingRights | (enPassantSquare + 1) << 4;
+        undoKeys[undoSize] = key;
+        undoSize++;
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int piece = PackedMove.piece(move);
+        int captured = PackedMove.captured(move);
+        int flags = PackedMove.flags(move);
+
+        if(flags == PackedMove.EN_PASSANT)
+            removePiece(captured, to + (piece == WHITE_PAWN ? -8 : 8));
+        else if(captured != NO_PIECE)
+            removePiece(captured, to);
+        removePiece(piece, from);
+        addPiece(PackedMove.isPromotion(move) ? PackedMove.promotion(move) : piece, to);
+
+        if(flags == PackedMove.CASTLING) {
+            int rook = piece == WHITE_KING ? WHITE_ROOK : BLACK_ROOK;
+            boolean kingSide = to > from;
+            removePiece(rook, kingSide ? from + 3 : from - 4);
+            addPiece(rook, kingSide ? from + 1 : from - 1);
+        }
+
+        if(enPassantSquare >= 0)
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        enPassantSquare = flags == PackedMove.DOUBLE_PUSH ? (from + to) >>> 1 : -1;
+        if(enPassantSquare >= 0)
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        key ^= Zobrist.CASTLING[castlingRights];
+        castlingRights &= castlingMask(from) & castlingMask(to);
+        key ^= Zobrist.CASTLING[castlingRights];
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+        if(Zobrist.debug) {
+            Zobrist.verify(key, Zobrist.compute(this), "makeMove " + PackedMove.toString(move));
+            Zobrist.verify(pawnKey, Zobrist.computePawnKey(this), "makeMove " + PackedMove.toString(move));
+        }
+    }
+
+    /**
+     * Takes back the last move played with {@link #makeMove(int)}, restoring the position exactly as it was,
+     * including the castling rights, the en passant square and the hash.
+     */
+    public void unmakeMove() {
+        undoSize--;
+        int move = undoMoves[undoSize];
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int piece = PackedMove.piece(move);
+        int captured = PackedMove.captured(move);
+        int flags = PackedMove.flags(move);
+
+        if(flags == PackedMove.CASTLING) {
+            int rook = piece == WHITE_KING ? WHITE_ROOK : BLACK_ROOK;
+            boolean kingSide = to > from;
+            removePiece(rook, kingSide ? from + 1 : from - 1);
+            addPiece(rook, kingSide ? from + 3 : from - 4);
+        }
+        removePiece(PackedMove.isPromotion(move) ? PackedMove.promotion(move) : piece, to);
+        addPiece(piece, from);
+        if(flags == PackedMove.EN_PASSANT)
+            addPiece(captured, to + (piece == WHITE_PAWN ? -8 : 8));
+        else if(captured != NO_PIECE)
+            addPiece(captured, to);
+
+        int state = undoStates[undoSize];
+        castlingRights = state & 0xF;
+        enPassantSquare = (state >>> 4) - 1;
+        sideToMove ^= 1;
+        key = undoKeys[undoSize];
+        if(Zobrist.debug) {
+            Zobrist.verify(key, Zobrist.compute(this), "unmakeMove " + PackedMove.toString(move));
+            Zobrist.verify(pawnKey, Zobrist.computePawnKey(this), "unmakeMove " + PackedMove.toString(move));
+        }
+    }
+
+    /**
+     * Passes the turn to the other side without moving a piece, for null move pruning. The position is not legal if
+     * the side to move is in check. Take it back with {@link #unmakeNullMove()}.
+     */
+    public void makeNullMove() {
+        if(undoSize == undoMoves.length)
+            growUndoStack();
+        undoMoves[undoSize] = PackedMove.NULL_MOVE;
+        undoStates[undoSize] = castlingRights | (enPassantSquare + 1) << 4;
+        undoKeys[undoSize] = key;
+        undoSize++;
+
+        if(enPassantSquare >= 0)
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        enPassantSquare = -1;
+        sideToMove ^= 1;
+        key ^= Zobrist.SIDE;
+    }
+
+    /**
+     * Takes back the last null move played with {@link #makeNullMove()}.
+     */
+    public void unmakeNullMove() {
+        undoSize--;
+        enPassantSquare = (undoStates[undoSize] >>> 4) - 1;
+        sideToMove ^= 1;
+        key = undoKeys[undoSize];
+    }
+
+    /**
+     * Counts the pieces of a side other than pawns and the king. With few of them zugzwang is common, and passing the
+     * move is not a safe guess of a lower bound.
+     * @param colour {@link #WHITE} or {@link #BLACK}
+     * @return the number of knights, bishops, rooks and queens of the side
+     */
+    public int countNonPawnPieces(int colour) {
+        int offset = colour * 6;
+        return Long.bitCount(pieces[WHITE_KNIGHT + offset] | pieces[WHITE_BISHOP + offset] |
+                pieces[WHITE_ROOK + offset] | pieces[WHITE_QUEEN + offset]);
+    }
+
+    /**
+     * @return the number of moves that can currently be taken back with {@link #unmakeMove()}
+     */
+    public int getUndoSize() {
+        return undoSize;
+    }
+
+    private void growUndoStack() {
+        int capacity = undoMoves.length * 2;
+        int[] moves = new int[capacity];
+        int[] states = new int[capacity];
+        long[] keys = new long[capacity];
+        System.arraycopy(undoMoves, 0, moves, 0, undoSize);
+        System.arraycopy(undoStates, 0, states, 0, undoSize);
+        System.arraycopy(undoKeys, 0, keys, 0, undoSize);
+        undoMoves = moves;
+        undoStates = states;
+        undoKeys = keys;
+    }
+
+    // Castling rights that survive a move from or to the given square
+    private static int castlingMask(int square) {
+        switch (square) {
+            case 0: return ~WHITE_QUEEN_SIDE;
+            case 4: return ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+            case 7: return ~WHITE_KING_SIDE;
+            case 56: return ~BLACK_QUEEN_SIDE;
+            case 60: return ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+            case 63: return ~BLACK_KING_SIDE;
+            default: return ~0;
+        }
+    }
+
+    /**
+     * Copies the position. The undo stack is not copied, so moves played before the copy cannot be taken back on it.
+     * @return a new BitBoard with the same position
+     */
+    public BitBoard copy() {
+        return new BitBoard(this);
+    }
+
+    /**
+     * Returns the piece on the square as a char, in the format used by {@link LightBoard}.
+     * @param i row
+     * @param j column
+     * @return ' ' for an empty square, lowercase for white pieces and uppercase for black pieces
+     */
+    public char getPiece(int i, int j) {
+        return SYMBOLS[mailbox[square(i, j)]];
+    }
+
+    /**
+     * Returns the piece on the square as one of the piece constants of this class.
+     * @param square square index, i * 8 + j
+     * @return {@link #WHITE_PAWN} ... {@link #BLACK_KING}, or {@link #NO_PIECE}
+     */
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    public long getPieces(int piece) {
+        return pieces[piece];
+    }
+
+    public long getOccupancy(int colour) {
+        return occupancy[colour];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    public PieceColour getTurn() {
+        return sideToMove == WHITE ? PieceColour.WHITE : PieceColour.BLACK;
+    }
+
+    public int getSideToMove() {
+        return sideToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * @return the Zobrist hash of the position
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return the Zobrist hash of the pawns alone, which only changes when a pawn moves, is captured or promotes
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * @return material and piece-square values of the middlegame, white minus black, see {@link Evaluation}
+     */
+    public int getMiddlegameScore() {
+        return middlegameScore;
+    }
+
+    /**
+     * @return material and piece-square values of the endgame, white minus black, see {@link Evaluation}
+     */
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * @return the game phase, {@link Evaluation#MAX_PHASE} with all the pieces on the board and 0 with only kings and
+     *         pawns
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Attaches a network to the board: its accumulator is computed for the position and from then on updated by every
+     * move played and taken back, and by copies of the board.
+     * @param network the network, or null to detach it
+     */
+    public void setNetwork(Network network) {
+        accumulator = network == null ? null : new Accumulator(network);
+        if(accumulator != null)
+            accumulator.refresh(this);
+    }
+
+    /**
+     * @return the accumulator of the attached network, or null if there is none
+     */
+    public Accumulator getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * Checks if any piece of the given colour attacks the square. The attacks are looked up outward from the square,
+     * so the cost does not depend on the number of pieces on the board.
+     * @param square square index, i * 8 + j
+     * @param byColour {@link #WHITE} or {@link #BLACK}
+     * @return true if the square is attacked
+     */
+    public boolean isSquareAttacked(int square, int byColour) {
+        return attackersTo(square, byColour, occupied) != 0;
+    }
+
+    /**
+     * Returns the pieces of the given colour that attack the square, with sliders blocked by the given occupancy
+     * instead of the real one.
+     * @param square square index, i * 8 + j
+     * @param byColour {@link #WHITE} or {@link #BLACK}
+     * @param occupied the occupied squares to use for the slider attacks
+     * @return the set of attackers
+     */
+    public long attackersTo(int square, int byColour, long occupied) {
+        int offset = byColour * 6;
+        long queens = pieces[WHITE_QUEEN + offset];
+        // A pawn of byColour attacks the square if a pawn of the other colour on the square would attack it
+        return (Attacks.pawn(byColour ^ 1, square) & pieces[WHITE_PAWN + offset]) |
+                (Attacks.knight(square) & pieces[WHITE_KNIGHT + offset]) |
+                (Attacks.king(square) & pieces[WHITE_KING + offset]) |
+                (Attacks.bishop(square, occupied) & (pieces[WHITE_BISHOP + offset] | queens)) |
+                (Attacks.rook(square, occupied) & (pieces[WHITE_ROOK + offset] | queens));
+    }
+
+    /**
+     * Checks if the king of the side to move is attacked.
+     * @return true if the side to move is in check
+     */
+    public boolean isCheck() {
+        long king = pieces[WHITE_KING + sideToMove * 6];
+        return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), sideToMove ^ 1);
+    }
+
+    /**
+     * Static exchange evaluation: the material the side to move wins or loses on the destination square of the move
+     * if both sides keep recapturing there with their least valuable piece, each side stopping when capturing again
+     * would lose material. Sliders that are uncovered when a piece in front of them captures (x-rays) join the
+     * exchange. Pins and checks are ignored.
+     * @param move a legal move of the side to move, packed as described in {@link PackedMove}
+     * @return the material balance of the exchange in centipawns, see {@link #SEE_VALUES}
+     */
+    public int see(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int us = sideToMove;
+        long occupied = this.occupied;
+        // The piece standing on the square, which the next capture wins
+        int onSquare = PackedMove.piece(move) % 6;
+        swapList[0] = PackedMove.isCapture(move) ? SEE_VALUES[PackedMove.captured(move) % 6] : 0;
+        if(PackedMove.isPromotion(move)) {
+            onSquare = PackedMove.promotion(move) % 6;
+            swapList[0] += SEE_VALUES[onSquare] - SEE_VALUES[WHITE_PAWN];
+        }
+        if(PackedMove.flags(move) == PackedMove.EN_PASSANT)
+            occupied ^= 1L << (to + (us == WHITE ? -8 : 8));
+
+        long diagonal = pieces[WHITE_BISHOP] | pieces[BLACK_BISHOP] | pieces[WHITE_QUEEN] | pieces[BLACK_QUEEN];
+        long straight = pieces[WHITE_ROOK] | pieces[BLACK_ROOK] | pieces[WHITE_QUEEN] | pieces[BLACK_QUEEN];
+        long attackers = attackersTo(to, WHITE, occupied) | attackersTo(to, BLACK, occupied);
+        long fromBit = 1L << from;
+        int depth = 0;
+        while(fromBit != 0) {
+            depth++;
+            // What the side capturing next gets if the piece just moved to the square is taken
+            swapList[depth] = SEE_VALUES[onSquare] - swapList[depth - 1];
+            occupied ^= fromBit;
+            // Sliders behind the piece that just captured now see the square
+            attackers |= (Attacks.bishop(to, occupied) & diagonal) | (Attacks.rook(to, occupied) & straight);
+            attackers &= occupied;
+
+            // The least valuable attacker of the side to capture next
+            int offset = (us ^ (depth & 1)) * 6;
+            fromBit = 0;
+            for(int piece = WHITE_PAWN; piece <= WHITE_KING; piece++) {
+                long set = attackers & pieces[piece + offset];
+                if(set != 0) {
+                    fromBit = set & -set;
+                    onSquare = piece;
+                    break;
+                }
+            }
+        }
+        // Going back from the end of the exchange, each side takes the better of stopping and capturing
+        while(--depth > 0)
+            swapList[depth - 1] = -Math.max(-swapList[depth - 1], swapList[depth]);
+        return swapList[0];
+    }
+
+    // The set-wise attack functions below are the reference implementation the tables in Attacks are built from
+
+    static long knightAttacks(long set) {
+        return ((set << 17) & NOT_FILE_A) | ((set << 15) & NOT_FILE_H) |
+                ((set << 10) & NOT_FILE_AB) | ((set << 6) & NOT_FILE_GH) |
+                ((set >>> 17) & NOT_FILE_H) | ((set >>> 15) & NOT_FILE_A) |
+                ((set >>> 10) & NOT_FILE_GH) | ((set >>> 6) & NOT_FILE_AB);
+    }
+
+    static long kingAttacks(long set) {
+        long sides = ((set << 1) & NOT_FILE_A) | ((set >>> 1) & NOT_FILE_H);
+        long row = set | sides;
+        return sides | (row << 8) | (row >>> 8);
+    }
+
+    static long bishopAttacks(int square, long occupied) {
+        long from = 1L << square;
+        long empty = ~occupied;
+        return ray(from, empty, 9, NOT_FILE_A) | ray(from, empty, 7, NOT_FILE_H) |
+                ray(from, empty, -7, NOT_FILE_A) | ray(from, empty, -9, NOT_FILE_H);
+    }
+
+    static long rookAttacks(int square, long occupied) {
+        long from = 1L << square;
+        long empty = ~occupied;
+        return ray(from, empty, 8, ~0L) | ray(from, empty, -8, ~0L) |
+                ray(from, empty, 1, NOT_FILE_A) | ray(from, empty, -1, NOT_FILE_H);
+    }
+
+    // Slides the set one step at a time in one direction until every ray is blocked or leaves the board. The first
+    // blocker of each ray is included in the result. A positive shift moves towards higher squares.
+    private static long ray(long from, long empty, int shift, long wrapMask) {
+        long attacks = 0;
+        long ray = from;
+        while(ray != 0) {
+            ray = (shift > 0 ? ray << shift : ray >>> -shift) & wrapMask;
+            attacks |= ray;
+            ray &= empty;
+        }
+        return attacks;
+    }
+
+    void addPiece(int piece, int square) {
+        long bit = 1L << square;
+        pieces[piece] |= bit;
+        occupancy[piece < 6 ? WHITE : BLACK] |= bit;
+        occupied |= bit;
+        mailbox[square] = piece;
+        key ^= Zobrist.PIECE_SQUARE[piece][square];
+        if(piece == WHITE_PAWN || piece == BLACK_PAWN)
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][square];
+        middlegameScore += Evaluation.MIDDLEGAME[piece][square];
+        endgameScore += Evaluation.ENDGAME[piece][square];
+        phase += Evaluation.PHASE[piece];
+        if(accumulator != null)
+            accumulator.add(piece, square);
+    }
+
+    void removePiece(int piece, int square) {
+        long bit = ~(1L << square);
+        pieces[piece] &= bit;
+        occupancy[piece < 6 ? WHITE : BLACK] &= bit;
+        occupied &= bit;
+        mailbox[square] = NO_PIECE;
+        key ^= Zobrist.PIECE_SQUARE[piece][square];
+        if(piece == WHITE_PAWN || piece == BLACK_PAWN)
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][square];
+        middlegameScore -= Evaluation.MIDDLEGAME[piece][square];
+        endgameScore -= Evaluation.ENDGAME[piece][square];
+        phase -= Evaluation.PHASE[piece];
+        if(accumulator != null)
+            accumulator.remove(piece, square);
+    }
+
+    /**
+     * Two boards are equal if they hold the same position: the same pieces on the same squares, the same side to
+     * move, castling rights and en passant square. The move history is not compared.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof BitBoard))
+            return false;
+        BitBoard other = (BitBoard) o;
+        return key == other.key && sideToMove == other.sideToMove && castlingRights == other.castlingRights &&
+                enPassantSquare == other.enPassantSquare && Arrays.equals(pieces, other.pieces);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    public static int square(int i, int j) {
+        return i << 3 | j;
+    }
+
+    static int pieceFromSymbol(char c) {
+        for(int piece = 0; piece < 12; piece++)
+            if(SYMBOLS[piece] == c)
+                return piece;
+        return NO_PIECE;
+    }
+
+    public void printBoard() {
+        System.out.print("\n   a b c d e f g h \n");
+        System.out.print("  -----------------\n");
+
+        for (int i = 7; i >= 0; i--){
+            int row = i + 1;
+            System.out.print(row + " ");
+            for (int j = 0; j < 8; j++){
+                System.out.print("|" + getPiece(i, j));
+            }
+            System.out.print("| "+row+"\n");
+        }
+        System.out.print("  -----------------");
+        System.out.print("\n   a b c d e f g h \n");
+    }
+}
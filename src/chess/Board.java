@@ -3,6 +3,7 @@ package chess;
 import chess.pieces.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 public class Board {
@@ -11,6 +12,12 @@ public class Board {
 	public King[] kings;
 	public int[] enPassant = new int[2];
 	public PieceColour turn;
+	// Zobrist hash of the piece placement, updated by setPiece
+	private long placementKey;
+	// One bitboard per piece type, indexed by the BitBoard piece constants, and all occupied squares, updated by
+	// setPiece and used for the attack queries
+	private long[] bitboards = new long[12];
+	private long occupied;
 
 	protected ChessDriver driver;
 
@@ -46,13 +53,13 @@ public class Board {
 			switch (p) {
 //				case 0 -> board[i][j].setPiece(
 //						new Pawn(k % 2 == 0 ? PieceColour.WHITE : PieceColour.BLACK, this));
-				case 1 -> board[i][j].setPiece(
+				case 1 -> this.setPiece(i, j,
 						new Bishop(k % 2 == 0 ? PieceColour.WHITE : PieceColour.BLACK, this));
-				case 2 -> board[i][j].setPiece(
+				case 2 -> this.setPiece(i, j,
 						new Knight(k % 2 == 0 ? PieceColour.WHITE : PieceColour.BLACK, this));
-				case 3 -> board[i][j].setPiece(
+				case 3 -> this.setPiece(i, j,
 						new Rook(k % 2 == 0 ? PieceColour.WHITE : PieceColour.BLACK, this));
-				case 4 -> board[i][j].setPiece(
+				case 4 -> this.setPiece(i, j,
 						new Queen(k % 2 == 0 ? PieceColour.WHITE : PieceColour.BLACK, this));
 			}
 		}
@@ -128,11 +135,28 @@ public class Board {
 	}
 
 	public boolean movePiece(int i0, int j0, int i1, int j1, Piece p) {
+		playMove(i0, j0, i1, j1, p);
+		return isCheckMate();
+	}
+
+	/**
+	 * Plays a move like {@link #movePiece(int, int, int, int, Piece)} without testing for checkmate afterwards, for
+	 * callers that already know the legal moves of the new position, such as {@link LegalMoveCache}.
+	 * @param i0 piece row
+	 * @param j0 piece column
+	 * @param i1 destination row
+	 * @param j1 destination column
+	 * @param p the piece moved
+	 */
+	public void playMove(int i0, int j0, int i1, int j1, Piece p) {
+		// A pawn moving diagonally to an empty square captures en passant
+		boolean enPassant = p instanceof Pawn && j0 != j1 && !this.hasPiece(i1, j1);
 		if(this.hasPiece(i1, j1))
 			pieces.remove(this.getPiece(i1, j1));
 
 		if(p instanceof Pawn) {
-			if(((Pawn) p).enPassant) {
+			if(enPassant) {
+				pieces.remove(this.getPiece(i1 - (p.getColour() == PieceColour.WHITE ? 1 : -1), j1));
 				this.setPiece(i1 - (p.getColour() == PieceColour.WHITE ? 1 : -1), j1, null);
 				driver.setSpecialSituation("ENPASSANT");
 			} else if(i1 == 7 && p.getColour() == PieceColour.WHITE ||
@@ -159,8 +183,9 @@ public class Board {
 		this.setPiece(i1, j1, p);
 
 		turn = turn.invert();
-
-		return isCheckMate();
+		if(Zobrist.debug)
+			Zobrist.verify(getKey(), Zobrist.compute(getBoardAsMatrix(), turn, getCastlingRights(),
+					getEnPassantSquare()), "movePiece " + i0 + j0 + i1 + j1);
 	}
 
 	public boolean movePiece(Move move) {
@@ -174,7 +199,8 @@ public class Board {
 	}
 
 	public boolean isCheckMate() {
-		return isCheck() != null && getLegalMoves().isEmpty();
+		long king = bitboards[BitBoard.WHITE_KING + colourIndex(turn) * 6];
+		return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), turn.invert()) && !hasMoves();
 	}
 
 	/**
@@ -199,6 +225,16 @@ public class Board {
 	}
 
 	public void setPiece(int iIn, int jIn, Piece p){
+		int square = BitBoard.square(iIn, jIn);
+		if(board[iIn][jIn].hasPiece()) {
+			placementKey ^= pieceKey(board[iIn][jIn].getPiece(), square);
+			toggleBitboards(board[iIn][jIn].getPiece(), square);
+		}
+		if(p != null) {
+			placementKey ^= pieceKey(p, square);
+			toggleBitboards(p, square);
+		}
+
 		// If p is null, then any piece that was on (iIn, jIn) is removed
 		if(p == null) {
 			board[iIn][jIn].removePiece();
@@ -236,61 +272,78 @@ public class Board {
 		return false;
 	}
 
-	public King isCheck() {
+	/**
+	 * Checks whether moving the piece on (i0, j0) to (i1, j1) would leave the king of its colour attacked. Only the
+	 * occupancy bitboard is changed for the test, so the board itself is not touched. The move is assumed to follow
+	 * the rules of movement of the piece.
+	 * @param i0 piece row
+	 * @param j0 piece column
+	 * @param i1 destination row
+	 * @param j1 destination column
+	 * @return true if the king would be in check after the move
+	 */
+	public boolean leavesKingInCheck(int i0, int j0, int i1, int j1) {
+		Piece moving = getPiece(i0, j0);
+		int colour = colourIndex(moving.getColour());
+		int from = BitBoard.square(i0, j0);
+		int to = BitBoard.square(i1, j1);
+		// A captured piece no longer attacks anything
+		long captured = 1L << to;
+		long occupied = (this.occupied & ~(1L << from)) | (1L << to);
+		// A pawn moving diagonally to an empty square captures en passant, the captured pawn is beside its origin
+		if(moving instanceof Pawn && j0 != j1 && !hasPiece(i1, j1)) {
+			captured |= 1L << BitBoard.square(i0, j1);
+			occupied &= ~(1L << BitBoard.square(i0, j1));
+		}
 
-		int i = turn.equals(PieceColour.WHITE) ? 1 : 0;
-		while(i >= 0 && i <= 1) {
-			for(Piece piece : pieces) {
-				int ik = kings[i].getRow();
-				int jk = kings[i].getColumn();
-				if (piece instanceof Bishop) {
-					int ib = piece.getRow();
-					int jb = piece.getColumn();
-					if(piece.isLegitDiagonalMove(ib, jb, ik, jk) && piece.getColour() != kings[i].getColour()) {
-						return kings[i];
-					}
-				}
-				if (piece instanceof Rook) {
-					int ir = piece.getRow();
-					int jr = piece.getColumn();
-					if(piece.isLegitStraightMove(ir, jr, ik, jk) && piece.getColour() != kings[i].getColour()) {
-						return kings[i];
-					}
-				}
-				if (piece instanceof Queen) {
-					int iq = piece.getRow();
-					int jq = piece.getColumn();
-					if ((piece.isLegitStraightMove(iq, jq, ik, jk) || piece.isLegitDiagonalMove(iq, jq, ik, jk)) &&
-							piece.getColour() != kings[i].getColour()){
-						return kings[i];
-					}
-				}
-				if (piece instanceof Knight) {
-					int in = piece.getRow();
-					int jn = piece.getColumn();
-					if (((Math.abs(in - ik) == 2 && Math.abs(jn - jk) == 1) ||
-							(Math.abs(in - ik) == 1 && Math.abs(jn - jk) == 2)) &&
-							piece.getColour() != kings[i].getColour()) {
-						return kings[i];
-					}
-				}
-				if (piece instanceof Pawn) {
-					Pawn p = (Pawn) piece;
-					int ip = piece.getRow();
-					int jp = piece.getColumn();
-					if(p.canCapture(ip, jp, ik, jk) && piece.getColour() != kings[i].getColour()) {
-						return kings[i];
-					}
-				}
-				if (piece instanceof King) {
-					int iu = piece.getRow();
-					int ju = piece.getColumn();
-					if(Math.abs(ik - iu) <= 1 && Math.abs(jk - ju) <= 1 && piece.getColour() != kings[i].getColour()) {
-						return new King(null, this);
-					}
-				}
+		int king;
+		if(moving instanceof King)
+			king = to;
+		else if(bitboards[BitBoard.WHITE_KING + colour * 6] != 0)
+			king = Long.numberOfTrailingZeros(bitboards[BitBoard.WHITE_KING + colour * 6]);
+		else
+			return false;
+		return (attackersTo(king, colour ^ 1, occupied) & ~captured) != 0;
+	}
+
+	/**
+	 * Checks whether a piece of the given colour attacks a square. The attacks are looked up outward from the square
+	 * in the {@link Attacks} tables, so the cost does not depend on the number of pieces.
+	 * @param square square index (i * 8 + j)
+	 * @param byColour colour of the attacking pieces
+	 * @return true if the square is attacked
+	 */
+	public boolean isSquareAttacked(int square, PieceColour byColour) {
+		return attackersTo(square, colourIndex(byColour), occupied) != 0;
+	}
+
+	// Bitboard of the pieces of the given colour attacking the square, with sliders blocked by the given occupancy
+	private long attackersTo(int square, int colour, long occupied) {
+		int offset = colour * 6;
+		long queens = bitboards[BitBoard.WHITE_QUEEN + offset];
+		// A pawn attacks the square if a pawn of the other colour on the square would attack it
+		return (Attacks.pawn(colour ^ 1, square) & bitboards[BitBoard.WHITE_PAWN + offset]) |
+				(Attacks.knight(square) & bitboards[BitBoard.WHITE_KNIGHT + offset]) |
+				(Attacks.king(square) & bitboards[BitBoard.WHITE_KING + offset]) |
+				(Attacks.bishop(square, occupied) & (bitboards[BitBoard.WHITE_BISHOP + offset] | queens)) |
+				(Attacks.rook(square, occupied) & (bitboards[BitBoard.WHITE_ROOK + offset] | queens));
+	}
+
+	private static int colourIndex(PieceColour colour) {
+		return colour == PieceColour.WHITE ? BitBoard.WHITE : BitBoard.BLACK;
+	}
+
+	/**
+	 * Looks for a king in check, starting with the king of the side that just moved.
+	 * @return the king in check, or null if neither king is attacked
+	 */
+	public King isCheck() {
+		for(PieceColour colour : new PieceColour[] {turn.invert(), turn}) {
+			long king = bitboards[BitBoard.WHITE_KING + colourIndex(colour) * 6];
+			if(king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), colour.invert())) {
+				int square = Long.numberOfTrailingZeros(king);
+				return (King) getPiece(square / 8, square % 8);
 			}
-			i += turn.equals(PieceColour.WHITE) ? -1 : 1;
 		}
 		return null;
 	}
@@ -302,28 +355,119 @@ public class Board {
 	// NOTE: Pieces are added to this.pieces in their constructor, so when you call piece.deepcopy()
 	// the piece is added to the pieces list, SO DO NOT RE ADD IT.
 	public Board deepcopy() {
-		Board result = new Board();
+		// The copy starts empty; the King constructor registers the copied kings in result.kings
+		Board result = new Board(BoardState.EMPTY);
 
-		result.enPassant = new int[] {this.enPassant[0], this.enPassant[1]};
 		result.board = new Square[8][8];
 		result.driver = ChessDriver.DUMMY_CHESS_DRIVER;
 		result.turn = turn;
-		int k = 0;
+		result.placementKey = placementKey;
+		result.bitboards = bitboards.clone();
+		result.occupied = occupied;
 		for(int i = 0; i < 8; i++) {
 			for(int j = 0; j < 8; j++) {
 				Square t = this.board[i][j].deepcopy();
 				if(t.hasPiece()) {
 					Piece p = t.getPiece().deepcopy(result);
 					t.setPiece(p);
-					if(p instanceof King)
-						result.kings[k++] = (King) p;
 				}
 				result.board[i][j] = t;
 			}
 		}
+		// Copying the pieces resets the en passant square, so it is set last
+		result.enPassant = new int[] {this.enPassant[0], this.enPassant[1]};
 		return result;
 	}
 	
+	/**
+	 * Returns the Zobrist hash of the position (see {@link Zobrist}). The piece placement part is updated
+	 * incrementally every time {@link #setPiece(int, int, Piece)} changes a square; the side to move, castling rights
+	 * and en passant parts are read from the state of the kings, rooks and {@link #enPassant}, which takes constant
+	 * time. The value is the same as {@link BitBoard#getKey()} for the same position.
+	 * @return the 64 bit hash
+	 */
+	public long getKey() {
+		return placementKey ^ Zobrist.stateKey(turn, getCastlingRights(), getEnPassantSquare());
+	}
+
+	/**
+	 * @return the castling rights as a mask of the {@link BitBoard} castling constants
+	 */
+	public int getCastlingRights() {
+		int rights = 0;
+		if(kings[0] != null && kings[0].canCastle) {
+			if(isCastlingRook(0, 7)) rights |= BitBoard.WHITE_KING_SIDE;
+			if(isCastlingRook(0, 0)) rights |= BitBoard.WHITE_QUEEN_SIDE;
+		}
+		if(kings[1] != null && kings[1].canCastle) {
+			if(isCastlingRook(7, 7)) rights |= BitBoard.BLACK_KING_SIDE;
+			if(isCastlingRook(7, 0)) rights |= BitBoard.BLACK_QUEEN_SIDE;
+		}
+		return rights;
+	}
+
+	private boolean isCastlingRook(int i, int j) {
+		return getPiece(i, j) instanceof Rook && ((Rook) getPiece(i, j)).canCastle;
+	}
+
+	/**
+	 * @return the square (i * 8 + j) a pawn can move to when capturing en passant, -1 if there is none
+	 */
+	public int getEnPassantSquare() {
+		// enPassant stores the square of the pawn that just moved two squares, {0, 0} meaning none
+		int i = enPassant[0];
+		int j = enPassant[1];
+		Piece pawn = getPiece(i, j);
+		if(!(pawn instanceof Pawn) || pawn.getColour() == turn)
+			return -1;
+		if(i == 3 && pawn.getColour() == PieceColour.WHITE)
+			return BitBoard.square(2, j);
+		if(i == 4 && pawn.getColour() == PieceColour.BLACK)
+			return BitBoard.square(5, j);
+		return -1;
+	}
+
+	private void toggleBitboards(Piece p, int square) {
+		occupied ^= 1L << square;
+		if(p.getPieceIndex() != BitBoard.NO_PIECE)
+			bitboards[p.getPieceIndex()] ^= 1L << square;
+	}
+
+	private static long pieceKey(Piece p, int square) {
+		int index = p.getPieceIndex();
+		return index == BitBoard.NO_PIECE ? 0 : Zobrist.PIECE_SQUARE[index][square];
+	}
+
+	/**
+	 * Two boards are equal if they hold the same position: the same pieces on the same squares, the same side to
+	 * move, castling rights and en passant square.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(!(o instanceof Board))
+			return false;
+		Board other = (Board) o;
+		return getKey() == other.getKey() && turn == other.turn &&
+				getCastlingRights() == other.getCastlingRights() &&
+				getEnPassantSquare() == other.getEnPassantSquare() &&
+				Arrays.deepEquals(getBoardAsMatrix(), other.getBoardAsMatrix());
+	}
+
+	@Override
+	public int hashCode() {
+		long key = getKey();
+		return (int) (key ^ (key >>> 32));
+	}
+
+	/**
+	 * @return bitboard of the occupied squares, bit i * 8 + j set if (i, j) holds a piece
+	 */
+	public long getOccupied() {
+		return occupied;
+	}
+
 	public Piece getPiece(int iIn, int jIn){
 		return board[iIn][jIn].getPiece();
 	}
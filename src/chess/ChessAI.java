@@ -1,164 +1,1045 @@
 package chess;
 
-import chess.pieces.*;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ChessAI {
 
+    private static final int MAX_PLY = 64;
+    public static final int DEFAULT_HASH_MB = 16;
+    public static final long DEFAULT_MOVE_TIME_MILLIS = 1000;
+    // The clock and node count are checked every this many nodes
+    private static final int CHECK_INTERVAL = 1023;
+    // Scores are in centipawns. Being mated at ply p scores -MATE + p, so a faster mate scores higher
+    public static final int INFINITY = 32000;
+    public static final int MATE = 31000;
+    public static final int MATE_BOUND = MATE - MAX_PLY;
+    public static final int DRAW = 0;
+    // Piece values in centipawns, indexed by the white BitBoard piece constants
+    static final int[] PIECE_VALUES = {100, 300, 300, 500, 900, 0};
+    // Positional gain a capture is allowed on top of the material before delta pruning skips it
+    private static final int DELTA_MARGIN = 200;
+    // Aspiration windows: from this depth on an iteration starts with a window of this half width around the score
+    // of the previous one, doubled on every fail high or fail low
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int ASPIRATION_WINDOW = 40;
+    // Late move reductions in plies, indexed by the remaining depth and the number of moves already searched
+    private static final int[][] LMR_REDUCTIONS = new int[MAX_PLY][MAX_PLY];
+
+    static {
+        for(int depth = 1; depth < MAX_PLY; depth++)
+            for(int moves = 1; moves < MAX_PLY; moves++)
+                LMR_REDUCTIONS[depth][moves] = Math.max(1, (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25));
+    }
+    // Lazy SMP: helper n skips the depths d for which ((d + SKIP_PHASE[n]) / SKIP_SIZE[n]) is odd, so that the
+    // helpers spread over the next few depths instead of all searching the same one as the main thread
+    private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+    // YBWC: nodes up to this ply with at least this remaining depth are split between the threads. Deeper nodes are
+    // too small to be worth a task
+    private static final int YBWC_MAX_SPLIT_PLY = 2;
+    private static final int YBWC_MIN_SPLIT_DEPTH = 3;
+
     private final String color;
     private Board board;
     private ChessDriver driver;
-    private final int depth = 4;
     public int movesChecked = 0;
-    Random r = new Random();
+
+    // Limits used by findMove() without arguments
+    private SearchLimits limits = SearchLimits.moveTime(DEFAULT_MOVE_TIME_MILLIS);
+    private EngineOptions options = new EngineOptions();
+    // State of the running search: when to stop it, and whether it was stopped
+    private long deadline;
+    private long maxNodes;
+    private boolean aborted;
+    // Set by stop() or when the main thread finishes, read by the helpers
+    private volatile boolean stopped;
+    // Result of the last completed iteration of the running search
+    private int bestMove;
+    private int bestScore;
+    private int completedDepth;
+    private int[] principalVariation;
+    // Result of the last search
+    private SearchResult lastResult = new SearchResult(PackedMove.NULL_MOVE, 0, 0, 0, 0, new int[0]);
+
+    // Lazy SMP: helpers search the same position on their own boards with their own move lists and ordering tables,
+    // sharing only the transposition table. The main thread, the one that calls search, is null for the helpers
+    private final ChessAI main;
+    private ChessAI[] helpers = new ChessAI[0];
+    private ExecutorService helperPool;
+    // YBWC: every task borrows an idle worker for its own board state, because a thread that waits for tasks it
+    // forked may run another task in the meantime. Workers check the limits of the whole search, counting the nodes
+    // of all of them, and stop when the split point they search below is cut off
+    private ForkJoinPool splitPool;
+    private final List<ChessAI> workers = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<ChessAI> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final LongAdder workerNodes = new LongAdder();
+    private SplitPoint splitPoint;
+    private boolean worker;
+
+    // One move list per ply, reused between nodes and searches
+    private final MoveList[] moveLists = new MoveList[MAX_PLY];
+    private TranspositionTable table;
+    private final MoveOrdering ordering = new MoveOrdering(MAX_PLY);
+    private final EvaluationCache evaluationCache = new EvaluationCache(EvaluationCache.DEFAULT_ENTRIES);
+    private final PawnHashTable pawnTable = new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES);
+    // Network evaluating the positions instead of the handcrafted evaluation, null to use the handcrafted one. The
+    // evaluation cache holds the scores of cachedNetwork
+    private Network network;
+    private Network cachedNetwork;
+    // Bonus of every root move, indexed by its origin and destination squares, see EngineOptions.getVariety()
+    private final int[] rootBias = new int[64 * 64];
+    // Ordering scores of the moves in moveLists, one array per ply
+    private final int[][] moveScores = new int[MAX_PLY][MoveList.DEFAULT_CAPACITY];
+    // Triangular principal variation table: row ply holds the best line found from that ply, in columns ply up to
+    // pvLength[ply]. A node that raises alpha copies the line of its child behind its own move
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    // Beta cutoffs, and those caused by the first move searched, which is the aim of the move ordering
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    // How often each selective technique applied in the last search
+    private long nullMoveCutoffs;
+    private long reductions;
+    private long reSearches;
+    private long futilityPruned;
+    private long aspirationFailures;
 
     public ChessAI(String color) {
+        this(color, null);
+    }
+
+    private ChessAI(String color, ChessAI main) {
         this.color = color;
+        this.main = main;
+        table = main != null ? main.table : new TranspositionTable(DEFAULT_HASH_MB);
+        for(int ply = 0; ply < MAX_PLY; ply++)
+            moveLists[ply] = new MoveList();
+    }
+
+    // Evaluation by the network attached to the board, or tapered evaluation of the material, the piece-square tables
+    // and the pawn structure, in centipawns from the point of view of the side to move
+    private int staticEvaluation(BitBoard board) {
+        long key = board.getKey();
+        int score = evaluationCache.probe(key);
+        if(score == EvaluationCache.MISS) {
+            Accumulator accumulator = board.getAccumulator();
+            score = accumulator != null ? accumulator.getNetwork().evaluate(accumulator, board.getSideToMove()) :
+                    Evaluation.evaluate(board, pawnTable);
+            evaluationCache.store(key, score);
+        }
+        return score;
+    }
+
+    // Draws the bonus of every root move from the seed and the position, so the same search is repeated exactly
+    private void prepareRootBias(BitBoard root) {
+        int variety = options.getVariety();
+        Arrays.fill(rootBias, 0);
+        if(variety == 0)
+            return;
+        Random random = new Random(options.getSeed() ^ root.getKey());
+        for(int k = 0; k < rootBias.length; k++)
+            rootBias[k] = random.nextInt(2 * variety + 1) - variety;
     }
 
-    private float staticEvaluation(Board board) {
-        float evaluation = 0;
+    // Bonus of a move at the given ply, which is only given at the root, by the main thread for every thread
+    private int rootBias(int ply, int move) {
+        return ply == 0 ? (main != null ? main : this).rootBias[PackedMove.from(move) | PackedMove.to(move) << 6] : 0;
+    }
+
+    // Adds the bonus of a root move to its score, except to mate scores, whose distance has to stay exact
+    private static int addBias(int score, int bias) {
+        return isMateScore(score) ? score : score + bias;
+    }
 
-        for(Piece piece : board.pieces) {
-            int turn = piece.getColour().toString().equals("WHITE") ? 1 : -1;
-            if(piece instanceof Queen) {
-                evaluation += turn * 9;
+    // Negamax alpha-beta: the score is always from the point of view of the side to move, so the same code searches
+    // for both colours. The whole tree is searched on a single board: every move is played with makeMove and taken
+    // back with unmakeMove, so no board is allocated per node. Results are kept in the transposition table, and the
+    // stored best move is searched first when the position comes again.
+    // Principal variation search: only the first move is searched with the full window. The others are expected to be
+    // worse and are only proven so with a null window (alpha, alpha + 1), which is much cheaper; one that turns out
+    // better is searched again with the full window. Nodes with a null window are never on the principal variation,
+    // so only they are pruned and only they take cutoffs from the transposition table, which keeps the line complete.
+    // The search is selective, as set in the EngineOptions: a node fails high without searching when the static
+    // evaluation is far above beta or when passing the move (a null move) still fails high; near the horizon quiet moves
+    // that can not raise alpha are pruned; and late quiet moves are searched to a lower depth unless they raise alpha
+    private int negamax(BitBoard board, int depth, int ply, int alpha, int beta, int previousMove,
+                        boolean nullMoveAllowed) {
+        movesChecked++;
+        if((movesChecked & CHECK_INTERVAL) == 0)
+            checkLimits();
+        if(aborted)
+            return 0;
+        if(depth == 0 || ply >= MAX_PLY - 1)
+            return quiescence(board, ply, alpha, beta);
+        pvLength[ply] = ply;
+        boolean pvNode = beta - alpha > 1;
+
+        long key = board.getKey();
+        long entry = table.probe(key);
+        int hashMove = PackedMove.NULL_MOVE;
+        if(entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if(!pvNode && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTableScore(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if(bound == TranspositionTable.BOUND_EXACT || bound == TranspositionTable.BOUND_LOWER && score >= beta ||
+                        bound == TranspositionTable.BOUND_UPPER && score <= alpha)
+                    return score;
             }
-            else if(piece instanceof Rook) {
-                evaluation += turn * 5;
+        }
+
+        boolean inCheck = board.isCheck();
+        int staticEval = inCheck ? -INFINITY : staticEvaluation(board);
+
+        // Reverse futility pruning: the position is so good that a few plies will not bring it back below beta
+        if(!pvNode && !inCheck && options.isReverseFutility() && depth <= options.getReverseFutilityDepth() &&
+                !isMateScore(beta)) {
+            int margin = options.getReverseFutilityMargin() * depth;
+            if(staticEval - margin >= beta)
+                return staticEval - margin;
+        }
+
+        // Null move pruning: if the opponent moving twice in a row still can not bring the score below beta, a real
+        // move will not either. Not tried twice in a row, or without pieces, where zugzwang makes passing the best move
+        int us = board.getSideToMove();
+        if(!pvNode && nullMoveAllowed && !inCheck && options.isNullMove() && depth >= options.getNullMoveMinDepth() &&
+                staticEval >= beta && !isMateScore(beta) && board.countNonPawnPieces(us) > 0) {
+            int reducedDepth = Math.max(depth - 1 - options.getNullMoveReduction() - (depth >= 6 ? 1 : 0), 0);
+            board.makeNullMove();
+            int score = -negamax(board, reducedDepth, ply + 1, -beta, -beta + 1, PackedMove.NULL_MOVE, false);
+            board.unmakeNullMove();
+            if(aborted)
+                return 0;
+            if(score >= beta) {
+                // A mate found after passing is not proven
+                if(isMateScore(score))
+                    score = beta;
+                // With few pieces left zugzwang is likely, so the cutoff is checked by a reduced search of the real
+                // moves, without null moves
+                if(!options.isNullMoveVerification() ||
+                        board.countNonPawnPieces(us) > options.getNullMoveVerificationPieces()) {
+                    nullMoveCutoffs++;
+                    return score;
+                }
+                int verified = negamax(board, reducedDepth, ply, beta - 1, beta, previousMove, false);
+                if(aborted)
+                    return 0;
+                if(verified >= beta) {
+                    nullMoveCutoffs++;
+                    return score;
+                }
             }
-            else if(piece instanceof Knight || piece instanceof Bishop) {
-                evaluation += turn * 3;
+        }
+
+        MoveList moves = moveLists[ply];
+        moves.clear();
+        board.generateMoves(moves);
+        // Checkmate or stalemate
+        if(moves.isEmpty())
+            return inCheck ? -MATE + ply : DRAW;
+        int[] scores = moveScores[ply];
+        ordering.score(board, moves, scores, hashMove, ply, previousMove);
+
+        // Futility pruning: near the horizon a quiet move is not expected to gain more than the margin
+        boolean futile = !pvNode && !inCheck && options.isFutility() && depth <= options.getFutilityDepth() &&
+                !isMateScore(alpha) && staticEval + options.getFutilityMargin() * depth <= alpha;
+        boolean reduce = !inCheck && options.isLateMoveReductions() && depth >= options.getLmrMinDepth();
+
+        int alphaOriginal = alpha;
+        int best = -INFINITY;
+        int bestMove = PackedMove.NULL_MOVE;
+        int searched = 0;
+        for(int k = 0; k < moves.size(); k++) {
+            int move = MoveOrdering.next(moves, scores, k);
+            boolean quiet = !MoveOrdering.isTactical(move);
+            board.makeMove(move);
+            boolean givesCheck = board.isCheck();
+            if(futile && quiet && !givesCheck && searched > 0) {
+                board.unmakeMove();
+                futilityPruned++;
+                continue;
             }
-            else if(piece instanceof Pawn) {
-                evaluation += turn;
+
+            int score;
+            if(searched == 0)
+                score = -negamax(board, depth - 1, ply + 1, -beta, -alpha, move, true);
+            else {
+                // Late move reduction: the null window search of a late quiet move goes to a lower depth, and is
+                // repeated to the full depth if the move turns out to raise alpha
+                int reduction = 0;
+                if(reduce && quiet && !givesCheck && searched >= options.getLmrFullDepthMoves() &&
+                        !MoveOrdering.isRefutationScore(scores[k])) {
+                    // At least one ply is left to search, and a reduction never turns into an extension
+                    reduction = Math.max(0, Math.min(
+                            LMR_REDUCTIONS[Math.min(depth, MAX_PLY - 1)][Math.min(searched, MAX_PLY - 1)], depth - 2));
+                    if(reduction > 0)
+                        reductions++;
+                }
+                score = -negamax(board, depth - 1 - reduction, ply + 1, -alpha - 1, -alpha, move, true);
+                if(reduction > 0 && score > alpha && !aborted) {
+                    reSearches++;
+                    score = -negamax(board, depth - 1, ply + 1, -alpha - 1, -alpha, move, true);
+                }
+                if(score > alpha && score < beta && !aborted)
+                    score = -negamax(board, depth - 1, ply + 1, -beta, -alpha, move, true);
             }
-        }
-        return evaluation;
-    }
-    private float staticEvaluation(LightBoard board) {
-        float evaluation = 0;
-        for(int i = 0; i < 8; i++) {
-            for(int j = 0; j < 8; j++) {
-                switch (board.getPiece(i, j)) {
-                    case 'p' -> evaluation += 1;
-                    case 'b', 'n' -> evaluation += 3;
-                    case 'r' -> evaluation += 5;
-                    case 'q' -> evaluation += 9;
-                    case 'P' -> evaluation -= 1;
-                    case 'B', 'N' -> evaluation -= 3;
-                    case 'R' -> evaluation -= 5;
-                    case 'Q' -> evaluation -= 9;
+            board.unmakeMove();
+            searched++;
+            if(aborted)
+                return 0;
+            if(score > best) {
+                best = score;
+                bestMove = move;
+                if(score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if(alpha >= beta) {
+                        cutoffs++;
+                        if(k == 0)
+                            firstMoveCutoffs++;
+                        if(!MoveOrdering.isTactical(move))
+                            ordering.cutoff(moves, k, ply, depth, previousMove);
+                        break;
+                    }
                 }
             }
         }
-        return evaluation + r.nextFloat() - 0.5f;
+
+        int bound = best <= alphaOriginal ? TranspositionTable.BOUND_UPPER :
+                best >= beta ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT;
+        table.store(key, bestMove, toTableScore(best, ply), depth, bound);
+        return best;
     }
 
-    private float minMax(LightBoard board, int depth, float alpha, float beta, String turn) {
+    // Quiescence search: at the leaves only captures and promotions are searched, until the position is quiet, so
+    // that the evaluation is not taken in the middle of an exchange. The side to move may also stand pat, keeping the
+    // static evaluation instead of capturing. When in check every evasion is searched, as standing pat is not allowed
+    private int quiescence(BitBoard board, int ply, int alpha, int beta) {
         movesChecked++;
-        if(depth == 0)
+        if((movesChecked & CHECK_INTERVAL) == 0)
+            checkLimits();
+        if(aborted)
+            return 0;
+        pvLength[ply] = ply;
+        if(ply >= MAX_PLY - 1)
             return staticEvaluation(board);
 
-        ArrayList<int[]> moves = board.getAllLegalMoves();
-        float evaluation;
-        if(turn.equals("WHITE")) {
-            evaluation = Float.MIN_VALUE;
-            for(int[] move : moves) {
-//                Board daughter = board.deepcopy();
-                LightBoard daughter = board.copy();
-                daughter.makeMove(move[0], move[1], move[2], move[3]);
-                evaluation = Float.max(evaluation, minMax(daughter, depth - 1, alpha, beta, "BLACK"));
-                alpha = Float.max(evaluation, alpha);
-                if(alpha >= beta)
-                    break;
-            }
-        }
-        else {
-            evaluation = Float.MAX_VALUE;
-            for(int[] move : moves) {
-//                Board daughter = board.deepcopy();
-                LightBoard daughter = board.copy();
-                daughter.makeMove(move[0], move[1], move[2], move[3]);
-                evaluation = Float.min(evaluation, minMax(daughter, depth - 1, alpha, beta, "WHITE"));
-                beta = Float.min(evaluation, beta);
-                if(alpha >= beta)
-                    break;
-            }
-        }
-//        System.out.printf("[ChessAI] At depth %d there are %d moves\n", this.depth - depth, movesChecked);
-        return evaluation;
-    }
-
-    private float minMax(Board board, int depth, float alpha, float beta, String turn) {
-        movesChecked++;
-        if(depth == 0)
-            return staticEvaluation(board);
+        boolean inCheck = board.isCheck();
+        MoveList moves = moveLists[ply];
+        moves.clear();
+        int standPat = -INFINITY;
+        int best;
+        if(inCheck) {
+            board.generateMoves(moves);
+            if(moves.isEmpty())
+                return -MATE + ply;
+            best = -INFINITY;
+        } else {
+            standPat = staticEvaluation(board);
+            if(standPat >= beta)
+                return standPat;
+            if(standPat > alpha)
+                alpha = standPat;
+            best = standPat;
+            board.generateCaptures(moves);
+        }
 
-        ArrayList<Move> moves = board.getLegalMoves();
-        float evaluation;
-        if(turn.equals("WHITE")) {
-            evaluation = Float.MIN_VALUE;
-            for(Move move : moves) {
-                Board daughter = board.deepcopy();
-                daughter.movePiece(move);
-                evaluation = Float.max(evaluation, minMax(daughter, depth - 1, alpha, beta, "BLACK"));
-                alpha = Float.max(evaluation, alpha);
-                if(alpha >= beta)
-                    break;
+        int[] scores = moveScores[ply];
+        ordering.score(board, moves, scores, PackedMove.NULL_MOVE, ply, PackedMove.NULL_MOVE);
+        for(int k = 0; k < moves.size(); k++) {
+            int move = MoveOrdering.next(moves, scores, k);
+            // Delta pruning: skip a capture that can not raise alpha even if the captured piece comes for free
+            if(!inCheck && !PackedMove.isPromotion(move) &&
+                    standPat + PIECE_VALUES[PackedMove.captured(move) % 6] + DELTA_MARGIN <= alpha)
+                continue;
+            // SEE pruning: a capture that loses material in the exchange is not worth searching
+            if(!inCheck && MoveOrdering.losesMaterial(board, move))
+                continue;
+            board.makeMove(move);
+            int score = -quiescence(board, ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if(aborted)
+                return 0;
+            if(score > best) {
+                best = score;
+                if(score > alpha) {
+                    alpha = score;
+                    if(alpha >= beta)
+                        break;
+                }
             }
         }
-        else {
-            evaluation = Float.MAX_VALUE;
-            for(Move move : moves) {
-                Board daughter = board.deepcopy();
-                daughter.movePiece(move);
-                evaluation = Float.min(evaluation, minMax(daughter, depth - 1, alpha, beta, "WHITE"));
-                beta = Float.min(evaluation, beta);
-                if(alpha >= beta)
-                    break;
+        return best;
+    }
+
+    // Puts the move in front of the line of the child node, as the best line from this ply
+    private void updatePrincipalVariation(int ply, int move) {
+        int[] line = pvTable[ply];
+        line[ply] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, line, ply + 1, length - ply - 1);
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+
+    // Mate scores count the plies from the root, but a table entry can be reached at any ply, so they are stored as
+    // the distance to mate from the position itself
+    private static int toTableScore(int score, int ply) {
+        if(score >= MATE_BOUND)
+            return score + ply;
+        if(score <= -MATE_BOUND)
+            return score - ply;
+        return score;
+    }
+
+    private static int fromTableScore(int score, int ply) {
+        if(score >= MATE_BOUND)
+            return score - ply;
+        if(score <= -MATE_BOUND)
+            return score + ply;
+        return score;
+    }
+
+    /**
+     * @param score a score returned by the search
+     * @return true if the score means that one side mates the other
+     */
+    public static boolean isMateScore(int score) {
+        return Math.abs(score) >= MATE_BOUND;
+    }
+
+    /**
+     * @param score a mate score, see {@link #isMateScore(int)}
+     * @return moves to mate, positive if the side to move mates and negative if it is mated
+     */
+    public static int mateDistance(int score) {
+        return score > 0 ? (MATE - score + 1) / 2 : -(MATE + score) / 2;
+    }
+
+    private static void moveToFront(MoveList moves, int move) {
+        if(move == PackedMove.NULL_MOVE)
+            return;
+        for(int k = 1; k < moves.size(); k++)
+            if(moves.get(k) == move) {
+                moves.set(k, moves.get(0));
+                moves.set(0, move);
+                return;
             }
+    }
+
+    private void checkLimits() {
+        if(worker) {
+            main.workerNodes.add(CHECK_INTERVAL + 1);
+            if(main.deadline > 0 && System.nanoTime() >= main.deadline ||
+                    main.maxNodes > 0 && main.movesChecked + main.workerNodes.sum() >= main.maxNodes)
+                main.stopped = true;
+            if(splitPoint != null && splitPoint.isCancelled())
+                aborted = true;
+        }
+        if(isStopped() || deadline > 0 && System.nanoTime() >= deadline || maxNodes > 0 && movesChecked >= maxNodes)
+            aborted = true;
+    }
+
+    private boolean isStopped() {
+        return main != null ? main.stopped : stopped;
+    }
+
+    /**
+     * Stops the running search from another thread. The search returns the result of the last completed iteration.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Searches the current position of the board within the limits set with {@link #setSearchLimits(SearchLimits)}.
+     * @return the move packed as described in {@link PackedMove}, or {@link PackedMove#NULL_MOVE} if there is none
+     */
+    public int findMove() {
+        return findMove(limits);
+    }
+
+    /**
+     * Searches the current position of the board and returns the best move found for the side to move.
+     * <p>
+     *     The search deepens one ply at a time, starting every iteration with the best move of the previous one, until
+     *     the depth, time or node limit is reached. An iteration that is stopped by the time or node limit is thrown
+     *     away and the move of the last completed iteration is returned.
+     * </p>
+     * @param limits limits of the search
+     * @return the move packed as described in {@link PackedMove}, or {@link PackedMove#NULL_MOVE} if there is none
+     */
+    public int findMove(SearchLimits limits) {
+        return findMove(new BitBoard(board), limits);
+    }
+
+    /**
+     * Searches the given position instead of the board set with {@link #setBoard(Board)}, see
+     * {@link #findMove(SearchLimits)}.
+     * @param root the position to search, left unchanged
+     * @param limits limits of the search
+     * @return the move packed as described in {@link PackedMove}, or {@link PackedMove#NULL_MOVE} if there is none
+     */
+    public int findMove(BitBoard root, SearchLimits limits) {
+        return search(root, limits).getBestMove();
+    }
+
+    /**
+     * Searches the given position and returns the best move together with its score and the principal variation.
+     * <p>
+     *     The search deepens one ply at a time, starting every iteration with the best move of the previous one, until
+     *     the depth, time or node limit is reached. From depth {@value #ASPIRATION_MIN_DEPTH} on an iteration is first
+     *     searched with a narrow window around the score of the previous one, which is widened when the score falls
+     *     outside. An iteration that is stopped by the time or node limit is thrown away.
+     * </p>
+     * <p>
+     *     With more than one {@link EngineOptions#getThreads() thread}, the {@link EngineOptions.ParallelMode} decides
+     *     how they share the work. In the Lazy SMP mode helper threads search the same position at the same time. They
+     *     share only the transposition table, which fills with results the main thread then finds, and spread over the
+     *     next few depths. The result is always that of the main thread; the node limit applies to the main thread
+     *     alone, and the helpers stop when it finishes. In the YBWC mode the nodes near the root are split between
+     *     the threads of a fork/join pool once their first move has been searched, and the node limit counts the
+     *     nodes of all threads.
+     * </p>
+     * @param root the position to search, left unchanged
+     * @param limits limits of the search
+     * @return the result of the last completed iteration
+     */
+    public SearchResult search(BitBoard root, SearchLimits limits) {
+        stopped = false;
+        return runSearch(root, limits);
+    }
+
+    // Clears the stop signal of the last search, so that a caller can start runSearch and stop it without a race
+    void clearStop() {
+        stopped = false;
+    }
+
+    // The search itself. A stop() that came after clearStop() makes it return at once with the first legal move
+    SearchResult runSearch(BitBoard root, SearchLimits limits) {
+        long start = System.nanoTime();
+        if(network != null || root.getAccumulator() != null) {
+            // The accumulator of the network is kept on a copy, which the helpers and workers copy in turn
+            root = root.copy();
+            root.setNetwork(network);
         }
-//        System.out.printf("[ChessAI] At depth %d there are %d moves\n", this.depth - depth, movesChecked);
-        return evaluation;
+        long budget = limits.getTimeBudgetMillis();
+        long soft = limits.getSoftTimeMillis();
+        deadline = budget > 0 ? start + budget * 1_000_000 : 0;
+        maxNodes = limits.getNodes();
+        newSearch();
+        table.newSearch();
+        prepareRootBias(root);
+
+        int maxDepth = Math.min(limits.getDepth(), MAX_PLY - 1);
+        List<Future<?>> running = startHelpers(root, maxDepth);
+        prepareWorkers();
+        iterativeDeepening(root, maxDepth, start, soft, -1);
+        stopped = true;
+        long nodes = movesChecked + waitForHelpers(running);
+        for(ChessAI worker : workers)
+            nodes += worker.movesChecked;
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        lastResult = new SearchResult(bestMove, bestScore, completedDepth, nodes, millis, principalVariation);
+        System.out.printf("[ChessAI] Depth %d, %d moves checked in %d ms by %d thread(s)%n", completedDepth, nodes,
+                millis, options.getThreads());
+        System.out.println("[ChessAI] Evaluation:" + bestScore + " cp");
+        if(options.isVerbose())
+            printStatistics();
+        return lastResult;
     }
 
-    public Move findMove() {
+    // The principal variation and how the search went, printed after every search with the Verbose option
+    private void printStatistics() {
+        System.out.println("[ChessAI] Principal variation: " + lastResult.getPrincipalVariationString());
+        System.out.printf("[ChessAI] First move cutoffs: %.1f%% of %d, aspiration window failures: %d%n",
+                100 * getFirstMoveCutoffRate(), cutoffs, aspirationFailures);
+        System.out.printf("[ChessAI] Null move cutoffs: %d, reductions: %d (%d searched again), futility pruned: %d%n",
+                nullMoveCutoffs, reductions, reSearches, futilityPruned);
+        System.out.println("[ChessAI] " + table);
+        System.out.println("[ChessAI] " + evaluationCache + ", " + pawnTable);
+    }
+
+    private void newSearch() {
+        aborted = false;
         movesChecked = 0;
-        ArrayList<Move> moves = board.getLegalMoves();
-        float best;
-        Move bestMove = Move.NULL_MOVE;
-        Board daughter;
-        if(color.equals("WHITE")) {
-            best = Float.MIN_VALUE;
-            for (Move move : moves) {
-                daughter = board.deepcopy();
-                //int[] mv = move.toIntArray();
-                daughter.movePiece(move);
-                float eval = minMax(daughter, depth, Float.MIN_VALUE, Float.MAX_VALUE, "BLACK");
-                if(eval >= best) {
-                    best = eval;
-                    bestMove = move;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        nullMoveCutoffs = 0;
+        reductions = 0;
+        reSearches = 0;
+        futilityPruned = 0;
+        aspirationFailures = 0;
+        ordering.newSearch();
+        if(cachedNetwork != network) {
+            evaluationCache.clear();
+            cachedNetwork = network;
+        }
+        evaluationCache.resetStatistics();
+        pawnTable.resetStatistics();
+    }
+
+    // Deepens the search of the root until the maximum depth, a forced mate, the soft time limit or an abort. Helpers,
+    // numbered from 0, skip some depths and have no limits of their own: they run until the main thread stops them
+    private void iterativeDeepening(BitBoard root, int maxDepth, long start, long soft, int helper) {
+        MoveList moves = moveLists[0];
+        moves.clear();
+        root.generateMoves(moves);
+        bestMove = moves.isEmpty() ? PackedMove.NULL_MOVE : moves.get(0);
+        principalVariation = moves.isEmpty() ? new int[0] : new int[] {bestMove};
+        bestScore = 0;
+        completedDepth = 0;
+
+        for(int depth = 1; depth <= maxDepth && !moves.isEmpty() && !isStopped(); depth++) {
+            int n = helper % SKIP_SIZE.length;
+            if(helper >= 0 && (depth + SKIP_PHASE[n]) / SKIP_SIZE[n] % 2 != 0)
+                continue;
+            // The best move of the previous iteration is searched first
+            moveToFront(moves, bestMove);
+            int score = aspirationSearch(root, moves, depth, bestScore);
+            if(aborted)
+                break;
+            bestScore = score;
+            bestMove = pvTable[0][0];
+            principalVariation = Arrays.copyOf(pvTable[0], pvLength[0]);
+            completedDepth = depth;
+            // A forced mate will not be found any faster by searching deeper
+            if(isMateScore(bestScore) || soft > 0 && System.nanoTime() - start >= soft * 1_000_000)
+                break;
+        }
+    }
+
+    // Starts a helper for every thread after the first, each on its own copy of the root
+    private List<Future<?>> startHelpers(BitBoard root, int maxDepth) {
+        int count = options.getParallelMode() == EngineOptions.ParallelMode.LAZY_SMP ? options.getThreads() - 1 : 0;
+        if(helpers.length != count) {
+            if(helperPool != null)
+                helperPool.shutdown();
+            helperPool = null;
+            helpers = new ChessAI[count];
+            for(int k = 0; k < count; k++)
+                helpers[k] = new ChessAI(color, this);
+            if(count > 0)
+                helperPool = Executors.newFixedThreadPool(count, task -> {
+                    Thread thread = new Thread(task, "ChessAI helper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        List<Future<?>> running = new ArrayList<>();
+        for(int k = 0; k < count; k++) {
+            ChessAI helper = helpers[k];
+            helper.table = table;
+            helper.options = options;
+            helper.network = network;
+            BitBoard position = root.copy();
+            int index = k;
+            running.add(helperPool.submit(() -> {
+                helper.deadline = 0;
+                helper.maxNodes = 0;
+                helper.newSearch();
+                helper.iterativeDeepening(position, maxDepth, 0, 0, index);
+            }));
+        }
+        return running;
+    }
+
+    // Waits for the stopped helpers to return and counts their nodes
+    private long waitForHelpers(List<Future<?>> running) {
+        long nodes = 0;
+        for(int k = 0; k < running.size(); k++) {
+            try {
+                running.get(k).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Helper search failed", e.getCause());
+            }
+            nodes += helpers[k].movesChecked;
+        }
+        return nodes;
+    }
+
+    /**
+     * Releases the helper threads of the parallel search, if any. They are started again by the next search that
+     * uses more than one thread.
+     */
+    public void shutdown() {
+        if(helperPool != null)
+            helperPool.shutdown();
+        helperPool = null;
+        helpers = new ChessAI[0];
+        if(splitPool != null)
+            splitPool.shutdown();
+        splitPool = null;
+        workers.clear();
+        idleWorkers.clear();
+    }
+
+    // Sets up the fork/join pool when the YBWC mode is on, and resets the workers kept from the last search
+    private void prepareWorkers() {
+        int threads = options.getParallelMode() == EngineOptions.ParallelMode.YBWC ? options.getThreads() : 1;
+        if(splitPool != null && splitPool.getParallelism() != threads) {
+            splitPool.shutdown();
+            splitPool = null;
+        }
+        if(splitPool == null && threads > 1)
+            splitPool = new ForkJoinPool(threads);
+        workerNodes.reset();
+        for(ChessAI worker : workers) {
+            worker.network = network;
+            worker.newSearch();
+        }
+    }
+
+    private ChessAI borrowWorker(SplitPoint splitPoint) {
+        ChessAI worker = idleWorkers.poll();
+        if(worker == null) {
+            worker = new ChessAI(color, this);
+            worker.worker = true;
+            workers.add(worker);
+        }
+        worker.table = table;
+        worker.options = options;
+        worker.network = network;
+        worker.splitPoint = splitPoint;
+        worker.aborted = false;
+        return worker;
+    }
+
+    private void releaseWorker(ChessAI worker) {
+        worker.splitPoint = null;
+        worker.aborted = false;
+        idleWorkers.add(worker);
+    }
+
+    // YBWC search of the root moves, in the order given, on a worker of the fork/join pool
+    private int searchRootSplit(BitBoard root, MoveList moves, int depth, int alpha, int beta) {
+        return splitPool.invoke(new ForkJoinTask<Integer>() {
+            private int score;
+
+            @Override
+            public Integer getRawResult() {
+                return score;
+            }
+
+            @Override
+            protected void setRawResult(Integer value) {
+                score = value;
+            }
+
+            @Override
+            protected boolean exec() {
+                ChessAI worker = borrowWorker(null);
+                try {
+                    score = worker.splitSearch(root.copy(), moves, depth, 0, alpha, beta, PackedMove.NULL_MOVE);
+                    if(worker.aborted || stopped)
+                        aborted = true;
+                    System.arraycopy(worker.pvTable[0], 0, pvTable[0], 0, worker.pvLength[0]);
+                    pvLength[0] = worker.pvLength[0];
+                } finally {
+                    releaseWorker(worker);
                 }
+                return true;
             }
-        } else {
-            best = Float.MAX_VALUE;
-            for (Move move : moves) {
-                daughter = board.deepcopy();
-                //int[] mv = move.toIntArray();
-                daughter.movePiece(move);
-                float eval = minMax(daughter, depth, Float.MIN_VALUE, Float.MAX_VALUE, "WHITE");
-                if(eval <= best) {
-                    best = eval;
-                    bestMove = move;
+        });
+    }
+
+    // Young Brothers Wait Concept, run by a worker: the first move (the eldest brother) is searched alone, as its
+    // score usually decides the node. Only if it does not fail high are the other moves searched in parallel tasks,
+    // each with the best score found so far at the split point as alpha. A move that fails high cancels the tasks of
+    // the other moves. Nodes too deep or too shallow to split are searched by negamax on this worker
+    private int splitSearch(BitBoard board, MoveList rootMoves, int depth, int ply, int alpha, int beta,
+                            int previousMove) {
+        if(ply > YBWC_MAX_SPLIT_PLY || depth < YBWC_MIN_SPLIT_DEPTH)
+            return negamax(board, depth, ply, alpha, beta, previousMove, true);
+        movesChecked++;
+        pvLength[ply] = ply;
+        long key = board.getKey();
+        MoveList moves = rootMoves;
+        if(moves == null) {
+            long entry = table.probe(key);
+            int hashMove = PackedMove.NULL_MOVE;
+            if(entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if(beta - alpha == 1 && TranspositionTable.depth(entry) >= depth) {
+                    int score = fromTableScore(TranspositionTable.score(entry), ply);
+                    int bound = TranspositionTable.bound(entry);
+                    if(bound == TranspositionTable.BOUND_EXACT || bound == TranspositionTable.BOUND_LOWER &&
+                            score >= beta || bound == TranspositionTable.BOUND_UPPER && score <= alpha)
+                        return score;
                 }
             }
+            // The move list is read by the tasks, so it is not one of the lists reused by this worker
+            moves = new MoveList();
+            board.generateMoves(moves);
+            if(moves.isEmpty())
+                return board.isCheck() ? -MATE + ply : DRAW;
+            int[] scores = new int[moves.size()];
+            ordering.score(board, moves, scores, hashMove, ply, previousMove);
+            for(int k = 0; k < moves.size(); k++)
+                MoveOrdering.next(moves, scores, k);
+        }
+
+        SplitPoint node = new SplitPoint(splitPoint, alpha, beta);
+        int eldest = moves.get(0);
+        int bias = rootBias(ply, eldest);
+        board.makeMove(eldest);
+        int score = addBias(-splitSearch(board, null, depth - 1, ply + 1, bias - beta, bias - alpha, eldest), bias);
+        board.unmakeMove();
+        if(aborted)
+            return 0;
+        node.update(eldest, score, this, ply + 1);
+
+        if(!node.cutoff && moves.size() > 1) {
+            List<YoungerBrother> brothers = new ArrayList<>();
+            for(int k = 1; k < moves.size(); k++)
+                brothers.add(new YoungerBrother(node, board.copy(), moves.get(k), depth, ply));
+            ForkJoinTask.invokeAll(brothers);
+        }
+        if(isStopped() || splitPoint != null && splitPoint.isCancelled()) {
+            aborted = true;
+            return 0;
+        }
+
+        int best = node.best;
+        if(best > alpha) {
+            pvTable[ply][ply] = node.bestMove;
+            System.arraycopy(node.line, 0, pvTable[ply], ply + 1, node.line.length);
+            pvLength[ply] = ply + 1 + node.line.length;
+        }
+        if(rootMoves == null) {
+            int bound = best <= alpha ? TranspositionTable.BOUND_UPPER :
+                    best >= beta ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT;
+            table.store(key, node.bestMove, toTableScore(best, ply), depth, bound);
         }
-        System.out.println("[ChessAI] Moves checked:" + movesChecked);
-        System.out.println("[ChessAI] Evaluation:" + best);
-        return bestMove;
+        return best;
+    }
+
+    // A node being searched in parallel: the best score and move so far, shared by the tasks of its moves
+    private static final class SplitPoint {
+        private final SplitPoint parent;
+        private final int beta;
+        private int alpha;
+        private int best = -INFINITY;
+        private int bestMove = PackedMove.NULL_MOVE;
+        // The principal variation below the best move
+        private int[] line = new int[0];
+        private volatile boolean cutoff;
+
+        SplitPoint(SplitPoint parent, int alpha, int beta) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+
+        synchronized int getAlpha() {
+            return alpha;
+        }
+
+        // Records the score of a move searched by the worker, with the line the worker found below it
+        synchronized void update(int move, int score, ChessAI worker, int childPly) {
+            if(score <= best)
+                return;
+            best = score;
+            bestMove = move;
+            if(score > alpha) {
+                alpha = score;
+                line = Arrays.copyOfRange(worker.pvTable[childPly], childPly, Math.max(childPly,
+                        worker.pvLength[childPly]));
+                if(score >= beta)
+                    cutoff = true;
+            }
+        }
+
+        // A split point is cancelled when it or a split point above it is cut off
+        boolean isCancelled() {
+            return cutoff || parent != null && parent.isCancelled();
+        }
+    }
+
+    // The search of one younger brother at a split point: a null window scout first, and a full window search if the
+    // move turns out to be inside the window. Created by a worker, so the workers are borrowed from its main ChessAI
+    private final class YoungerBrother extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SplitPoint node;
+        private final BitBoard board;
+        private final int move;
+        private final int depth;
+        private final int ply;
+
+        YoungerBrother(SplitPoint node, BitBoard board, int move, int depth, int ply) {
+            this.node = node;
+            this.board = board;
+            this.move = move;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected void compute() {
+            if(node.isCancelled() || isStopped())
+                return;
+            ChessAI worker = main.borrowWorker(node);
+            try {
+                int bias = rootBias(ply, move);
+                board.makeMove(move);
+                int alpha = node.getAlpha();
+                int score = addBias(-worker.splitSearch(board, null, depth - 1, ply + 1, bias - alpha - 1,
+                        bias - alpha, move), bias);
+                if(!worker.aborted && score > alpha && score < node.beta) {
+                    alpha = node.getAlpha();
+                    score = addBias(-worker.splitSearch(board, null, depth - 1, ply + 1, bias - node.beta,
+                            bias - alpha, move), bias);
+                }
+                if(!worker.aborted)
+                    node.update(move, score, worker, ply + 1);
+            } finally {
+                main.releaseWorker(worker);
+            }
+        }
+    }
+
+    // Searches the root with a window around the score of the previous iteration. A score on the lower edge of the
+    // window (fail low) is only an upper bound and one on the upper edge (fail high) only a lower bound, so the window
+    // is widened on that side and the iteration searched again, until the score falls inside
+    private int aspirationSearch(BitBoard root, MoveList moves, int depth, int previousScore) {
+        int delta = ASPIRATION_WINDOW;
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        if(depth >= ASPIRATION_MIN_DEPTH && !isMateScore(previousScore)) {
+            alpha = previousScore - delta;
+            beta = previousScore + delta;
+        }
+        while(true) {
+            int score = searchRoot(root, moves, depth, alpha, beta);
+            if(aborted)
+                return score;
+            if(score <= alpha && alpha > -INFINITY)
+                alpha = Math.max(score - delta, -INFINITY);
+            else if(score >= beta && beta < INFINITY) {
+                beta = Math.min(score + delta, INFINITY);
+                // The move that failed high is the best so far
+                moveToFront(moves, pvTable[0][0]);
+            } else
+                return score;
+            aspirationFailures++;
+            delta *= 2;
+        }
+    }
+
+    // Principal variation search of the root moves: the first with the full window, the others with a null window
+    // first. Returns as soon as a move fails high
+    private int searchRoot(BitBoard root, MoveList moves, int depth, int alpha, int beta) {
+        if(splitPool != null && depth >= YBWC_MIN_SPLIT_DEPTH)
+            return searchRootSplit(root, moves, depth, alpha, beta);
+        pvLength[0] = 0;
+        int best = -INFINITY;
+        for(int k = 0; k < moves.size(); k++) {
+            int move = moves.get(k);
+            int bias = rootBias(0, move);
+            root.makeMove(move);
+            int score;
+            if(k == 0)
+                score = addBias(-negamax(root, depth - 1, 1, bias - beta, bias - alpha, move, true), bias);
+            else {
+                score = addBias(-negamax(root, depth - 1, 1, bias - alpha - 1, bias - alpha, move, true), bias);
+                if(score > alpha && score < beta && !aborted)
+                    score = addBias(-negamax(root, depth - 1, 1, bias - beta, bias - alpha, move, true), bias);
+            }
+            root.unmakeMove();
+            if(aborted)
+                return 0;
+            if(score > best) {
+                best = score;
+                if(score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(0, move);
+                    if(score >= beta)
+                        return score;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return score of the last completed iteration of the last search, in centipawns from the point of view of the
+     *         side to move at the root
+     */
+    public int getLastScore() {
+        return lastResult.getScore();
+    }
+
+    /**
+     * @return the result of the last search, with its principal variation
+     */
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * @return fraction of the beta cutoffs of the last search that were caused by the first move searched
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * @return the options of the selective search, which can be changed between searches
+     */
+    public EngineOptions getEngineOptions() {
+        return options;
+    }
+
+    public void setEngineOptions(EngineOptions options) {
+        this.options = options;
+    }
+
+    public void setSearchLimits(SearchLimits limits) {
+        this.limits = limits;
+    }
+
+    public SearchLimits getSearchLimits() {
+        return limits;
+    }
+
+    /**
+     * Replaces the transposition table with an empty one of the given size.
+     * @param megabytes size in megabytes, see {@link TranspositionTable#TranspositionTable(int)}
+     */
+    public void setHashSize(int megabytes) {
+        table = new TranspositionTable(megabytes);
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * Chooses the evaluation used by the next searches.
+     * @param network the network evaluating the positions, or null for the handcrafted {@link Evaluation}
+     */
+    public void setNetwork(Network network) {
+        this.network = network;
     }
 
     public void setBoard(Board board) {
@@ -3,6 +3,9 @@ package chess;
 import chess.pieces.*;
 
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Class used as an interface to the game. It contains all functionality needed to play moves and to retrieve
@@ -12,15 +15,18 @@ public class ChessDriver {
     public static final ChessDriver DUMMY_CHESS_DRIVER = new ChessDriver();
 
     private final Board board;
-    private boolean gameOver;
     private PieceColour winner;
     private int[] promotingSquare;
 
     private ChessAI chessAI;
-    private AIThread aiThread;
-    private Move aiMove;
+    // Runs the searches of the AI on its own thread, keeping its search structures from one move to the next
+    private EngineService engine;
+    // Search of the AI for the current position, null if it is not the turn of the AI
+    private CompletableFuture<SearchResult> aiSearch;
 
     private SpecialCase specialSituation;
+    // Legal moves of the current position, generated once per position
+    private final LegalMoveCache legalMoves = new LegalMoveCache();
 
     public ChessDriver () {
         board = new Board();
@@ -31,12 +37,14 @@ public class ChessDriver {
 
     public ChessDriver(String aiColour) {
         this();
-        if(aiColour.toLowerCase().equals("white") || aiColour.toLowerCase().equals("black")) {
+        // The colour is compared with the turn of the board, which is upper case
+        aiColour = aiColour.toUpperCase();
+        if(aiColour.equals("WHITE") || aiColour.equals("BLACK")) {
             this.chessAI = new ChessAI(aiColour);
-            this.aiThread = new AIThread(chessAI);
+            this.engine = new EngineService(chessAI);
             chessAI.setBoard(board);
             chessAI.setDriver(this);
-            aiMove = Move.NULL_MOVE;
+            startAISearch();
         }
     }
 
@@ -53,8 +61,7 @@ public class ChessDriver {
     }
 
     public boolean checkMove(int i1, int j1, int i2, int j2) {
-        Piece piece = board.getPiece(i1, j1);
-        return piece.isLegitMove(i1, j1, i2, j2) && getTurn().equals(piece.getColour().toString());
+        return getLegalMoveCache().isLegal(i1, j1, i2, j2);
     }
 
     public void promote(String piece, String color) {
@@ -67,24 +74,53 @@ public class ChessDriver {
             case "BISHOP" -> board.setPiece(i, j, new Bishop(col, board));
             case "KNIGHT" -> board.setPiece(i, j, new Knight(col, board));
         }
+        // The move of the pawn left the search to the promotion, now that the new piece is on the board
+        if(chessAI != null)
+            startAISearch();
     }
 
     public void makeMove(int i1, int j1, int i2, int j2) {
-        Piece piece = board.getPiece(i1, j1);
-        if(piece.isLegitMove(i1, j1, i2, j2)) {
-            gameOver = board.movePiece(i1, j1, i2, j2, piece);
-        }
-
-        if(chessAI != null) {
-            if (chessAI.getColor().equals(board.turn.toString()))
-                aiThread.start();
-                aiMove = aiThread.getAiMove();
+        if(!getLegalMoveCache().isLegal(i1, j1, i2, j2))
+            return;
+        // The legal move cache decides the end of the game, see isGameOver(), so the board does not look for checkmate
+        board.playMove(i1, j1, i2, j2, board.getPiece(i1, j1));
+
+        // A pawn that reached the last rank is still a pawn until promote() puts the chosen piece there, which then
+        // starts the search
+        if(chessAI != null && specialSituation != SpecialCase.PROMOTION)
+            startAISearch();
+    }
+
+    // Starts the search of the AI in the background if it is its turn, dropping the search of an earlier position
+    // that may still run
+    private void startAISearch() {
+        if(aiSearch != null)
+            aiSearch.cancel(false);
+        aiSearch = null;
+        if(chessAI.getColor().equals(board.turn.toString()) && getLegalMoveCache().size() > 0)
+            aiSearch = engine.submit(new BitBoard(board), chessAI.getSearchLimits());
+    }
+
+    /**
+     * Plays a move packed as described in {@link PackedMove}. If the move is a promotion, the pawn is promoted to the
+     * piece stored in the move.
+     * @param move packed move
+     */
+    public void makeMove(int move) {
+        makeMove(PackedMove.fromRow(move), PackedMove.fromColumn(move), PackedMove.toRow(move), PackedMove.toColumn(move));
+        if(PackedMove.isPromotion(move) && specialSituation == SpecialCase.PROMOTION) {
+            String colour = PackedMove.promotion(move) < BitBoard.BLACK_PAWN ? "WHITE" : "BLACK";
+            switch (PackedMove.promotion(move) % 6) {
+                case BitBoard.WHITE_QUEEN -> promote("QUEEN", colour);
+                case BitBoard.WHITE_ROOK -> promote("ROOK", colour);
+                case BitBoard.WHITE_BISHOP -> promote("BISHOP", colour);
+                case BitBoard.WHITE_KNIGHT -> promote("KNIGHT", colour);
+            }
         }
     }
 
     public void makeAIMove() {
-        int[] move = getChessAIMove();
-        makeMove(move[0], move[1], move[2], move[3]);
+        makeMove(getChessAIMove());
     }
 
     public int[] getPromotingSquare() {
@@ -104,14 +140,32 @@ public class ChessDriver {
     }
 
     public boolean isGameOver() {
-        // This is in case of promotion checkmate
-        if(specialSituation == SpecialCase.PROMOTION)
-            return board.isCheckMate();
-        return this.gameOver;
+        // The cache follows the position, so this also covers a checkmate given by a promotion
+        return getLegalMoveCache().isCheckMate();
     }
 
+    /**
+     * @return the colour that gave checkmate, which is the side not to move
+     */
     public String getWinner() {
-        return board.isCheck().getColour().invert().toString();
+        return board.turn.invert().toString();
+    }
+
+    /**
+     * Returns the squares the piece on (i, j) can legally move to, for example to show them as hints.
+     * @param i row
+     * @param j column
+     * @return bitboard with bit i * 8 + j set for every legal destination (i, j)
+     */
+    public long getLegalDestinations(int i, int j) {
+        return getLegalMoveCache().getDestinations(i, j);
+    }
+
+    /**
+     * @return the legal moves of the current position, generated again only if the position changed
+     */
+    public LegalMoveCache getLegalMoveCache() {
+        return legalMoves.update(board);
     }
 
     public Board getBoard() {
@@ -130,17 +184,48 @@ public class ChessDriver {
         return chessAI != null;
     }
 
-    public int[] getChessAIMove() throws NullPointerException {
-        if(!aiMove.equals(Move.NULL_MOVE)) {
-            int i = aiMove.getPiece().getRow();
-            int j = aiMove.getPiece().getColumn();
-            return new int[]{
-                    i, j,
-                    i + aiMove.direction[0],
-                    j + aiMove.direction[1],
-            };
+    /**
+     * Callers that must not block, such as the event thread of the GUI, should be called back by this future instead
+     * of calling {@link #getChessAIMove()} before it completes.
+     * @return the search of the AI for the current position, which completes with its move, or null if it is not the
+     *         turn of the AI
+     */
+    public CompletableFuture<SearchResult> getAISearch() {
+        return aiSearch;
+    }
+
+    /**
+     * Makes the AI play the best move it found so far instead of searching until its limits.
+     */
+    public void stopAI() {
+        if(engine != null)
+            engine.stop();
+    }
+
+    /**
+     * Waits for the search of the AI to finish if it is still running, see {@link #getAISearch()}.
+     * @return the move chosen by the AI, packed as described in {@link PackedMove}
+     * @throws NullPointerException if the AI has no move
+     */
+    public int getChessAIMove() throws NullPointerException {
+        int move = PackedMove.NULL_MOVE;
+        try {
+            if(aiSearch != null)
+                move = aiSearch.join().getBestMove();
+        } catch (CancellationException | CompletionException e) {
+            // A failed or cancelled search has no move
         }
+        if(move != PackedMove.NULL_MOVE)
+            return move;
         throw new NullPointerException();
     }
+
+    /**
+     * Stops the AI and releases its threads. The driver can not play against the AI afterwards.
+     */
+    public void shutdown() {
+        if(engine != null)
+            engine.shutdown();
+    }
 }
 
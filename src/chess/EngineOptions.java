@@ -0,0 +1,396 @@
+package chess;
+
+/**
+ * Switches and parameters of the search of {@link ChessAI}: the number of search threads and how they split the work,
+ * the variety of the moves played, how much a search prints, and the selective search
+ * techniques null move pruning, late move reductions and futility pruning. Every technique can be turned off, so that
+ * its effect on the nodes needed to reach a depth and on the positions solved can be measured with {@link Benchmark}.
+ * <p>
+ *     Options can also be set by name with {@link #setOption(String, String)}, using the names returned by
+ *     {@link #toString()}. Every numeric option has a valid range: the setters limit the value to it, and
+ *     {@link #setOption(String, String)} rejects values outside it.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class EngineOptions {
+    public static final int MAX_THREADS = 256;
+    public static final int MAX_VARIETY = 1000;
+    // Largest depth of the depth options and largest futility margin per ply
+    public static final int MAX_DEPTH = SearchLimits.MAX_DEPTH;
+    public static final int MAX_MARGIN = 2000;
+    public static final int MAX_NULL_MOVE_REDUCTION = 6;
+    // Pieces other than pawns a side can have, and moves a position can have
+    private static final int MAX_PIECES = 15;
+    private static final int MAX_MOVES = MoveList.DEFAULT_CAPACITY;
+
+    /**
+     * How several threads search one position.
+     */
+    public enum ParallelMode {
+        /**
+         * Every thread searches the whole tree on its own; they share only the transposition table.
+         */
+        LAZY_SMP,
+        /**
+         * Young Brothers Wait Concept: near the root, the first move of a node is searched alone and the other moves
+         * are then split between the threads of a fork/join pool.
+         */
+        YBWC
+    }
+
+    private int threads = 1;
+    private ParallelMode parallelMode = ParallelMode.LAZY_SMP;
+
+    private int variety;
+    private int seed;
+    private boolean verbose;
+
+    private boolean nullMove = true;
+    private int nullMoveMinDepth = 3;
+    private int nullMoveReduction = 2;
+    private boolean nullMoveVerification = true;
+    private int nullMoveVerificationPieces = 1;
+
+    private boolean lateMoveReductions = true;
+    private int lmrMinDepth = 3;
+    private int lmrFullDepthMoves = 3;
+
+    private boolean futility = true;
+    private int futilityDepth = 3;
+    private int futilityMargin = 150;
+
+    private boolean reverseFutility = true;
+    private int reverseFutilityDepth = 3;
+    private int reverseFutilityMargin = 120;
+
+    /**
+     * @return options with every selective technique turned off, so that the search is full width
+     */
+    public static EngineOptions fullWidth() {
+        EngineOptions options = new EngineOptions();
+        options.nullMove = false;
+        options.lateMoveReductions = false;
+        options.futility = false;
+        options.reverseFutility = false;
+        return options;
+    }
+
+    /**
+     * @return a copy of these options
+     */
+    public EngineOptions copy() {
+        EngineOptions options = new EngineOptions();
+        for(String option : toString().split(" "))
+            options.setOption(option.substring(0, option.indexOf('=')), option.substring(option.indexOf('=') + 1));
+        return options;
+    }
+
+    /**
+     * Sets an option by name, for example <code>setOption("NullMoveReduction", "3")</code>. Names are not case
+     * sensitive.
+     * @param name name of the option
+     * @param value <code>true</code> or <code>false</code> for a switch, a number for a parameter
+     * @throws IllegalArgumentException if there is no option with the name or the value is not valid for it
+     */
+    public void setOption(String name, String value) {
+        switch (name.toLowerCase()) {
+            case "threads" -> setThreads(parseInt(name, value, 1, MAX_THREADS));
+            case "parallelmode" -> parallelMode = parseParallelMode(value);
+            case "variety" -> setVariety(parseInt(name, value, 0, MAX_VARIETY));
+            case "seed" -> seed = parseInt(name, value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            case "verbose" -> verbose = parseBoolean(name, value);
+            case "nullmove" -> nullMove = parseBoolean(name, value);
+            case "nullmovemindepth" -> setNullMoveMinDepth(parseInt(name, value, 2, MAX_DEPTH));
+            case "nullmovereduction" -> setNullMoveReduction(parseInt(name, value, 1, MAX_NULL_MOVE_REDUCTION));
+            case "nullmoveverification" -> nullMoveVerification = parseBoolean(name, value);
+            case "nullmoveverificationpieces" ->
+                    setNullMoveVerificationPieces(parseInt(name, value, 0, MAX_PIECES));
+            case "latemovereductions" -> lateMoveReductions = parseBoolean(name, value);
+            case "lmrmindepth" -> setLmrMinDepth(parseInt(name, value, 2, MAX_DEPTH));
+            case "lmrfulldepthmoves" -> setLmrFullDepthMoves(parseInt(name, value, 1, MAX_MOVES));
+            case "futility" -> futility = parseBoolean(name, value);
+            case "futilitydepth" -> setFutilityDepth(parseInt(name, value, 1, MAX_DEPTH));
+            case "futilitymargin" -> setFutilityMargin(parseInt(name, value, 0, MAX_MARGIN));
+            case "reversefutility" -> reverseFutility = parseBoolean(name, value);
+            case "reversefutilitydepth" -> setReverseFutilityDepth(parseInt(name, value, 1, MAX_DEPTH));
+            case "reversefutilitymargin" -> setReverseFutilityMargin(parseInt(name, value, 0, MAX_MARGIN));
+            default -> throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    private static ParallelMode parseParallelMode(String value) {
+        for(ParallelMode mode : ParallelMode.values())
+            if(mode.name().equalsIgnoreCase(value.trim()))
+                return mode;
+        throw new IllegalArgumentException("Invalid value for ParallelMode: " + value);
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        if(!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        return Boolean.parseBoolean(value);
+    }
+
+    private static int parseInt(String name, String value, int min, int max) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            if(n < min || n > max)
+                throw new IllegalArgumentException("Invalid value for " + name + ": " + value + ", expected " + min +
+                        " ... " + max);
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * @return number of threads searching together, see {@link ChessAI#search(BitBoard, SearchLimits)}
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads number of threads searching together, limited to 1 ... {@link #MAX_THREADS}
+     */
+    public void setThreads(int threads) {
+        this.threads = clamp(threads, 1, MAX_THREADS);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    public ParallelMode getParallelMode() {
+        return parallelMode;
+    }
+
+    public void setParallelMode(ParallelMode parallelMode) {
+        this.parallelMode = parallelMode;
+    }
+
+    /**
+     * Variety of the moves played: every root move gets a bonus between -variety and +variety centipawns, drawn once
+     * per search, so that among moves of about the same score a different one can be chosen. 0 plays the best move
+     * found every time. The evaluation itself is deterministic.
+     * @return the largest bonus in centipawns
+     */
+    public int getVariety() {
+        return variety;
+    }
+
+    /**
+     * @param variety largest bonus in centipawns, limited to 0 ... {@link #MAX_VARIETY}
+     */
+    public void setVariety(int variety) {
+        this.variety = clamp(variety, 0, MAX_VARIETY);
+    }
+
+    /**
+     * @return seed of the root move bonuses: together with the position it decides them, so a search with the same
+     *         seed and position is repeated exactly
+     */
+    public int getSeed() {
+        return seed;
+    }
+
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return true if every search prints its principal variation and the statistics of the selective search, the
+     *         transposition table and the evaluation caches, besides its depth, nodes and score
+     */
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Null move pruning: the side to move passes, and if a search reduced by {@link #getNullMoveReduction()} plies
+     * still fails high, so does the node. Not tried in check or without pieces other than pawns.
+     */
+    public boolean isNullMove() {
+        return nullMove;
+    }
+
+    public void setNullMove(boolean nullMove) {
+        this.nullMove = nullMove;
+    }
+
+    public int getNullMoveMinDepth() {
+        return nullMoveMinDepth;
+    }
+
+    /**
+     * @param nullMoveMinDepth depth from which null moves are tried, limited to 2 ... {@link #MAX_DEPTH}
+     */
+    public void setNullMoveMinDepth(int nullMoveMinDepth) {
+        this.nullMoveMinDepth = clamp(nullMoveMinDepth, 2, MAX_DEPTH);
+    }
+
+    /**
+     * @return plies the null move search is reduced by, on top of the ply of the null move; one more is added from
+     *         depth 6 on
+     */
+    public int getNullMoveReduction() {
+        return nullMoveReduction;
+    }
+
+    /**
+     * @param nullMoveReduction plies the null move search is reduced by, limited to 1 ...
+     *                          {@link #MAX_NULL_MOVE_REDUCTION}
+     */
+    public void setNullMoveReduction(int nullMoveReduction) {
+        this.nullMoveReduction = clamp(nullMoveReduction, 1, MAX_NULL_MOVE_REDUCTION);
+    }
+
+    /**
+     * Verification of null move cutoffs in endgames: when the side to move has at most
+     * {@link #getNullMoveVerificationPieces()} pieces other than pawns, a null move cutoff is only trusted if a
+     * normal search reduced by the same amount fails high too, which catches zugzwang.
+     */
+    public boolean isNullMoveVerification() {
+        return nullMoveVerification;
+    }
+
+    public void setNullMoveVerification(boolean nullMoveVerification) {
+        this.nullMoveVerification = nullMoveVerification;
+    }
+
+    public int getNullMoveVerificationPieces() {
+        return nullMoveVerificationPieces;
+    }
+
+    /**
+     * @param nullMoveVerificationPieces pieces other than pawns up to which null move cutoffs are verified, limited
+     *                                   to 0 ... 15
+     */
+    public void setNullMoveVerificationPieces(int nullMoveVerificationPieces) {
+        this.nullMoveVerificationPieces = clamp(nullMoveVerificationPieces, 0, MAX_PIECES);
+    }
+
+    /**
+     * Late move reductions: quiet moves ordered after the first {@link #getLmrFullDepthMoves()} moves are searched
+     * to a lower depth, and searched again to the full depth if they raise alpha.
+     */
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    public int getLmrMinDepth() {
+        return lmrMinDepth;
+    }
+
+    /**
+     * @param lmrMinDepth depth from which late moves are reduced, limited to 2 ... {@link #MAX_DEPTH}
+     */
+    public void setLmrMinDepth(int lmrMinDepth) {
+        this.lmrMinDepth = clamp(lmrMinDepth, 2, MAX_DEPTH);
+    }
+
+    public int getLmrFullDepthMoves() {
+        return lmrFullDepthMoves;
+    }
+
+    /**
+     * @param lmrFullDepthMoves moves searched to the full depth before the reductions start, limited to 1 ... 256
+     */
+    public void setLmrFullDepthMoves(int lmrFullDepthMoves) {
+        this.lmrFullDepthMoves = clamp(lmrFullDepthMoves, 1, MAX_MOVES);
+    }
+
+    /**
+     * Futility pruning: up to {@link #getFutilityDepth()} plies from the horizon, quiet moves are skipped when the
+     * static evaluation plus {@link #getFutilityMargin()} per ply of depth does not reach alpha.
+     */
+    public boolean isFutility() {
+        return futility;
+    }
+
+    public void setFutility(boolean futility) {
+        this.futility = futility;
+    }
+
+    public int getFutilityDepth() {
+        return futilityDepth;
+    }
+
+    /**
+     * @param futilityDepth plies from the horizon up to which quiet moves are pruned, limited to 1 ...
+     *                      {@link #MAX_DEPTH}
+     */
+    public void setFutilityDepth(int futilityDepth) {
+        this.futilityDepth = clamp(futilityDepth, 1, MAX_DEPTH);
+    }
+
+    public int getFutilityMargin() {
+        return futilityMargin;
+    }
+
+    /**
+     * @param futilityMargin margin in centipawns per ply of depth, limited to 0 ... {@link #MAX_MARGIN}
+     */
+    public void setFutilityMargin(int futilityMargin) {
+        this.futilityMargin = clamp(futilityMargin, 0, MAX_MARGIN);
+    }
+
+    /**
+     * Reverse futility pruning: up to {@link #getReverseFutilityDepth()} plies from the horizon, a node fails high
+     * without searching when the static evaluation minus {@link #getReverseFutilityMargin()} per ply of depth still
+     * reaches beta.
+     */
+    public boolean isReverseFutility() {
+        return reverseFutility;
+    }
+
+    public void setReverseFutility(boolean reverseFutility) {
+        this.reverseFutility = reverseFutility;
+    }
+
+    public int getReverseFutilityDepth() {
+        return reverseFutilityDepth;
+    }
+
+    /**
+     * @param reverseFutilityDepth plies from the horizon up to which nodes fail high without a search, limited to
+     *                             1 ... {@link #MAX_DEPTH}
+     */
+    public void setReverseFutilityDepth(int reverseFutilityDepth) {
+        this.reverseFutilityDepth = clamp(reverseFutilityDepth, 1, MAX_DEPTH);
+    }
+
+    public int getReverseFutilityMargin() {
+        return reverseFutilityMargin;
+    }
+
+    /**
+     * @param reverseFutilityMargin margin in centipawns per ply of depth, limited to 0 ... {@link #MAX_MARGIN}
+     */
+    public void setReverseFutilityMargin(int reverseFutilityMargin) {
+        this.reverseFutilityMargin = clamp(reverseFutilityMargin, 0, MAX_MARGIN);
+    }
+
+    @Override
+    public String toString() {
+        return "Threads=" + threads + " ParallelMode=" + parallelMode + " Variety=" + variety + " Seed=" + seed +
+                " Verbose=" + verbose +
+                " NullMove=" + nullMove + " NullMoveMinDepth=" + nullMoveMinDepth +
+                " NullMoveReduction=" + nullMoveReduction + " NullMoveVerification=" + nullMoveVerification +
+                " NullMoveVerificationPieces=" + nullMoveVerificationPieces +
+                " LateMoveReductions=" + lateMoveReductions + " LmrMinDepth=" + lmrMinDepth +
+                " LmrFullDepthMoves=" + lmrFullDepthMoves +
+                " Futility=" + futility + " FutilityDepth=" + futilityDepth + " FutilityMargin=" + futilityMargin +
+                " ReverseFutility=" + reverseFutility + " ReverseFutilityDepth=" + reverseFutilityDepth +
+                " ReverseFutilityMargin=" + reverseFutilityMargin;
+    }
+}
@@ -0,0 +1,137 @@
+package chess;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Long-lived engine worker: searches are submitted to it and run one after the other on a single thread, which keeps
+ * the same {@link ChessAI} and with it the move lists, ordering tables, caches, transposition table and helper threads
+ * from one move to the next.
+ * <p>
+ *     Every search returns a {@link CompletableFuture} that completes with the result once the search is done, so the
+ *     caller can wait for it or be called back. Cancelling the future of a search that has not started yet skips it;
+ *     cancelling the running one stops it. {@link #stop()} stops the running search at once, which then completes
+ *     with the result of its last completed iteration.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class EngineService {
+    private final ChessAI ai;
+    private final ExecutorService executor;
+    // The future of the search running on the engine thread, null between searches. Guarded by lock, so that a
+    // search is never stopped on behalf of another
+    private final Object lock = new Object();
+    private CompletableFuture<SearchResult> running;
+    // Searches submitted and not completed yet, running or queued
+    private final Set<CompletableFuture<SearchResult>> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param ai the engine running the searches. It should not be used by anyone else while the service runs
+     */
+    public EngineService(ChessAI ai) {
+        this.ai = ai;
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "EngineService");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ChessAI getEngine() {
+        return ai;
+    }
+
+    /**
+     * Queues a search of a position.
+     * @param position the position to search, copied so that the caller may go on changing it
+     * @param limits limits of the search
+     * @return the result of the search. It completes exceptionally if the search fails, and is cancelled if the
+     *         service shuts down first
+     * @throws RejectedExecutionException if the service has shut down
+     */
+    public CompletableFuture<SearchResult> submit(BitBoard position, SearchLimits limits) {
+        BitBoard root = position.copy();
+        CompletableFuture<SearchResult> result = new CompletableFuture<>();
+        pending.add(result);
+        result.whenComplete((value, error) -> {
+            pending.remove(result);
+            if(result.isCancelled())
+                stop(result);
+        });
+        try {
+            executor.execute(() -> run(result, root, limits));
+        } catch (RejectedExecutionException e) {
+            pending.remove(result);
+            throw e;
+        }
+        return result;
+    }
+
+    private void run(CompletableFuture<SearchResult> result, BitBoard root, SearchLimits limits) {
+        synchronized(lock) {
+            if(result.isDone())
+                return;
+            running = result;
+            ai.clearStop();
+        }
+        SearchResult searchResult = null;
+        RuntimeException failure = null;
+        try {
+            searchResult = ai.runSearch(root, limits);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // The search is over before its future completes, so that whoever is called back sees the engine idle
+        synchronized(lock) {
+            running = null;
+        }
+        if(failure != null)
+            result.completeExceptionally(failure);
+        else
+            result.complete(searchResult);
+    }
+
+    // Stops the search of the future if it is the one running
+    private void stop(CompletableFuture<SearchResult> result) {
+        synchronized(lock) {
+            if(running == result)
+                ai.stop();
+        }
+    }
+
+    /**
+     * Stops the running search, if any. Its future completes with the result of its last completed iteration, or
+     * with the first legal move if none was completed. Queued searches are not affected.
+     */
+    public void stop() {
+        synchronized(lock) {
+            if(running != null)
+                ai.stop();
+        }
+    }
+
+    /**
+     * @return true if a search is running
+     */
+    public boolean isSearching() {
+        synchronized(lock) {
+            return running != null;
+        }
+    }
+
+    /**
+     * Cancels the running and the queued searches and releases the threads of the service and of the engine, once
+     * the running search has stopped.
+     */
+    public void shutdown() {
+        for(CompletableFuture<SearchResult> result : pending)
+            result.cancel(false);
+        executor.execute(ai::shutdown);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,509 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static evaluation of a position: material and piece-square tables, each with a middlegame and an endgame value,
+ * blended by the game phase (tapered evaluation). A piece on a square is worth its material value plus the
+ * piece-square bonus of that square, and these sums do not depend on the rest of the board, so {@link BitBoard} keeps
+ * the totals up to date in every move and an evaluation only has to blend them.
+ * <p>
+ *     The game phase starts at {@link #MAX_PHASE} with all the pieces on the board and goes down as knights, bishops,
+ *     rooks and queens are captured. The values are those of the PeSTO evaluation function.
+ * </p>
+ * <p>
+ *     The pawn structure terms (passed, doubled and isolated pawns) depend on the pawns alone. They are computed by
+ *     {@link #pawnStructure(BitBoard)} and kept in a {@link PawnHashTable}, as the pawns change in few moves. They
+ *     are returned as a middlegame and an endgame score packed into one int, see {@link #pack(int, int)}.
+ * </p>
+ * <p>
+ *     The evaluation is deterministic: the same position always gets the same score, so scores can be cached and
+ *     searches repeated. Variety between games comes from the root of the search, see
+ *     {@link EngineOptions#getVariety()}.
+ * </p>
+ * <p>
+ *     The weights can be tuned with {@link Tuner} and saved to a weights file, a text file with one line per table:
+ *     its name followed by its values. At startup the file named by the system property
+ *     <code>chess.evaluation.weights</code> is loaded, or <code>evaluation.weights</code> in the working directory if
+ *     the property is not set and the file exists. Boards keep the totals of the weights they were built with, so
+ *     weights are only changed before building any.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public final class Evaluation {
+    public static final int MAX_PHASE = 24;
+
+    // Indexed by piece type (pawn, knight, bishop, rook, queen, king)
+    static final int[] MIDDLEGAME_VALUES = {82, 337, 365, 477, 1025, 0};
+    static final int[] ENDGAME_VALUES = {94, 281, 297, 512, 936, 0};
+    static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+
+    // Piece-square tables from the point of view of white, indexed by piece type and square with a8 first and h1
+    // last, the way a board is printed. Square i * 8 + j of a white piece is found at (7 - i) * 8 + j, that is
+    // square ^ 56, and the one of a black piece at the square itself.
+    private static final int[][] MIDDLEGAME_TABLES = {
+            {
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    98, 134, 61, 95, 68, 126, 34, -11,
+                    -6, 7, 26, 31, 65, 56, 25, -20,
+                    -14, 13, 6, 21, 23, 12, 17, -23,
+                    -27, -2, -5, 12, 17, 6, 10, -25,
+                    -26, -4, -4, -10, 3, 3, 33, -12,
+                    -35, -1, -20, -23, -15, 24, 38, -22,
+                    0, 0, 0, 0, 0, 0, 0, 0
+            },
+            {
+                    -167, -89, -34, -49, 61, -97, -15, -107,
+                    -73, -41, 72, 36, 23, 62, 7, -17,
+                    -47, 60, 37, 65, 84, 129, 73, 44,
+                    -9, 17, 19, 53, 37, 69, 18, 22,
+                    -13, 4, 16, 13, 28, 19, 21, -8,
+                    -23, -9, 12, 10, 19, 17, 25, -16,
+                    -29, -53, -12, -3, -1, 18, -14, -19,
+                    -105, -21, -58, -33, -17, -28, -19, -23
+            },
+            {
+                    -29, 4, -82, -37, -25, -42, 7, -8,
+                    -26, 16, -18, -13, 30, 59, 18, -47,
+                    -16, 37, 43, 40, 35, 50, 37, -2,
+                    -4, 5, 19, 50, 37, 37, 7, -2,
+                    -6, 13, 13, 26, 34, 12, 10, 4,
+                    0, 15, 15, 15, 14, 27, 18, 10,
+                    4, 15, 16, 0, 7, 21, 33, 1,
+                    -33, -3, -14, -21, -13, -12, -39, -21
+            },
+            {
+                    32, 42, 32, 51, 63, 9, 31, 43,
+                    27, 32, 58, 62, 80, 67, 26, 44,
+                    -5, 19, 26, 36, 17, 45, 61, 16,
+                    -24, -11, 7, 26, 24, 35, -8, -20,
+                    -36, -26, -12, -1, 9, -7, 6, -23,
+                    -45, -25, -16, -17, 3, 0, -5, -33,
+                    -44, -16, -20, -9, -1, 11, -6, -71,
+                    -19, -13, 1, 17, 16, 7, -37, -26
+            },
+            {
+                    -28, 0, 29, 12, 59, 44, 43, 45,
+                    -24, -39, -5, 1, -16, 57, 28, 54,
+                    -13, -17, 7, 8, 29, 56, 47, 57,
+                    -27, -27, -16, -16, -1, 17, -2, 1,
+                    -9, -26, -9, -10, -2, -4, 3, -3,
+                    -14, 2, -11, -2, -5, 2, 14, 5,
+                    -35, -8, 11, 2, 8, 15, -3, 1,
+                    -1, -18, -9, 10, -15, -25, -31, -50
+            },
+            {
+                    -65, 23, 16, -15, -56, -34, 2, 13,
+                    29, -1, -20, -7, -8, -4, -38, -29,
+                    -9, 24, 2, -16, -20, 6, 22, -22,
+                    -17, -20, -12, -27, -30, -25, -14, -36,
+                    -49, -1, -27, -39, -46, -44, -33, -51,
+                    -14, -14, -22, -46, -44, -30, -15, -27,
+                    1, 7, -8, -64, -43, -16, 9, 8,
+                    -15, 36, 12, -54, 8, -28, 24, 14
+            }
+    };
+
+    private static final int[][] ENDGAME_TABLES = {
+            {
+                    0, 0, 0, 0, 0, 0, 0, 0,
+                    178, 173, 158, 134, 147, 132, 165, 187,
+                    94, 100, 85, 67, 56, 53, 82, 84,
+                    32, 24, 13, 5, -2, 4, 17, 17,
+                    13, 9, -3, -7, -7, -8, 3, -1,
+                    4, 7, -6, 1, 0, -5, -1, -8,
+                    13, 8, 8, 10, 13, 0, 2, -7,
+                    0, 0, 0, 0, 0, 0, 0, 0
+            },
+            {
+                    -58, -38, -13, -28, -31, -27, -63, -99,
+                    -25, -8, -25, -2, -9, -25, -24, -52,
+                    -24, -20, 10, 9, -1, -9, -19, -41,
+                    -17, 3, 22, 22, 22, 11, 8, -18,
+                    -18, -6, 16, 25, 16, 17, 4, -18,
+                    -23, -3, -1, 15, 10, -3, -20, -22,
+                    -42, -20, -10, -5, -2, -20, -23, -44,
+                    -29, -51, -23, -15, -22, -18, -50, -64
+            },
+            {
+                    -14, -21, -11, -8, -7, -9, -17, -24,
+                    -8, -4, 7, -12, -3, -13, -4, -14,
+                    2, -8, 0, -1, -2, 6, 0, 4,
+                    -3, 9, 12, 9, 14, 10, 3, 2,
+                    -6, 3, 13, 19, 7, 10, -3, -9,
+                    -12, -3, 8, 10, 13, 3, -7, -15,
+                    -14, -18, -7, -1, 4, -9, -15, -27,
+                    -23, -9, -23, -5, -9, -16, -5, -17
+            },
+            {
+                    13, 10, 18, 15, 12, 12, 8, 5,
+                    11, 13, 13, 11, -3, 3, 8, 3,
+                    7, 7, 7, 5, 4, -3, -5, -3,
+                    4, 3, 13, 1, 2, 1, -1, 2,
+                    3, 5, 8, 4, -5, -6, -8, -11,
+                    -4, 0, -5, -1, -7, -12, -8, -16,
+                    -6, -6, 0, 2, -9, -9, -11, -3,
+                    -9, 2, 3, -1, -5, -13, 4, -20
+            },
+            {
+                    -9, 22, 22, 27, 27, 19, 10, 20,
+                    -17, 20, 32, 41, 58, 25, 30, 0,
+                    -20, 6, 9, 49, 47, 35, 19, 9,
+                    3, 22, 24, 45, 57, 40, 57, 36,
+                    -18, 28, 19, 47, 31, 34, 39, 23,
+                    -16, -27, 15, 6, 9, 17, 10, 5,
+                    -22, -23, -30, -16, -16, -23, -36, -32,
+                    -33, -28, -22, -43, -5, -32, -20, -41
+            },
+            {
+                    -74, -35, -18, -18, -11, 15, 4, -17,
+                    -12, 17, 14, 17, 17, 38, 23, 11,
+                    10, 17, 23, 15, 20, 45, 44, 13,
+                    -8, 22, 24, 27, 26, 33, 26, 3,
+                    -18, -4, 21, 24, 27, 23, 9, -11,
+                    -19, -3, 11, 21, 23, 16, 7, -9,
+                    -27, -11, 4, 13, 14, 4, -5, -17,
+                    -53, -34, -21, -11, -28, -14, -24, -43
+            }
+    };
+
+    // Passed pawn bonus by rank, counted from the side of the pawn
+    static final int[] PASSED_MIDDLEGAME = {0, 5, 10, 15, 25, 45, 75, 0};
+    static final int[] PASSED_ENDGAME = {0, 10, 15, 25, 45, 75, 120, 0};
+    // Penalty for every pawn on a file after the first, {middlegame, endgame}
+    static final int[] DOUBLED = {-10, -20};
+    // Penalty for a pawn without pawns of its side on the adjacent files, {middlegame, endgame}
+    static final int[] ISOLATED = {-10, -15};
+
+    // Pawn structure terms counted by pawnStructure for the tuner: passed pawns by rank at 0 ... 7, then isolated and
+    // doubled pawns
+    static final int ISOLATED_TERM = 8;
+    static final int DOUBLED_TERM = 9;
+    static final int PAWN_TERMS = 10;
+
+    // Every weight table by its name in a weights file, in the order they are written
+    private static final Map<String, int[]> WEIGHTS = new LinkedHashMap<>();
+    private static final String[] PIECE_NAMES = {"Pawn", "Knight", "Bishop", "Rook", "Queen", "King"};
+    public static final String WEIGHTS_PROPERTY = "chess.evaluation.weights";
+    public static final String DEFAULT_WEIGHTS_FILE = "evaluation.weights";
+
+    // PASSED_MASKS[colour][square]: squares in front of a pawn of that colour, on its file and the adjacent ones. The
+    // pawn is passed when no enemy pawn stands there
+    private static final long[][] PASSED_MASKS = new long[2][64];
+    private static final long[] ADJACENT_FILES = new long[8];
+
+    // MIDDLEGAME[piece][square] and ENDGAME[piece][square], indexed with the BitBoard piece constants: the material
+    // value plus the piece-square bonus, positive for white pieces and negative for black ones
+    static final int[][] MIDDLEGAME = new int[12][64];
+    static final int[][] ENDGAME = new int[12][64];
+    // Indexed with the BitBoard piece constants
+    static final int[] PHASE = new int[12];
+
+    static {
+        WEIGHTS.put("MiddlegameValues", MIDDLEGAME_VALUES);
+        WEIGHTS.put("EndgameValues", ENDGAME_VALUES);
+        for(int type = 0; type < 6; type++) {
+            WEIGHTS.put(middlegameTableName(type), MIDDLEGAME_TABLES[type]);
+            WEIGHTS.put(endgameTableName(type), ENDGAME_TABLES[type]);
+        }
+        WEIGHTS.put("PassedMiddlegame", PASSED_MIDDLEGAME);
+        WEIGHTS.put("PassedEndgame", PASSED_ENDGAME);
+        WEIGHTS.put("Doubled", DOUBLED);
+        WEIGHTS.put("Isolated", ISOLATED);
+
+        for(int type = 0; type < 6; type++) {
+            PHASE[type] = PHASE_WEIGHTS[type];
+            PHASE[type + 6] = PHASE_WEIGHTS[type];
+        }
+        for(int file = 0; file < 8; file++)
+            ADJACENT_FILES[file] = (file > 0 ? BitBoard.FILE_A << file - 1 : 0) |
+                    (file < 7 ? BitBoard.FILE_A << file + 1 : 0);
+        for(int square = 0; square < 64; square++) {
+            int rank = square >>> 3;
+            long files = BitBoard.FILE_A << (square & 7) | ADJACENT_FILES[square & 7];
+            PASSED_MASKS[BitBoard.WHITE][square] = rank == 7 ? 0 : files & -1L << (rank + 1) * 8;
+            PASSED_MASKS[BitBoard.BLACK][square] = files & (1L << rank * 8) - 1;
+        }
+
+        String file = System.getProperty(WEIGHTS_PROPERTY);
+        Path path = Path.of(file != null ? file : DEFAULT_WEIGHTS_FILE);
+        if(file != null || Files.exists(path)) {
+            try {
+                loadWeights(path);
+                System.out.println("[Evaluation] Loaded weights from " + path);
+            } catch (IOException e) {
+                System.out.println("[Evaluation] Could not load weights, using the default ones: " + e.getMessage());
+            }
+        }
+        buildTables();
+    }
+
+    private Evaluation() {}
+
+    // Combines the material values and the piece-square tables into MIDDLEGAME and ENDGAME
+    private static void buildTables() {
+        for(int type = 0; type < 6; type++) {
+            for(int square = 0; square < 64; square++) {
+                MIDDLEGAME[type][square] = MIDDLEGAME_VALUES[type] + MIDDLEGAME_TABLES[type][square ^ 56];
+                ENDGAME[type][square] = ENDGAME_VALUES[type] + ENDGAME_TABLES[type][square ^ 56];
+                MIDDLEGAME[type + 6][square] = -(MIDDLEGAME_VALUES[type] + MIDDLEGAME_TABLES[type][square]);
+                ENDGAME[type + 6][square] = -(ENDGAME_VALUES[type] + ENDGAME_TABLES[type][square]);
+            }
+        }
+    }
+
+    /**
+     * @return every weight, the tables in the order of the weights file, one after the other
+     */
+    public static int[] getWeights() {
+        int[] weights = new int[weightCount()];
+        int k = 0;
+        for(int[] table : WEIGHTS.values()) {
+            System.arraycopy(table, 0, weights, k, table.length);
+            k += table.length;
+        }
+        return weights;
+    }
+
+    /**
+     * @return the number of weights
+     */
+    public static int weightCount() {
+        int count = 0;
+        for(int[] table : WEIGHTS.values())
+            count += table.length;
+        return count;
+    }
+
+    /**
+     * Replaces every weight. Boards built before keep the totals of the old weights.
+     * @param weights the weights in the order of {@link #getWeights()}
+     * @throws IllegalArgumentException if the number of weights is wrong
+     */
+    public static void setWeights(int[] weights) {
+        if(weights.length != weightCount())
+            throw new IllegalArgumentException("Expected " + weightCount() + " weights, got " + weights.length);
+        int k = 0;
+        for(int[] table : WEIGHTS.values()) {
+            System.arraycopy(weights, k, table, 0, table.length);
+            k += table.length;
+        }
+        buildTables();
+    }
+
+    /**
+     * @param name name of a weight table, as in the weights file
+     * @param index index in the table
+     * @return index of the weight in {@link #getWeights()}
+     * @throws IllegalArgumentException if there is no such weight
+     */
+    public static int weightIndex(String name, int index) {
+        int offset = 0;
+        for(Map.Entry<String, int[]> table : WEIGHTS.entrySet()) {
+            if(table.getKey().equals(name)) {
+                if(index < 0 || index >= table.getValue().length)
+                    break;
+                return offset + index;
+            }
+            offset += table.getValue().length;
+        }
+        throw new IllegalArgumentException("No weight " + name + "[" + index + "]");
+    }
+
+    /**
+     * @param type piece type, the white piece constant
+     * @return the name of its middlegame piece-square table in the weights file
+     */
+    static String middlegameTableName(int type) {
+        return "Middlegame" + PIECE_NAMES[type] + "Table";
+    }
+
+    /**
+     * @param type piece type, the white piece constant
+     * @return the name of its endgame piece-square table in the weights file
+     */
+    static String endgameTableName(int type) {
+        return "Endgame" + PIECE_NAMES[type] + "Table";
+    }
+
+    /**
+     * Reads the weights from a weights file. Tables missing from the file keep their values.
+     * @param path the weights file
+     * @throws IOException if the file cannot be read, names an unknown table or has the wrong number of values
+     */
+    public static void loadWeights(Path path) throws IOException {
+        Map<String, int[]> tables = new LinkedHashMap<>();
+        for(String line : Files.readAllLines(path)) {
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\\s+");
+            int[] table = WEIGHTS.get(fields[0]);
+            if(table == null || fields.length != table.length + 1)
+                throw new IOException("Invalid weights line in " + path + ": " + fields[0]);
+            int[] values = new int[table.length];
+            try {
+                for(int k = 0; k < values.length; k++)
+                    values[k] = Integer.parseInt(fields[k + 1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid weights line in " + path + ": " + fields[0], e);
+            }
+            tables.put(fields[0], values);
+        }
+        for(Map.Entry<String, int[]> table : tables.entrySet())
+            System.arraycopy(table.getValue(), 0, WEIGHTS.get(table.getKey()), 0, table.getValue().length);
+        buildTables();
+    }
+
+    /**
+     * Writes the weights to a weights file, one table per line. Piece-square tables are written with a8 first and h1
+     * last.
+     * @param path the weights file
+     * @throws IOException if the file cannot be written
+     */
+    public static void saveWeights(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# Evaluation weights in centipawns, see chess.Evaluation");
+        for(Map.Entry<String, int[]> table : WEIGHTS.entrySet()) {
+            StringBuilder line = new StringBuilder(table.getKey());
+            for(int weight : table.getValue())
+                line.append(' ').append(weight);
+            lines.add(line.toString());
+        }
+        Files.write(path, lines);
+    }
+
+    /**
+     * Evaluates a position from the totals kept by the board and the pawn structure, computed from scratch.
+     * @param board the position
+     * @return the score in centipawns from the point of view of the side to move
+     */
+    public static int evaluate(BitBoard board) {
+        return evaluate(board, pawnStructure(board));
+    }
+
+    /**
+     * Evaluates a position from the totals kept by the board and the pawn structure found in the pawn hash table.
+     * @param board the position
+     * @param pawnTable the pawn hash table of the search thread
+     * @return the score in centipawns from the point of view of the side to move
+     */
+    public static int evaluate(BitBoard board, PawnHashTable pawnTable) {
+        return evaluate(board, pawnTable.probe(board));
+    }
+
+    private static int evaluate(BitBoard board, int pawns) {
+        int score = taper(board.getMiddlegameScore() + middlegame(pawns), board.getEndgameScore() + endgame(pawns),
+                board.getPhase());
+        return board.getSideToMove() == BitBoard.WHITE ? score : -score;
+    }
+
+    /**
+     * Computes the pawn structure terms of a position: passed, doubled and isolated pawns.
+     * @param board the position
+     * @return the middlegame and endgame scores from the point of view of white, packed with {@link #pack(int, int)}
+     */
+    public static int pawnStructure(BitBoard board) {
+        long white = board.getPieces(BitBoard.WHITE_PAWN);
+        long black = board.getPieces(BitBoard.BLACK_PAWN);
+        return pawnStructure(white, black, BitBoard.WHITE, null) - pawnStructure(black, white, BitBoard.BLACK, null);
+    }
+
+    // Sums the pawn structure terms of one side. When counts is not null, the number of times each term applies is
+    // added to it, indexed as described at PAWN_TERMS
+    static int pawnStructure(long pawns, long enemyPawns, int colour, int[] counts) {
+        int middlegame = 0, endgame = 0;
+        for(long set = pawns; set != 0; set &= set - 1) {
+            int square = Long.numberOfTrailingZeros(set);
+            if((enemyPawns & PASSED_MASKS[colour][square]) == 0) {
+                int rank = colour == BitBoard.WHITE ? square >>> 3 : 7 - (square >>> 3);
+                middlegame += PASSED_MIDDLEGAME[rank];
+                endgame += PASSED_ENDGAME[rank];
+                if(counts != null)
+                    counts[rank]++;
+            }
+            if((pawns & ADJACENT_FILES[square & 7]) == 0) {
+                middlegame += ISOLATED[0];
+                endgame += ISOLATED[1];
+                if(counts != null)
+                    counts[ISOLATED_TERM]++;
+            }
+        }
+        for(int file = 0; file < 8; file++) {
+            int count = Long.bitCount(pawns & BitBoard.FILE_A << file);
+            if(count > 1) {
+                middlegame += DOUBLED[0] * (count - 1);
+                endgame += DOUBLED[1] * (count - 1);
+                if(counts != null)
+                    counts[DOUBLED_TERM] += count - 1;
+            }
+        }
+        return pack(middlegame, endgame);
+    }
+
+    /**
+     * Packs a middlegame and an endgame score into one int, the middlegame score in the upper 16 bits. Packed scores
+     * can be added and subtracted as they are.
+     * @param middlegame middlegame score
+     * @param endgame endgame score
+     * @return the packed score
+     */
+    public static int pack(int middlegame, int endgame) {
+        return (middlegame << 16) + endgame;
+    }
+
+    /**
+     * @param packed score packed with {@link #pack(int, int)}
+     * @return the middlegame score
+     */
+    public static int middlegame(int packed) {
+        return (packed + 0x8000) >> 16;
+    }
+
+    /**
+     * @param packed score packed with {@link #pack(int, int)}
+     * @return the endgame score
+     */
+    public static int endgame(int packed) {
+        return (short) packed;
+    }
+
+    /**
+     * Blends a middlegame and an endgame score by the game phase. A promotion can raise the phase above
+     * {@link #MAX_PHASE}, in which case the middlegame score is used alone.
+     * @param middlegame middlegame score
+     * @param endgame endgame score
+     * @param phase game phase, {@link #MAX_PHASE} at the start and 0 with only kings and pawns
+     * @return the blended score
+     */
+    public static int taper(int middlegame, int endgame, int phase) {
+        phase = Math.min(phase, MAX_PHASE);
+        return (middlegame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    /**
+     * Computes the middlegame score, endgame score and phase of a position from scratch, to check the totals the
+     * board keeps.
+     * @param board the position
+     * @return {middlegame, endgame, phase}, the scores from the point of view of white
+     */
+    public static int[] compute(BitBoard board) {
+        int[] terms = new int[3];
+        for(int square = 0; square < 64; square++) {
+            int piece = board.pieceAt(square);
+            if(piece != BitBoard.NO_PIECE) {
+                terms[0] += MIDDLEGAME[piece][square];
+                terms[1] += ENDGAME[piece][square];
+                terms[2] += PHASE[piece];
+            }
+        }
+        return terms;
+    }
+}
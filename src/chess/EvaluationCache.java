@@ -0,0 +1,86 @@
+package chess;
+
+/**
+ * Small lossy cache of static evaluations, keyed by the Zobrist hash of the position. Positions come back often in a
+ * search, through transpositions and because quiescence search and the pruning decisions of a node evaluate the same
+ * position, and the evaluation is deterministic, so a cached score is as good as a new one.
+ * <p>
+ *     Every search thread has its own cache, so entries are read and written without synchronization. A new entry
+ *     always replaces the old one in its slot.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class EvaluationCache {
+    public static final int DEFAULT_ENTRIES = 1 << 16;
+    // Returned by probe when the position is not in the cache; no evaluation reaches it
+    public static final int MISS = Integer.MIN_VALUE;
+
+    private final long[] keys;
+    private final int[] scores;
+    private final int mask;
+
+    private long probes;
+    private long hits;
+
+    /**
+     * @param entries number of entries, rounded down to a power of two
+     */
+    public EvaluationCache(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        scores = new int[size];
+        mask = size - 1;
+        clear();
+    }
+
+    /**
+     * Empties the cache, for example when the evaluation changes.
+     */
+    public void clear() {
+        // Key 0 is a valid key, so the empty slots must not match it
+        for(int k = 0; k < keys.length; k++)
+            keys[k] = ~(long) k;
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @return the cached score, or {@link #MISS} if the position is not in the cache
+     */
+    public int probe(long key) {
+        int index = (int) key & mask;
+        probes++;
+        if(keys[index] != key)
+            return MISS;
+        hits++;
+        return scores[index];
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @param score the static evaluation of the position
+     */
+    public void store(long key, int score) {
+        int index = (int) key & mask;
+        keys[index] = key;
+        scores[index] = score;
+    }
+
+    /**
+     * @return the share of probes that found their entry, 0 ... 1
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    public void resetStatistics() {
+        probes = 0;
+        hits = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Evaluation cache %d entries, probes=%d hits=%d (%.1f%%)", keys.length, probes, hits,
+                100 * getHitRate());
+    }
+}
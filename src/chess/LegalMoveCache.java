@@ -0,0 +1,91 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * The legal moves of one position, stored as a bitboard of legal destinations for every origin square, so that
+ * checking a move the player drops on the board is a single lookup.
+ * <p>
+ *     The moves are generated by {@link BitBoard} the first time they are needed after the position changes and kept
+ *     until the {@link Board#getKey() key} of the board is different, so the checks of one move, the game over status
+ *     and move hints all share the same generation.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class LegalMoveCache {
+    private final long[] destinations = new long[64];
+    private final MoveList moves = new MoveList();
+    private long key;
+    private boolean valid;
+    private int size;
+    private boolean check;
+
+    /**
+     * Regenerates the moves if the board is not in the position they were generated for.
+     * @param board the board
+     * @return this cache
+     */
+    public LegalMoveCache update(Board board) {
+        long boardKey = board.getKey();
+        if(valid && boardKey == key)
+            return this;
+
+        BitBoard position = new BitBoard(board);
+        moves.clear();
+        position.generateMoves(moves);
+        Arrays.fill(destinations, 0);
+        size = 0;
+        for(int k = 0; k < moves.size(); k++) {
+            int move = moves.get(k);
+            long to = 1L << PackedMove.to(move);
+            // The four promotions of a pawn count as a single move, as on the board
+            if((destinations[PackedMove.from(move)] & to) == 0)
+                size++;
+            destinations[PackedMove.from(move)] |= to;
+        }
+        check = position.isCheck();
+        key = boardKey;
+        valid = true;
+        return this;
+    }
+
+    /**
+     * Forgets the cached moves, so they are generated again on the next update.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    public boolean isLegal(int i0, int j0, int i1, int j1) {
+        if(i0 < 0 || i0 >= 8 || j0 < 0 || j0 >= 8 || i1 < 0 || i1 >= 8 || j1 < 0 || j1 >= 8)
+            return false;
+        return (destinations[BitBoard.square(i0, j0)] & (1L << BitBoard.square(i1, j1))) != 0;
+    }
+
+    /**
+     * @return bitboard of the squares the piece on (i, j) can legally move to, bit i * 8 + j set for square (i, j)
+     */
+    public long getDestinations(int i, int j) {
+        return destinations[BitBoard.square(i, j)];
+    }
+
+    /**
+     * @return number of legal moves, counting a promotion once
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isCheck() {
+        return check;
+    }
+
+    public boolean isCheckMate() {
+        return check && size == 0;
+    }
+
+    public boolean isStaleMate() {
+        return !check && size == 0;
+    }
+}
@@ -1,6 +1,7 @@
 package chess;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Class meant as a more efficient alternative to {@link Board}. 
@@ -27,6 +28,7 @@ import java.util.ArrayList;
 public class LightBoard {
     private char[][] matrix;
     boolean enPassant;
+    int enPassantColumn;
     boolean whiteCanCastle;
     boolean blackCanCastle;
     boolean whiteRightRookMoved;
@@ -35,6 +37,8 @@ public class LightBoard {
     boolean blackLeftRookMoved;
 
     PieceColour turn;
+    // Zobrist hash of the piece placement, updated by every write to the matrix
+    private long placementKey;
 
     public LightBoard(Board board) {
         matrix = board.getBoardAsMatrix();
@@ -46,6 +50,7 @@ public class LightBoard {
         whiteRightRookMoved = false;
         whiteLeftRookMoved = false;
         turn = PieceColour.WHITE;
+        placementKey = Zobrist.placementKey(matrix);
     }
 
     public LightBoard() {
@@ -55,6 +60,7 @@ public class LightBoard {
     private LightBoard(char[][] matrix) {
         this();
         this.matrix = matrix;
+        placementKey = Zobrist.placementKey(matrix);
     }
 
     /**
@@ -62,40 +68,73 @@ public class LightBoard {
      * <p>
      *     A move is represented as an array of int with 4 elements, with source(int[0], int[1]) and dest(int[2], int[3]).
      * </p>
+     * <p>
+     *     The moves are generated by a {@link BitBoard} built from this board, so moves that would leave the king in
+     *     check are never returned, castling is only offered if the king does not pass through an attacked square,
+     *     and en passant is only offered on the column of the pawn that just moved two squares.
+     * </p>
      * @return  an ArrayList of int[4].
      * @author Daniel Barac
      */
     public ArrayList<int[]> getAllLegalMoves() {
-        ArrayList<int[]> result = new ArrayList<>();
-        for(int i = 0; i < 8; i++)
-            for(int j = 0; j < 8; j++)
-                if(turn.equals(PieceColour.WHITE)) {
-                    switch (matrix[i][j]) {
-                        case 'p' -> result.addAll(getAllPawnMoves(i, j, PieceColour.WHITE));
-                        case 'b' -> result.addAll(getAllBishopMoves(i, j, PieceColour.WHITE));
-                        case 'n' -> result.addAll(getAllKnightMoves(i, j, PieceColour.WHITE));
-                        case 'r' -> result.addAll(getAllRookMoves(i, j, PieceColour.WHITE));
-                        case 'q' -> {
-                            result.addAll(getAllBishopMoves(i, j, PieceColour.WHITE));
-                            result.addAll(getAllRookMoves(i, j, PieceColour.WHITE));
-                        }
-                        case 'k' -> result.addAll(getAllKingMoves(i, j, PieceColour.WHITE));
-                    }
-                }
-                else {
-                    switch (matrix[i][j]) {
-                        case 'P' -> result.addAll(getAllPawnMoves(i, j, PieceColour.BLACK));
-                        case 'B' -> result.addAll(getAllBishopMoves(i, j, PieceColour.BLACK));
-                        case 'N' -> result.addAll(getAllKnightMoves(i, j, PieceColour.BLACK));
-                        case 'R' -> result.addAll(getAllRookMoves(i, j, PieceColour.BLACK));
-                        case 'Q' -> {
-                            result.addAll(getAllBishopMoves(i, j, PieceColour.BLACK));
-                            result.addAll(getAllRookMoves(i, j, PieceColour.BLACK));
-                        }
-                        case 'K' -> result.addAll(getAllKingMoves(i, j, PieceColour.BLACK));
-                    }
-                }
-        return result;
+        return new BitBoard(matrix, turn, getCastlingRights(), getEnPassantSquare()).getAllLegalMoves();
+    }
+
+    /**
+     * @return the castling rights as a mask of the {@link BitBoard} castling constants
+     */
+    public int getCastlingRights() {
+        int castlingRights = 0;
+        if(whiteCanCastle && matrix[0][4] == 'k') {
+            if(!whiteRightRookMoved && matrix[0][7] == 'r') castlingRights |= BitBoard.WHITE_KING_SIDE;
+            if(!whiteLeftRookMoved && matrix[0][0] == 'r') castlingRights |= BitBoard.WHITE_QUEEN_SIDE;
+        }
+        if(blackCanCastle && matrix[7][4] == 'K') {
+            if(!blackRightRookMoved && matrix[7][7] == 'R') castlingRights |= BitBoard.BLACK_KING_SIDE;
+            if(!blackLeftRookMoved && matrix[7][0] == 'R') castlingRights |= BitBoard.BLACK_QUEEN_SIDE;
+        }
+        return castlingRights;
+    }
+
+    /**
+     * @return the square (i * 8 + j) a pawn can move to when capturing en passant, -1 if there is none
+     */
+    public int getEnPassantSquare() {
+        if(!enPassant)
+            return -1;
+        return BitBoard.square(turn == PieceColour.WHITE ? 5 : 2, enPassantColumn);
+    }
+
+    /**
+     * Returns the Zobrist hash of the position (see {@link Zobrist}). The piece placement part is updated
+     * incrementally by {@link #makeMove(int, int, int, int)}; the side to move, castling and en passant parts are read
+     * from the flags of the board in constant time.
+     * @return the 64 bit hash
+     */
+    public long getKey() {
+        return placementKey ^ Zobrist.stateKey(turn, getCastlingRights(), getEnPassantSquare());
+    }
+
+    /**
+     * Two boards are equal if they hold the same position: the same pieces on the same squares, the same side to
+     * move, castling rights and en passant square.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o)
+            return true;
+        if(!(o instanceof LightBoard))
+            return false;
+        LightBoard other = (LightBoard) o;
+        return getKey() == other.getKey() && turn == other.turn &&
+                getCastlingRights() == other.getCastlingRights() &&
+                getEnPassantSquare() == other.getEnPassantSquare() && Arrays.deepEquals(matrix, other.matrix);
+    }
+
+    @Override
+    public int hashCode() {
+        long key = getKey();
+        return (int) (key ^ (key >>> 32));
     }
 
     /**
@@ -108,42 +147,54 @@ public class LightBoard {
      * @author Daniel Barac
      */
     public void makeMove(int i0, int j0, int i1, int j1) {
+        movePieces(i0, j0, i1, j1);
+        turn = turn.invert();
+        if(Zobrist.debug)
+            Zobrist.verify(getKey(), Zobrist.compute(matrix, turn, getCastlingRights(), getEnPassantSquare()),
+                    "makeMove " + i0 + j0 + i1 + j1);
+    }
+
+    private void movePieces(int i0, int j0, int i1, int j1) {
         enPassant = false;
         char c = matrix[i0][j0];
 
         if(c == 'k' && whiteCanCastle && !whiteRightRookMoved && i1 == i0 && j1 == 6) {
-            matrix[0][4] = ' ';
-            matrix[0][7] = ' ';
-            matrix[0][5] = 'r';
-            matrix[0][6] = 'k';
+            set(0, 4, ' ');
+            set(0, 7, ' ');
+            set(0, 5, 'r');
+            set(0, 6, 'k');
             whiteCanCastle = false;
             return;
         }
         if(c == 'k' && whiteCanCastle && !whiteLeftRookMoved && i1 == i0 && j1 == 2) {
-            matrix[0][4] = ' ';
-            matrix[0][0] = ' ';
-            matrix[0][3] = 'r';
-            matrix[0][2] = 'k';
+            set(0, 4, ' ');
+            set(0, 0, ' ');
+            set(0, 3, 'r');
+            set(0, 2, 'k');
             whiteCanCastle = false;
             return;
         }
         if(c == 'K' && blackCanCastle && !blackRightRookMoved && i1 == i0 && j1 == 6) {
-            matrix[7][4] = ' ';
-            matrix[7][7] = ' ';
-            matrix[7][5] = 'R';
-            matrix[7][6] = 'K';
+            set(7, 4, ' ');
+            set(7, 7, ' ');
+            set(7, 5, 'R');
+            set(7, 6, 'K');
             blackCanCastle = false;
             return;
         }
         if(c == 'K' && blackCanCastle && !blackLeftRookMoved && i1 == i0 && j1 == 2) {
-            matrix[7][4] = ' ';
-            matrix[7][0] = ' ';
-            matrix[7][3] = 'R';
-            matrix[7][2] = 'K';
+            set(7, 4, ' ');
+            set(7, 0, ' ');
+            set(7, 3, 'R');
+            set(7, 2, 'K');
             blackCanCastle = false;
             return;
         }
 
+        if(c == 'k')
+            whiteCanCastle = false;
+        if(c == 'K')
+            blackCanCastle = false;
         if(c == 'r' && i0 == 0 && j0 == 0)
             whiteLeftRookMoved = true;
         if(c == 'r' && i0 == 0 && j0 == 7)
@@ -156,16 +207,17 @@ public class LightBoard {
         if(c == 'p') {
             if(i1 - i0 == 2) {
                 enPassant = true;
-                matrix[i0][j0] = ' ';
-                matrix[i1][j1] = 'p';
+                enPassantColumn = j1;
+                set(i0, j0, ' ');
+                set(i1, j1, 'p');
                 return;
             }
             if(i1 - i0 == 1 && Math.abs(j1 - j0) == 1) {
-                matrix[i0][j0] = ' ';
+                set(i0, j0, ' ');
                 // en passant
                 if(matrix[i1][j1] == ' ')
-                    matrix[i1 - 1][j1] = ' ';
-                matrix[i1][j1] = 'p';
+                    set(i1 - 1, j1, ' ');
+                set(i1, j1, 'p');
                 return;
             }
         }
@@ -173,22 +225,30 @@ public class LightBoard {
         if(c == 'P') {
             if(i0 - i1 == 2) {
                 enPassant = true;
-                matrix[i0][j0] = ' ';
-                matrix[i1][j1] = 'P';
+                enPassantColumn = j1;
+                set(i0, j0, ' ');
+                set(i1, j1, 'P');
                 return;
             }
             if(i0 - i1 == 1 && Math.abs(j1 - j0) == 1) {
-                matrix[i0][j0] = ' ';
+                set(i0, j0, ' ');
                 // en passant
                 if(matrix[i1][j1] == ' ')
-                    matrix[i1 + 1][j1] = ' ';
-                matrix[i1][j1] = 'P';
+                    set(i1 + 1, j1, ' ');
+                set(i1, j1, 'P');
                 return;
             }
         }
 
-        matrix[i0][j0] = ' ';
-        matrix[i1][j1] = c;
+        set(i0, j0, ' ');
+        set(i1, j1, c);
+    }
+
+    // Writes a square and updates the hash of the piece placement
+    private void set(int i, int j, char c) {
+        int square = BitBoard.square(i, j);
+        placementKey ^= Zobrist.pieceKey(matrix[i][j], square) ^ Zobrist.pieceKey(c, square);
+        matrix[i][j] = c;
     }
 
     public LightBoard copy() {
@@ -198,7 +258,17 @@ public class LightBoard {
                 result[i][j] = matrix[i][j];
             }
         }
-        return new LightBoard(result);
+        LightBoard copy = new LightBoard(result);
+        copy.enPassant = enPassant;
+        copy.enPassantColumn = enPassantColumn;
+        copy.whiteCanCastle = whiteCanCastle;
+        copy.blackCanCastle = blackCanCastle;
+        copy.whiteRightRookMoved = whiteRightRookMoved;
+        copy.whiteLeftRookMoved = whiteLeftRookMoved;
+        copy.blackRightRookMoved = blackRightRookMoved;
+        copy.blackLeftRookMoved = blackLeftRookMoved;
+        copy.turn = turn;
+        return copy;
     }
 
     public char getPiece(int i, int j) {
@@ -248,269 +318,4 @@ public class LightBoard {
 
         return out.toString();
     }
-
-    private boolean isLower(char c) {
-        return c >= 'a' && c <= 'z';
-    }
-
-    private char toLower(char c) {
-        if(isUpper(c))
-            return (char) (c - 32);
-        return c;
-    }
-
-    private boolean isUpper(char c) {
-        return c >= 'A' && c <= 'Z';
-    }
-
-    private ArrayList<int[]> getAllBishopMoves(int i, int j, PieceColour colour) {
-        // North-east, south-east etc
-        boolean ne = true, se = true, nw = true, sw = true;
-        ArrayList<int[]> result = new ArrayList<>();
-        for(int k = 0; k < 8; k++) {
-            if(i + k < 8 && j + k < 8 && ne) {
-                char c = matrix[i + k][j + k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i + k, j + k});
-                    ne = (c == ' ');
-                }
-                else
-                    ne = false;
-            }
-            if(i - k >= 0 && j + k < 8 && se) {
-                char c = matrix[i - k][j + k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i - k, j + k});
-                    se = (c == ' ');
-                }
-                else
-                    se = false;
-            }
-            if(i + k < 8 && j - k >= 0 && nw) {
-                char c = matrix[i + k][j - k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i + k, j - k});
-                    nw = (c == ' ');
-                }
-                else
-                    nw = false;
-            }
-            if(i - k >= 0 && j - k >= 0 && sw) {
-                char c = matrix[i - k][j - k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i - k, j - k});
-                    sw = (c == ' ');
-                }
-                else
-                    sw = false;
-            }
-        }
-
-        return result;
-    }
-
-    private ArrayList<int[]> getAllRookMoves(int i, int j, PieceColour colour) {
-        // North, east, south, west
-        boolean n = true, e = true, s = true, w = true;
-        ArrayList<int[]> result = new ArrayList<>();
-        for(int k = 0; k < 8; k++) {
-            if(i + k < 8 && n) {
-                char c = matrix[i + k][j];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i + k, j});
-                    n = (c == ' ');
-                }
-                else
-                    n = false;
-            }
-            if(i - k >= 0 && s) {
-                char c = matrix[i - k][j];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i - k, j});
-                    s = (c == ' ');
-                }
-                else
-                    s = false;
-            }
-            if(j - k >= 0 && w) {
-                char c = matrix[i][j - k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i, j - k});
-                    w = (c == ' ');
-                }
-                else
-                    w = false;
-            }
-            if(j + k < 8 && e) {
-                char c = matrix[i][j + k];
-                if(isLandableSquare(colour, c)) {
-                    result.add(new int[] {i, j, i, j + k});
-                    e = (c == ' ');
-                }
-                else
-                    e = false;
-            }
-        }
-
-        return result;
-    }
-
-    private ArrayList<int[]> getAllKnightMoves(int i, int j, PieceColour colour) {
-        ArrayList<int[]> result = new ArrayList<>();
-
-        if(i + 2 < 8 && j + 1 < 8) {
-            char c = matrix[i + 2][j + 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 2, j + 1});
-            }
-        }
-        if(i + 2 < 8 && j - 1 >= 0) {
-            char c = matrix[i + 2][j - 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 2, j - 1});
-            }
-        }
-        if(i - 2 >= 0 && j + 1 < 8) {
-            char c = matrix[i - 2][j + 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 2, j + 1});
-            }
-        }
-        if(i - 2 >= 0 && j - 1 >= 0) {
-            char c = matrix[i - 2][j - 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 2, j - 1});
-            }
-        }
-        if(i + 1 < 8 && j + 2 < 8) {
-            char c = matrix[i + 1][j + 2];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 1, j + 2});
-            }
-        }
-        if(i + 1 < 8 && j - 2 >= 0) {
-            char c = matrix[i + 1][j - 2];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 1, j - 2});
-            }
-        }
-        if(i - 1 >= 0 && j + 2 < 8) {
-            char c = matrix[i - 1][j + 2];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 1, j + 2});
-            }
-        }
-        if(i - 1 >= 0 && j - 2 >= 0) {
-            char c = matrix[i - 1][j - 2];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 1, j - 2});
-            }
-        }
-
-        return result;
-    }
-
-    private ArrayList<int[]> getAllPawnMoves(int i, int j, PieceColour colour) {
-        ArrayList<int[]> result = new ArrayList<>();
-        int step = colour.equals(PieceColour.WHITE) ? 1 : -1;
-        if(i + step < 8 && i + step >= 0) {
-            char c = matrix[i + step][j];
-            if(isLandableSquare(colour, c))
-                result.add(new int[] {i, j, i + step, j});
-            if(j + 1 < 8) {
-                c = matrix[i + step][j + 1];
-                if(isDiffColor(colour, c) ||
-                        isDiffColor(colour, matrix[i][j + 1]) && toLower(matrix[i][j + 1]) == 'p' && enPassant) {
-                    result.add(new int[] {i, j, i + step, j + 1});
-                }
-            }
-            if(j - 1 >= 0) {
-                c = matrix[i + step][j - 1];
-                if(isDiffColor(colour, c) ||
-                        isDiffColor(colour, matrix[i][j - 1]) && toLower(matrix[i][j - 1]) == 'p' && enPassant) {
-                    result.add(new int[] {i, j, i + step, j - 1});
-                }
-            }
-            if(i == 1 && colour.equals(PieceColour.WHITE) || i == 6 && colour.equals(PieceColour.BLACK)) {
-                c = matrix[i + 2 * step][j];
-                if(isLandableSquare(colour, c) && matrix[i + step][j] == ' ')
-                    result.add(new int[] {i, j, i + 2 * step, j});
-            }
-        }
-        return result;
-    }
-
-    private ArrayList<int[]> getAllKingMoves(int i, int j, PieceColour colour) {
-        ArrayList<int[]> result = new ArrayList<>();
-        if(i + 1 < 8) {
-            char c = matrix[i + 1][j];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 1, j});
-            }
-        }
-        if(i - 1 >= 0) {
-            char c = matrix[i - 1][j];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 1, j});
-            }
-        }
-        if(j + 1 < 8) {
-            char c = matrix[i][j + 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i, j + 1});
-            }
-        }
-        if(j - 1 >= 0) {
-            char c = matrix[i][j - 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i, j - 1});
-            }
-        }
-        if(i + 1 < 8 && j + 1 < 8) {
-            char c = matrix[i + 1][j + 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 1, j + 1});
-            }
-        }
-        if(i + 1 < 8 && j - 1 >= 0) {
-            char c = matrix[i + 1][j - 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i + 1, j - 1});
-            }
-        }
-        if(i - 1 >= 0 && j + 1 < 8) {
-            char c = matrix[i - 1][j + 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 1, j + 1});
-            }
-        }
-        if(i - 1 >= 0 && j - 1 >= 0) {
-            char c = matrix[i - 1][j - 1];
-            if (isLandableSquare(colour, c)) {
-                result.add(new int[]{i, j, i - 1, j - 1});
-            }
-        }
-
-        if(whiteCanCastle && matrix[0][4] == 'k' && i == 0 && j == 4)
-            if(matrix[0][7] == 'r' && matrix[0][6] == ' ' && matrix[0][5] == ' ')
-                result.add(new int[] {i, j, i, j + 2});
-        if(matrix[0][0] == 'r' && matrix[0][1] == ' ' && matrix[0][2] == ' ' && matrix[0][3] == ' ')
-            result.add(new int[] {i, j, i, j - 2});
-
-        if(blackCanCastle && matrix[7][4] == 'K' && i == 7 && j == 4)
-            if(matrix[7][7] == 'R' && matrix[7][6] == ' ' && matrix[7][5] == ' ')
-                result.add(new int[] {i, j, i, j + 2});
-        if(matrix[7][0] == 'R' && matrix[7][1] == ' ' && matrix[7][2] == ' ' && matrix[7][3] == ' ')
-            result.add(new int[] {i, j, i, j - 2});
-
-        return result;
-    }
-
-    private boolean isLandableSquare(PieceColour colour, char c) {
-        return c == ' ' || isDiffColor(colour, c);
-    }
-
-    private boolean isDiffColor(PieceColour colour, char c) {
-        return isLower(c) && colour.equals(PieceColour.BLACK) || isUpper(c) && colour.equals(PieceColour.WHITE);
-    }
 }
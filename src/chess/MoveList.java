@@ -0,0 +1,59 @@
+package chess;
+
+/**
+ * Growable list of packed moves (see {@link PackedMove}) backed by a primitive int array. A search keeps one list per
+ * ply and calls {@link #clear()} before reusing it, so generating moves does not allocate.
+ *
+ * @author Daniel Barac
+ */
+public class MoveList {
+    // No legal chess position has more than 218 moves
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private int[] moves;
+    private int size;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MoveList(int capacity) {
+        moves = new int[capacity];
+    }
+
+    public void add(int move) {
+        if(size == moves.length) {
+            int[] larger = new int[moves.length * 2];
+            System.arraycopy(moves, 0, larger, 0, size);
+            moves = larger;
+        }
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int move) {
+        for(int k = 0; k < size; k++)
+            if(moves[k] == move)
+                return true;
+        return false;
+    }
+}
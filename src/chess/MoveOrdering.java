@@ -0,0 +1,189 @@
+package chess;
+
+/**
+ * Orders the moves of a node so that the move most likely to cause a beta cutoff is searched first. Alpha-beta prunes
+ * the most when the best move comes first, and in the worst case, searching the best move last, it prunes nothing.
+ * <p>
+ *     The moves are searched in this order:
+ * </p>
+ * <ol>
+ *     <li>the hash move, the best move stored in the transposition table;</li>
+ *     <li>captures and promotions that do not lose material, most valuable victim first and, for the same victim, least
+ *     valuable attacker first (MVV-LVA);</li>
+ *     <li>the two killer moves of the ply, quiet moves that caused a cutoff in a sibling node;</li>
+ *     <li>the counter move, the quiet move that last refuted the previous move;</li>
+ *     <li>the other quiet moves, by their history score, which grows every time the move causes a cutoff;</li>
+ *     <li>captures that lose material according to the static exchange evaluation ({@link BitBoard#see}).</li>
+ * </ol>
+ * <p>
+ *     The moves are not sorted up front: {@link #next} selects the best remaining move, because after a cutoff the
+ *     rest of the list is never looked at. One instance holds the tables of one search thread.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class MoveOrdering {
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 29;
+    private static final int KILLER_SCORE = 1 << 28;
+    private static final int BAD_CAPTURE_SCORE = -(1 << 29);
+    private static final int COUNTER_MOVE_SCORE = KILLER_SCORE - 2;
+    // History scores are halved when one of them reaches this value, so they stay below the counter move score
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    // Piece values for MVV-LVA, indexed by piece type (pawn, knight, bishop, rook, queen, king)
+    private static final int[] VALUES = {1, 3, 3, 5, 9, 20};
+
+    private final int[][] killers;
+    // Indexed by piece and destination square
+    private final int[][] history = new int[12][64];
+    // Indexed by the piece and destination square of the previous move
+    private final int[][] counterMoves = new int[12][64];
+
+    /**
+     * @param maxPly number of plies killer moves are kept for
+     */
+    public MoveOrdering(int maxPly) {
+        killers = new int[maxPly][2];
+    }
+
+    /**
+     * Gives every move a score to order it by.
+     * @param board the position of the node
+     * @param moves the moves of the node
+     * @param scores array the scores are written to, at the same index as the move
+     * @param hashMove the move from the transposition table, or {@link PackedMove#NULL_MOVE}
+     * @param ply distance from the root
+     * @param previousMove the move that led to this node, or {@link PackedMove#NULL_MOVE}
+     */
+    public void score(BitBoard board, MoveList moves, int[] scores, int hashMove, int ply, int previousMove) {
+        int counterMove = previousMove == PackedMove.NULL_MOVE ? PackedMove.NULL_MOVE :
+                counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)];
+        for(int k = 0; k < moves.size(); k++) {
+            int move = moves.get(k);
+            if(move == hashMove)
+                scores[k] = HASH_MOVE_SCORE;
+            else if(isTactical(move)) {
+                int victim = PackedMove.isCapture(move) ? VALUES[PackedMove.captured(move) % 6] : 0;
+                if(PackedMove.isPromotion(move))
+                    victim += VALUES[PackedMove.promotion(move) % 6];
+                victim = victim * 32 - VALUES[PackedMove.piece(move) % 6];
+                scores[k] = (losesMaterial(board, move) ? BAD_CAPTURE_SCORE : CAPTURE_SCORE) + victim;
+            }
+            else if(move == killers[ply][0])
+                scores[k] = KILLER_SCORE;
+            else if(move == killers[ply][1])
+                scores[k] = KILLER_SCORE - 1;
+            else if(move == counterMove)
+                scores[k] = COUNTER_MOVE_SCORE;
+            else
+                scores[k] = history[PackedMove.piece(move)][PackedMove.to(move)];
+        }
+    }
+
+    /**
+     * Moves the best scored move among those from index k onwards to index k and returns it.
+     * @param moves the moves of the node
+     * @param scores the scores given by {@link #score}
+     * @param k index of the next move to search
+     * @return the move to search next
+     */
+    public static int next(MoveList moves, int[] scores, int k) {
+        int best = k;
+        for(int n = k + 1; n < moves.size(); n++)
+            if(scores[n] > scores[best])
+                best = n;
+        if(best != k) {
+            int move = moves.get(best);
+            moves.set(best, moves.get(k));
+            moves.set(k, move);
+            int score = scores[best];
+            scores[best] = scores[k];
+            scores[k] = score;
+        }
+        return moves.get(k);
+    }
+
+    /**
+     * Captures and promotions are ordered by MVV-LVA; the other moves are quiet and use the killer, counter move and
+     * history tables.
+     * @param move packed move
+     * @return true if the move captures or promotes
+     */
+    public static boolean isTactical(int move) {
+        return PackedMove.isCapture(move) || PackedMove.isPromotion(move);
+    }
+
+    /**
+     * @param score a score given by {@link #score}
+     * @return true if the score is that of a killer or counter move, a quiet move that refuted a similar position
+     */
+    public static boolean isRefutationScore(int score) {
+        return score >= COUNTER_MOVE_SCORE && score < CAPTURE_SCORE;
+    }
+
+    /**
+     * Checks whether a capture loses material according to the static exchange evaluation. A capture of a piece
+     * worth at least as much as the capturing one never does, so the exchange is only evaluated for the others.
+     * @param board the position before the move
+     * @param move packed move
+     * @return true if the move is a capture that loses material
+     */
+    public static boolean losesMaterial(BitBoard board, int move) {
+        if(!PackedMove.isCapture(move) || PackedMove.isPromotion(move) ||
+                BitBoard.SEE_VALUES[PackedMove.piece(move) % 6] <= BitBoard.SEE_VALUES[PackedMove.captured(move) % 6])
+            return false;
+        return board.see(move) < 0;
+    }
+
+    /**
+     * Records a quiet move that caused a beta cutoff. The quiet moves searched before it at the node lose the same
+     * amount of history, so moves that keep failing sink.
+     * @param moves the moves of the node, in the order they were searched
+     * @param index index of the move that caused the cutoff
+     * @param ply distance from the root
+     * @param depth remaining depth of the node
+     * @param previousMove the move that led to the node, or {@link PackedMove#NULL_MOVE}
+     */
+    public void cutoff(MoveList moves, int index, int ply, int depth, int previousMove) {
+        int move = moves.get(index);
+        if(killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        if(previousMove != PackedMove.NULL_MOVE)
+            counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)] = move;
+
+        int bonus = depth * depth;
+        addHistory(move, bonus);
+        for(int k = 0; k < index; k++)
+            if(!isTactical(moves.get(k)))
+                addHistory(moves.get(k), -bonus);
+    }
+
+    private void addHistory(int move, int bonus) {
+        int[] row = history[PackedMove.piece(move)];
+        int to = PackedMove.to(move);
+        row[to] += bonus;
+        if(Math.abs(row[to]) >= HISTORY_LIMIT)
+            age();
+    }
+
+    /**
+     * Prepares the tables for a new search: the killer moves of the previous position no longer apply and the history
+     * is halved, so recent results weigh more.
+     */
+    public void newSearch() {
+        for(int[] ply : killers) {
+            ply[0] = PackedMove.NULL_MOVE;
+            ply[1] = PackedMove.NULL_MOVE;
+        }
+        age();
+    }
+
+    private void age() {
+        for(int[] row : history)
+            for(int k = 0; k < row.length; k++)
+                row[k] /= 2;
+    }
+}
@@ -0,0 +1,179 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Efficiently updatable neural network (NNUE) evaluating a position, an alternative to the handcrafted
+ * {@link Evaluation}.
+ * <p>
+ *     The input layer has one feature for every piece on every square, {@value #INPUTS} in all, seen from both sides:
+ *     from the point of view of black the board is flipped and the colours swapped. The first layer turns the active
+ *     features into a hidden layer for each side, the {@link Accumulator}. As a move only switches two to four features
+ *     on or off, the accumulator is updated by adding and subtracting the weights of those features instead of being
+ *     computed again. The output layer reads the hidden layer of the side to move followed by that of the other side,
+ *     clipped to 0 ... {@link #QA}.
+ * </p>
+ * <p>
+ *     The weights are quantised: the first layer to 16 bit integers scaled by {@link #QA}, the output layer to 8 bit
+ *     integers scaled by {@link #QB}. The loops over the hidden layer are plain loops over primitive arrays, the shape
+ *     the JIT compiler turns into SIMD instructions.
+ * </p>
+ * <p>
+ *     A network file holds, in little endian order: the magic number <code>NNUE</code>, the format version, the
+ *     number of inputs and of hidden neurons as ints, then the first layer weights feature by feature and its biases
+ *     as shorts, the output weights as bytes and the output bias as an int.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class Network {
+    public static final int INPUTS = 768;
+    // Scale of the first layer and upper bound of the clipped activation
+    public static final int QA = 255;
+    // Scale of the output weights
+    public static final int QB = 64;
+    // Centipawns of an output of 1
+    public static final int SCALE = 400;
+    public static final int MAX_HIDDEN_SIZE = 4096;
+
+    private static final int MAGIC = 'N' | 'N' << 8 | 'U' << 16 | 'E' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    final int hiddenSize;
+    // featureWeights[feature * hiddenSize + neuron]
+    final short[] featureWeights;
+    final short[] featureBiases;
+    // The neurons of the side to move, then those of the other side
+    final byte[] outputWeights;
+    final int outputBias;
+
+    /**
+     * @param hiddenSize neurons of the hidden layer of each side, at most {@link #MAX_HIDDEN_SIZE}
+     * @param featureWeights first layer weights, <code>INPUTS * hiddenSize</code> of them, feature by feature
+     * @param featureBiases first layer biases, one per hidden neuron
+     * @param outputWeights output weights, <code>2 * hiddenSize</code> of them
+     * @param outputBias output bias
+     * @throws IllegalArgumentException if the sizes of the arrays do not match the hidden layer
+     */
+    public Network(int hiddenSize, short[] featureWeights, short[] featureBiases, byte[] outputWeights,
+                   int outputBias) {
+        if(hiddenSize <= 0 || hiddenSize > MAX_HIDDEN_SIZE || featureWeights.length != INPUTS * hiddenSize ||
+                featureBiases.length != hiddenSize || outputWeights.length != 2 * hiddenSize)
+            throw new IllegalArgumentException("Invalid network size: " + hiddenSize + " hidden neurons");
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.featureBiases = featureBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads a network from a file in the format described above.
+     * @param path the network file
+     * @return the network
+     * @throws IOException if the file cannot be read or is not a network file
+     */
+    public static Network load(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if(in.remaining() < HEADER_BYTES || in.getInt() != MAGIC)
+            throw new IOException("Not a network file: " + path);
+        int version = in.getInt();
+        int inputs = in.getInt();
+        int hiddenSize = in.getInt();
+        if(version != VERSION || inputs != INPUTS || hiddenSize <= 0 || hiddenSize > MAX_HIDDEN_SIZE ||
+                in.remaining() != fileBytes(hiddenSize) - HEADER_BYTES)
+            throw new IOException("Unsupported network file: " + path + " (version " + version + ", " + inputs +
+                    " inputs, " + hiddenSize + " hidden neurons)");
+        short[] featureWeights = new short[INPUTS * hiddenSize];
+        short[] featureBiases = new short[hiddenSize];
+        byte[] outputWeights = new byte[2 * hiddenSize];
+        in.asShortBuffer().get(featureWeights);
+        in.position(in.position() + 2 * featureWeights.length);
+        in.asShortBuffer().get(featureBiases);
+        in.position(in.position() + 2 * featureBiases.length);
+        in.get(outputWeights);
+        return new Network(hiddenSize, featureWeights, featureBiases, outputWeights, in.getInt());
+    }
+
+    /**
+     * Writes the network to a file in the format read by {@link #load(Path)}.
+     * @param path the network file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(fileBytes(hiddenSize)).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(INPUTS).putInt(hiddenSize);
+        out.asShortBuffer().put(featureWeights);
+        out.position(out.position() + 2 * featureWeights.length);
+        out.asShortBuffer().put(featureBiases);
+        out.position(out.position() + 2 * featureBiases.length);
+        out.put(outputWeights);
+        out.putInt(outputBias);
+        Files.write(path, out.array());
+    }
+
+    private static int fileBytes(int hiddenSize) {
+        return HEADER_BYTES + 2 * INPUTS * hiddenSize + 2 * hiddenSize + 2 * hiddenSize + 4;
+    }
+
+    /**
+     * Builds a network with small random weights. It plays badly, but costs the same to evaluate as a trained one of
+     * the same size, so it serves for benchmarks and tests.
+     * @param hiddenSize neurons of the hidden layer of each side
+     * @param seed seed of the weights
+     * @return the network
+     */
+    public static Network random(int hiddenSize, long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[INPUTS * hiddenSize];
+        short[] featureBiases = new short[hiddenSize];
+        byte[] outputWeights = new byte[2 * hiddenSize];
+        for(int k = 0; k < featureWeights.length; k++)
+            featureWeights[k] = (short) (random.nextInt(65) - 32);
+        for(int k = 0; k < hiddenSize; k++)
+            featureBiases[k] = (short) random.nextInt(QA / 2);
+        for(int k = 0; k < outputWeights.length; k++)
+            outputWeights[k] = (byte) (random.nextInt(33) - 16);
+        return new Network(hiddenSize, featureWeights, featureBiases, outputWeights, 0);
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    /**
+     * @param perspective {@link BitBoard#WHITE} or {@link BitBoard#BLACK}, the side the board is seen from
+     * @param piece BitBoard piece constant
+     * @param square square index, i * 8 + j
+     * @return index of the first layer weights of the feature, in units of the hidden layer size
+     */
+    static int feature(int perspective, int piece, int square) {
+        return perspective == BitBoard.WHITE ? piece * 64 + square : (piece + 6) % 12 * 64 + (square ^ 56);
+    }
+
+    /**
+     * Evaluates the position the accumulator was built for.
+     * @param accumulator the hidden layers of the position, kept up to date by the board
+     * @param sideToMove {@link BitBoard#WHITE} or {@link BitBoard#BLACK}
+     * @return the score in centipawns from the point of view of the side to move
+     */
+    public int evaluate(Accumulator accumulator, int sideToMove) {
+        long output = outputBias +
+                (long) dot(accumulator.values[sideToMove], 0) + dot(accumulator.values[sideToMove ^ 1], hiddenSize);
+        return (int) (output * SCALE / (QA * QB));
+    }
+
+    // Clipped activation of a hidden layer times the output weights starting at the offset
+    private int dot(short[] hidden, int offset) {
+        int sum = 0;
+        for(int k = 0; k < hiddenSize; k++)
+            sum += Math.min(Math.max(hidden[k], 0), QA) * outputWeights[offset + k];
+        return sum;
+    }
+}
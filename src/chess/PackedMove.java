@@ -0,0 +1,96 @@
+package chess;
+
+/**
+ * Static helpers for moves packed into a single <code>int</code>, used by {@link BitBoard} and {@link ChessAI} instead
+ * of {@link Move} objects or int[4] arrays.
+ * <p>
+ *     The bits are laid out as follows:
+ *     <ul>
+ *         <li>0-5 - origin square (i * 8 + j)</li>
+ *         <li>6-11 - destination square</li>
+ *         <li>12-15 - moving piece, one of the {@link BitBoard} piece constants</li>
+ *         <li>16-19 - captured piece, {@link BitBoard#NO_PIECE} if the move is not a capture</li>
+ *         <li>20-23 - piece the pawn promotes to, 0 if the move is not a promotion</li>
+ *         <li>24-27 - flags ({@link #DOUBLE_PUSH}, {@link #EN_PASSANT}, {@link #CASTLING})</li>
+ *     </ul>
+ *     The value 0 is never a valid move (origin and destination would be equal), so it is used as {@link #NULL_MOVE}.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public final class PackedMove {
+    public static final int NULL_MOVE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int EN_PASSANT = 2;
+    public static final int CASTLING = 4;
+
+    private PackedMove() {}
+
+    public static int encode(int from, int to, int piece, int captured, int promotion, int flags) {
+        return from | to << 6 | piece << 12 | captured << 16 | promotion << 20 | flags << 24;
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int piece(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static int captured(int move) {
+        return (move >>> 16) & 0xF;
+    }
+
+    public static int promotion(int move) {
+        return (move >>> 20) & 0xF;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 24) & 0xF;
+    }
+
+    public static boolean isCapture(int move) {
+        return captured(move) != BitBoard.NO_PIECE;
+    }
+
+    public static boolean isPromotion(int move) {
+        return promotion(move) != 0;
+    }
+
+    public static int fromRow(int move) {
+        return from(move) >>> 3;
+    }
+
+    public static int fromColumn(int move) {
+        return from(move) & 7;
+    }
+
+    public static int toRow(int move) {
+        return to(move) >>> 3;
+    }
+
+    public static int toColumn(int move) {
+        return to(move) & 7;
+    }
+
+    /**
+     * @param move packed move
+     * @return the move in coordinate notation, e.g. "e2e4" or "e7e8q"
+     */
+    public static String toString(int move) {
+        if(move == NULL_MOVE)
+            return "0000";
+        String result = "" + (char) ('a' + fromColumn(move)) + (fromRow(move) + 1) +
+                (char) ('a' + toColumn(move)) + (toRow(move) + 1);
+        if(isPromotion(move))
+            result += "pnbrqk".charAt(promotion(move) % 6);
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package chess;
+
+/**
+ * Hash table of pawn structure scores, keyed by the pawn hash of the position ({@link BitBoard#getPawnKey()}). The
+ * pawns change in few moves, so nearly every evaluation finds its pawn structure here instead of computing it.
+ * <p>
+ *     Every search thread has its own table, so entries are read and written without synchronization. A new entry
+ *     always replaces the old one in its slot. The empty table holds key 0 with score 0, which is also the right
+ *     score for a position without pawns.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class PawnHashTable {
+    public static final int DEFAULT_ENTRIES = 1 << 14;
+
+    private final long[] keys;
+    private final int[] scores;
+    private final int mask;
+
+    private long probes;
+    private long hits;
+
+    /**
+     * @param entries number of entries, rounded down to a power of two
+     */
+    public PawnHashTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        scores = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks the pawn structure of the position up, and computes and stores it if it is not in the table.
+     * @param board the position
+     * @return the pawn structure score, see {@link Evaluation#pawnStructure(BitBoard)}
+     */
+    public int probe(BitBoard board) {
+        long key = board.getPawnKey();
+        int index = (int) key & mask;
+        probes++;
+        if(keys[index] == key) {
+            hits++;
+            return scores[index];
+        }
+        int score = Evaluation.pawnStructure(board);
+        keys[index] = key;
+        scores[index] = score;
+        return score;
+    }
+
+    /**
+     * @return the share of probes that found their entry, 0 ... 1
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    public void resetStatistics() {
+        probes = 0;
+        hits = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pawn hash %d entries, probes=%d hits=%d (%.1f%%)", keys.length, probes, hits,
+                100 * getHitRate());
+    }
+}
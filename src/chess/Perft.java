@@ -0,0 +1,265 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Performance test (perft) for the {@link BitBoard} move generator: counts the leaf nodes of the legal move tree to a
+ * fixed depth. The counts for the standard test positions are known, so a mismatch points at a move generation bug,
+ * and the time taken gives the raw move generation speed.
+ * <p>
+ *     At depth 1 the moves are counted instead of played (bulk counting), which is valid because the generator only
+ *     produces legal moves. The work can be split across a {@link ForkJoinPool} by giving every move of the first
+ *     plies its own task and board, and an optional hash table remembers the counts of subtrees that are reached
+ *     again through transpositions.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class Perft {
+    /**
+     * Standard test positions with their published node counts, starting at depth 1.
+     */
+    public enum Position {
+        INITIAL("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                20, 400, 8902, 197281, 4865609, 119060324),
+        KIWIPETE("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                48, 2039, 97862, 4085603, 193690690),
+        POSITION_3("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                14, 191, 2812, 43238, 674624, 11030083, 178633661),
+        POSITION_4("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                6, 264, 9467, 422333, 15833292),
+        POSITION_5("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                44, 1486, 62379, 2103487, 89941194),
+        POSITION_6("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                46, 2079, 89890, 3894594, 164075551);
+
+        public final String fen;
+        private final long[] counts;
+
+        Position(String fen, long... counts) {
+            this.fen = fen;
+            this.counts = counts;
+        }
+
+        /**
+         * @param depth depth, starting at 1
+         * @return the known node count, or -1 if it is not stored
+         */
+        public long expected(int depth) {
+            return depth >= 1 && depth <= counts.length ? counts[depth - 1] : -1;
+        }
+
+        public int maxDepth() {
+            return counts.length;
+        }
+    }
+
+    private static final int MAX_DEPTH = 32;
+    // Number of plies below the root that are split into parallel tasks
+    private static final int SPLIT_PLIES = 2;
+
+    private final PerftHashTable hashTable;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a sequential perft without a hash table.
+     */
+    public Perft() {
+        this(0, 1);
+    }
+
+    /**
+     * @param hashMb size of the hash table in megabytes, 0 to disable it
+     * @param threads number of worker threads, 1 to run on the calling thread
+     */
+    public Perft(int hashMb, int threads) {
+        hashTable = hashMb > 0 ? new PerftHashTable(hashMb) : null;
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Counts the leaf nodes of the legal move tree. The board is left in the same position.
+     * @param board the root position
+     * @param depth depth in plies
+     * @return number of leaf nodes
+     */
+    public long perft(BitBoard board, int depth) {
+        if(depth <= 0)
+            return 1;
+        if(pool != null)
+            return pool.invoke(new PerftTask(board.copy(), depth, 0));
+        return perft(board, depth, newMoveLists());
+    }
+
+    /**
+     * Counts the leaf nodes below every root move separately.
+     * @param board the root position
+     * @param depth depth in plies, at least 1
+     * @return node count per root move in coordinate notation, in generation order
+     */
+    public Map<String, Long> divide(BitBoard board, int depth) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        for(int k = 0; k < moves.size(); k++) {
+            BitBoard child = board.copy();
+            child.makeMove(moves.get(k));
+            result.put(PackedMove.toString(moves.get(k)), perft(child, depth - 1));
+        }
+        return result;
+    }
+
+    /**
+     * Releases the worker threads, if any.
+     */
+    public void shutdown() {
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    private long perft(BitBoard board, int depth, MoveList[] moveLists) {
+        MoveList moves = moveLists[depth];
+        moves.clear();
+        board.generateMoves(moves);
+        if(depth == 1)
+            return moves.size();
+
+        long key = board.getKey();
+        if(hashTable != null) {
+            long count = hashTable.get(key, depth);
+            if(count >= 0)
+                return count;
+        }
+        long nodes = 0;
+        for(int k = 0; k < moves.size(); k++) {
+            board.makeMove(moves.get(k));
+            nodes += perft(board, depth - 1, moveLists);
+            board.unmakeMove();
+        }
+        if(hashTable != null)
+            hashTable.put(key, depth, nodes);
+        return nodes;
+    }
+
+    private static MoveList[] newMoveLists() {
+        MoveList[] moveLists = new MoveList[MAX_DEPTH + 1];
+        for(int k = 0; k <= MAX_DEPTH; k++)
+            moveLists[k] = new MoveList();
+        return moveLists;
+    }
+
+    private class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final BitBoard board;
+        private final int depth;
+        private final int ply;
+
+        PerftTask(BitBoard board, int depth, int ply) {
+            this.board = board;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected Long compute() {
+            if(ply >= SPLIT_PLIES || depth <= 2)
+                return perft(board, depth, newMoveLists());
+            MoveList moves = new MoveList();
+            board.generateMoves(moves);
+            List<PerftTask> tasks = new ArrayList<>(moves.size());
+            for(int k = 0; k < moves.size(); k++) {
+                BitBoard child = board.copy();
+                child.makeMove(moves.get(k));
+                tasks.add(new PerftTask(child, depth - 1, ply + 1));
+            }
+            long nodes = 0;
+            for(PerftTask task : invokeAll(tasks))
+                nodes += task.join();
+            return nodes;
+        }
+    }
+
+    /**
+     * Lossy hash table of subtree counts. Every entry is two longs: the count and the count XOR the position key
+     * and depth. An entry torn by two threads writing at once fails the XOR check and reads as a miss, so no
+     * locking is needed.
+     */
+    private static class PerftHashTable {
+        private final long[] entries;
+        private final int mask;
+
+        PerftHashTable(int megabytes) {
+            int slots = Integer.highestOneBit((int) Math.min((long) megabytes * 1024 * 1024 / 16, 1 << 29));
+            entries = new long[slots * 2];
+            mask = slots - 1;
+        }
+
+        long get(long key, int depth) {
+            long check = key ^ depth;
+            int index = (int) (check & mask) * 2;
+            long count = entries[index];
+            return (entries[index + 1] ^ count) == check ? count : -1;
+        }
+
+        void put(long key, int depth, long count) {
+            long check = key ^ depth;
+            int index = (int) (check & mask) * 2;
+            entries[index] = count;
+            entries[index + 1] = check ^ count;
+        }
+    }
+
+    /**
+     * Runs the standard positions and prints the node counts, whether they match the known values and the speed.
+     * <p>
+     *     Usage: <code>Perft [depth] [threads] [hashMb]</code>, or <code>Perft divide &lt;depth&gt; &lt;fen&gt;</code>.
+     *     Without a depth every position is searched to the deepest depth with fewer than ~200 million nodes.
+     * </p>
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        if(args.length >= 3 && args[0].equals("divide")) {
+            int depth = Integer.parseInt(args[1]);
+            StringBuilder fen = new StringBuilder();
+            for(int k = 2; k < args.length; k++)
+                fen.append(args[k]).append(' ');
+            long total = 0;
+            for(Map.Entry<String, Long> entry : new Perft().divide(BitBoard.fromFen(fen.toString()), depth).entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+                total += entry.getValue();
+            }
+            System.out.println("\nNodes searched: " + total);
+            return;
+        }
+
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int hashMb = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        Perft perft = new Perft(hashMb, threads);
+        System.out.printf("[Perft] %d thread(s), hash %d MB%n", threads, hashMb);
+        long totalNodes = 0, totalNanos = 0;
+        boolean allPassed = true;
+        for(Position position : Position.values()) {
+            int d = depth > 0 ? Math.min(depth, position.maxDepth()) : position.maxDepth();
+            BitBoard board = BitBoard.fromFen(position.fen);
+            long start = System.nanoTime();
+            long nodes = perft.perft(board, d);
+            long nanos = System.nanoTime() - start;
+            boolean passed = nodes == position.expected(d);
+            allPassed &= passed;
+            totalNodes += nodes;
+            totalNanos += nanos;
+            System.out.printf("[Perft] %-10s depth %d: %,14d nodes %s %8.0f ms %,8.0f knps%n", position, d, nodes,
+                    passed ? "OK  " : "FAIL", nanos / 1e6, nodes / (nanos / 1e6));
+        }
+        System.out.printf("[Perft] Total %,d nodes in %.0f ms, %,.0f knps, %s%n", totalNodes, totalNanos / 1e6,
+                totalNodes / (totalNanos / 1e6), allPassed ? "all counts match" : "COUNT MISMATCH");
+        perft.shutdown();
+    }
+}
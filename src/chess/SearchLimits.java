@@ -0,0 +1,119 @@
+package chess;
+
+/**
+ * Limits of a single search of {@link ChessAI}: a maximum depth, a fixed time for the move, the state of a game clock
+ * from which the time for the move is allocated, and a maximum number of nodes. The search deepens iteratively until
+ * one of the limits is reached; a limit of 0 means no limit. Build the limits with the static methods and combine them
+ * with the <code>with</code> methods, for example <code>SearchLimits.moveTime(2000).withDepth(10)</code>.
+ *
+ * @author Daniel Barac
+ */
+public class SearchLimits {
+    public static final int MAX_DEPTH = 64;
+    // Moves the remaining clock time is divided over when the number of moves to the time control is not known
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // Time kept on the clock for the overhead of playing the move
+    private static final long CLOCK_MARGIN_MILLIS = 50;
+
+    private final int depth;
+    private final long moveTimeMillis;
+    private final long clockMillis;
+    private final long incrementMillis;
+    private final int movesToGo;
+    private final long nodes;
+
+    private SearchLimits(int depth, long moveTimeMillis, long clockMillis, long incrementMillis, int movesToGo,
+                         long nodes) {
+        this.depth = depth;
+        this.moveTimeMillis = moveTimeMillis;
+        this.clockMillis = clockMillis;
+        this.incrementMillis = incrementMillis;
+        this.movesToGo = movesToGo;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param depth depth in plies
+     * @return limits that search exactly to the given depth
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param millis time for the move in milliseconds
+     * @return limits that search for a fixed time
+     */
+    public static SearchLimits moveTime(long millis) {
+        return new SearchLimits(0, millis, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param clockMillis time left on the clock of the side to move, in milliseconds
+     * @param incrementMillis time added to the clock after every move, in milliseconds
+     * @param movesToGo moves left until the next time control, 0 if unknown
+     * @return limits that allocate the time for the move from the clock
+     */
+    public static SearchLimits clock(long clockMillis, long incrementMillis, int movesToGo) {
+        return new SearchLimits(0, 0, clockMillis, incrementMillis, movesToGo, 0);
+    }
+
+    /**
+     * @param nodes number of nodes
+     * @return limits that stop the search after the given number of nodes
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, 0, 0, 0, 0, nodes);
+    }
+
+    public SearchLimits withDepth(int depth) {
+        return new SearchLimits(depth, moveTimeMillis, clockMillis, incrementMillis, movesToGo, nodes);
+    }
+
+    public SearchLimits withNodes(long nodes) {
+        return new SearchLimits(depth, moveTimeMillis, clockMillis, incrementMillis, movesToGo, nodes);
+    }
+
+    /**
+     * @return the deepest iteration to search
+     */
+    public int getDepth() {
+        return depth > 0 ? Math.min(depth, MAX_DEPTH) : MAX_DEPTH;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the time after which the search is stopped, even in the middle of an iteration. With a game clock this
+     * is a share of the remaining time plus most of the increment, and never more than half of the clock.
+     * @return time in milliseconds, 0 if the time is not limited
+     */
+    public long getTimeBudgetMillis() {
+        if(moveTimeMillis > 0)
+            return moveTimeMillis;
+        if(clockMillis > 0) {
+            long available = Math.max(1, clockMillis - CLOCK_MARGIN_MILLIS);
+            long budget = available / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + incrementMillis * 3 / 4;
+            return Math.max(1, Math.min(budget, available / 2));
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the time after which no new iteration is started. With a game clock an iteration usually takes longer
+     * than all the previous ones together, so one that starts after half of the budget would most likely be stopped
+     * before it finishes.
+     * @return time in milliseconds, 0 if the time is not limited
+     */
+    public long getSoftTimeMillis() {
+        return clockMillis > 0 && moveTimeMillis == 0 ? getTimeBudgetMillis() / 2 : getTimeBudgetMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "SearchLimits{depth=" + depth + ", moveTime=" + moveTimeMillis + ", clock=" + clockMillis + "+" +
+                incrementMillis + "/" + movesToGo + ", nodes=" + nodes + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package chess;
+
+/**
+ * Result of a search of {@link ChessAI}: the best move, its score, and the principal variation, the line both sides
+ * are expected to play from the root. All of them come from the last iteration that was completed.
+ *
+ * @author Daniel Barac
+ */
+public class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long timeMillis;
+    private final int[] principalVariation;
+
+    /**
+     * @param bestMove the move to play, packed as described in {@link PackedMove}
+     * @param score score in centipawns from the point of view of the side to move at the root
+     * @param depth depth of the last completed iteration, 0 if none was completed
+     * @param nodes nodes searched in total
+     * @param timeMillis time spent searching, in milliseconds
+     * @param principalVariation the expected line, packed moves starting with the best move
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, long timeMillis, int[] principalVariation) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+        this.principalVariation = principalVariation.clone();
+    }
+
+    /**
+     * @return the move packed as described in {@link PackedMove}, or {@link PackedMove#NULL_MOVE} if there is none
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return the expected line as packed moves, starting with the best move
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * @return the expected line in coordinate notation, for example <code>e2e4 e7e5 g1f3</code>
+     */
+    public String getPrincipalVariationString() {
+        StringBuilder line = new StringBuilder();
+        for(int move : principalVariation) {
+            if(line.length() > 0)
+                line.append(' ');
+            line.append(PackedMove.toString(move));
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + depth + " score " + (ChessAI.isMateScore(score) ? "mate " + ChessAI.mateDistance(score) :
+                "cp " + score) + " nodes " + nodes + " time " + timeMillis + " pv " + getPrincipalVariationString();
+    }
+}
@@ -0,0 +1,223 @@
+package chess;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash table of search results, shared by every search thread, so that positions reached again through a different
+ * move order do not have to be searched twice.
+ * <p>
+ *     The table lives off-heap in a direct {@link ByteBuffer}, so it does not add to the garbage collector's work, and
+ *     is divided into buckets of {@link #ENTRIES_PER_BUCKET} entries that fit in one 64 byte cache line. An entry is
+ *     two longs: the data (best move, score, depth, bound type and age, see {@link #pack}) and the position key XOR
+ *     the data. Threads read and write entries without locking; if two threads write the same entry at once and
+ *     their halves get mixed, the XOR no longer matches the key and the entry reads as a miss instead of returning
+ *     another position's data.
+ * </p>
+ * <p>
+ *     Within a bucket, an entry of the same position is overwritten; otherwise the entry with the lowest depth, with
+ *     entries from earlier searches counting as shallower, is replaced. Probe, hit, store and collision counts and
+ *     the fill rate are available for tuning the size.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class TranspositionTable {
+    public static final int BOUND_NONE = 0;
+    // The score is exact
+    public static final int BOUND_EXACT = 1;
+    // The score is a lower bound (the search failed high)
+    public static final int BOUND_LOWER = 2;
+    // The score is an upper bound (the search failed low)
+    public static final int BOUND_UPPER = 3;
+
+    public static final int ENTRIES_PER_BUCKET = 4;
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_BYTES = ENTRIES_PER_BUCKET * ENTRY_BYTES;
+    // A single direct buffer is indexed with an int
+    public static final int MAX_SIZE_MB = 1024;
+
+    private final ByteBuffer table;
+    private final int bucketMask;
+    private int age;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    /**
+     * @param sizeMb size of the table in megabytes, rounded down to a power of two (at least 1, at most
+     *               {@link #MAX_SIZE_MB})
+     */
+    public TranspositionTable(int sizeMb) {
+        long bytes = (long) Math.max(1, Math.min(sizeMb, MAX_SIZE_MB)) * 1024 * 1024;
+        int buckets = Integer.highestOneBit((int) (bytes / BUCKET_BYTES));
+        table = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES).order(ByteOrder.nativeOrder());
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Looks the position up.
+     * @param key Zobrist key of the position
+     * @return the packed entry data (read it with {@link #move}, {@link #score}, {@link #depth} and {@link #bound}),
+     *         or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        probes.increment();
+        int bucket = bucketOffset(key);
+        boolean occupied = false;
+        for(int k = 0; k < ENTRIES_PER_BUCKET; k++) {
+            int offset = bucket + k * ENTRY_BYTES;
+            long data = table.getLong(offset);
+            if(data == 0)
+                continue;
+            if((table.getLong(offset + 8) ^ data) == key) {
+                hits.increment();
+                return data;
+            }
+            occupied = true;
+        }
+        if(occupied)
+            collisions.increment();
+        return 0;
+    }
+
+    /**
+     * Stores a search result.
+     * @param key Zobrist key of the position
+     * @param move best move found, packed as described in {@link PackedMove}, or {@link PackedMove#NULL_MOVE}
+     * @param score score of the position, clamped to -32767..32767
+     * @param depth depth of the search, between 0 and 255
+     * @param bound {@link #BOUND_EXACT}, {@link #BOUND_LOWER} or {@link #BOUND_UPPER}
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        stores.increment();
+        int bucket = bucketOffset(key);
+        int replace = bucket;
+        int worst = Integer.MAX_VALUE;
+        for(int k = 0; k < ENTRIES_PER_BUCKET; k++) {
+            int offset = bucket + k * ENTRY_BYTES;
+            long data = table.getLong(offset);
+            if(data == 0 || (table.getLong(offset + 8) ^ data) == key) {
+                // Keep the move of a previous search of this position if the new result has none
+                if(data != 0 && move == PackedMove.NULL_MOVE)
+                    move = move(data);
+                replace = offset;
+                break;
+            }
+            // Entries from older searches are replaced first
+            int value = depth(data) - 8 * ((age - age(data)) & 0x3F);
+            if(value < worst) {
+                worst = value;
+                replace = offset;
+            }
+        }
+        long data = pack(move, Math.max(-32767, Math.min(32767, score)), depth, bound, age);
+        table.putLong(replace, data);
+        table.putLong(replace + 8, key ^ data);
+    }
+
+    /**
+     * Marks the start of a new search, so that entries of previous searches are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0x3F;
+    }
+
+    /**
+     * Empties the table and resets the statistics.
+     */
+    public void clear() {
+        for(int offset = 0; offset < table.capacity(); offset += 8)
+            table.putLong(offset, 0);
+        age = 0;
+        probes.reset();
+        hits.reset();
+        stores.reset();
+        collisions.reset();
+    }
+
+    // Data layout: move (bits 0-27), score + 32768 (28-43), depth (44-51), bound (52-53), age (54-59). The bound
+    // is never BOUND_NONE for a stored entry, so stored data is never 0.
+    static long pack(int move, int score, int depth, int bound, int age) {
+        return (move & 0xFFFFFFFL) | (long) (score + 32768) << 28 | (long) depth << 44 | (long) bound << 52 |
+                (long) age << 54;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFFFFFL);
+    }
+
+    public static int score(long data) {
+        return (int) ((data >>> 28) & 0xFFFF) - 32768;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 44) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 52) & 0x3);
+    }
+
+    static int age(long data) {
+        return (int) ((data >>> 54) & 0x3F);
+    }
+
+    private int bucketOffset(long key) {
+        return (int) (key >>> 32 & bucketMask) * BUCKET_BYTES;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return number of probes that missed while the bucket held entries of other positions
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    public double getHitRate() {
+        long p = probes.sum();
+        return p == 0 ? 0 : (double) hits.sum() / p;
+    }
+
+    /**
+     * Estimates the fraction of the table used by the current search, from a sample of the first 1000 buckets.
+     * @return fill rate between 0 and 1
+     */
+    public double getFillRate() {
+        int buckets = Math.min(1000, bucketMask + 1);
+        int used = 0;
+        for(int b = 0; b < buckets; b++)
+            for(int k = 0; k < ENTRIES_PER_BUCKET; k++) {
+                long data = table.getLong(b * BUCKET_BYTES + k * ENTRY_BYTES);
+                if(data != 0 && age(data) == age)
+                    used++;
+            }
+        return (double) used / (buckets * ENTRIES_PER_BUCKET);
+    }
+
+    public int getSizeMb() {
+        return table.capacity() / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Transposition table %d MB, probes=%d hits=%d (%.1f%%) stores=%d collisions=%d fill=%.1f%%",
+                getSizeMb(), getProbes(), getHits(), 100 * getHitRate(), getStores(), getCollisions(),
+                100 * getFillRate());
+    }
+}
@@ -0,0 +1,408 @@
+package chess;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Texel tuning of the weights of {@link Evaluation}: the weights are fitted to the results of games, so that the
+ * evaluation of a position, turned into an expected result by a sigmoid, predicts the result of the game it was
+ * taken from.
+ * <p>
+ *     Every position is first resolved to a quiet one by a quiescence search, so that pending captures do not count
+ *     against the weights. The evaluation of a quiet position is linear in the weights: it is the sum, over its terms
+ *     (a piece on a square, a passed pawn on a rank, ...), of the number of times each term applies for white minus
+ *     for black, times the middlegame weight of the term scaled by the game phase plus the endgame weight scaled by
+ *     the rest. Those counts are computed once when the positions are loaded, so the tuning loop works on small
+ *     arrays and not on boards.
+ * </p>
+ * <p>
+ *     The weights are then optimised by gradient descent (Adam) on the mean squared error, with the positions split
+ *     between the threads of a {@link ForkJoinPool}. Before that the scale of the sigmoid is fitted to the starting
+ *     weights.
+ * </p>
+ * <p>
+ *     A positions file has one position per line: a FEN followed by the result of the game for white, either as
+ *     <code>1-0</code>, <code>0-1</code> or <code>1/2-1/2</code> (optionally in quotes), or as a number in square
+ *     brackets such as <code>[0.5]</code>.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public class Tuner {
+    public static final int DEFAULT_ITERATIONS = 500;
+    private static final int REPORT_INTERVAL = 50;
+    private static final int MAX_PLY = 32;
+    // Adam
+    private static final double LEARNING_RATE = 1.0;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private static final Pattern RESULT = Pattern.compile("\"?(1-0|0-1|1/2-1/2)\"?|\\[([01](?:\\.\\d+)?)]");
+
+    // Terms: material values by piece type, piece-square tables by piece type and square in table order (a8 first),
+    // then the pawn structure terms of Evaluation
+    private static final int TABLE_TERMS = 6;
+    private static final int PAWN_TERMS = TABLE_TERMS + 6 * 64;
+    private static final int TERMS = PAWN_TERMS + Evaluation.PAWN_TERMS;
+
+    // Index of the middlegame and the endgame weight of every term in Evaluation.getWeights()
+    private final int[] middlegameWeights = new int[TERMS];
+    private final int[] endgameWeights = new int[TERMS];
+
+    // Positions: the result for white, the share of the middlegame in the phase, and the terms that apply with their
+    // counts, those of position n at featureStart[n] ... featureStart[n + 1] - 1
+    private int size;
+    private double[] results = new double[1024];
+    private double[] phases = new double[1024];
+    private int[] featureStart = new int[1025];
+    private short[] featureTerms = new short[32 * 1024];
+    private byte[] featureCounts = new byte[32 * 1024];
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private double scale = 1;
+
+    /**
+     * @param threads number of threads computing the error and its gradient
+     */
+    public Tuner(int threads) {
+        this.threads = Math.max(1, threads);
+        pool = new ForkJoinPool(this.threads);
+        for(int type = 0; type < 6; type++) {
+            middlegameWeights[type] = Evaluation.weightIndex("MiddlegameValues", type);
+            endgameWeights[type] = Evaluation.weightIndex("EndgameValues", type);
+            for(int square = 0; square < 64; square++) {
+                middlegameWeights[TABLE_TERMS + type * 64 + square] =
+                        Evaluation.weightIndex(Evaluation.middlegameTableName(type), square);
+                endgameWeights[TABLE_TERMS + type * 64 + square] =
+                        Evaluation.weightIndex(Evaluation.endgameTableName(type), square);
+            }
+        }
+        for(int rank = 0; rank < 8; rank++) {
+            middlegameWeights[PAWN_TERMS + rank] = Evaluation.weightIndex("PassedMiddlegame", rank);
+            endgameWeights[PAWN_TERMS + rank] = Evaluation.weightIndex("PassedEndgame", rank);
+        }
+        middlegameWeights[PAWN_TERMS + Evaluation.ISOLATED_TERM] = Evaluation.weightIndex("Isolated", 0);
+        endgameWeights[PAWN_TERMS + Evaluation.ISOLATED_TERM] = Evaluation.weightIndex("Isolated", 1);
+        middlegameWeights[PAWN_TERMS + Evaluation.DOUBLED_TERM] = Evaluation.weightIndex("Doubled", 0);
+        endgameWeights[PAWN_TERMS + Evaluation.DOUBLED_TERM] = Evaluation.weightIndex("Doubled", 1);
+    }
+
+    /**
+     * Reads a positions file. Lines without a result and positions in check are skipped.
+     * @param path the positions file
+     * @return the number of positions added
+     * @throws IOException if the file cannot be read
+     */
+    public int load(Path path) throws IOException {
+        int added = 0;
+        for(String line : Files.readAllLines(path)) {
+            double result = parseResult(line);
+            if(Double.isNaN(result))
+                continue;
+            String[] fields = line.trim().split("\\s+");
+            if(fields.length < 4)
+                continue;
+            BitBoard board;
+            try {
+                board = BitBoard.fromFen(String.join(" ", Arrays.copyOf(fields, 4)));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if(addPosition(board, result))
+                added++;
+        }
+        return added;
+    }
+
+    /**
+     * @param line a line of a positions file
+     * @return the result for white, 0 ... 1, or NaN if the line has none
+     */
+    static double parseResult(String line) {
+        Matcher matcher = RESULT.matcher(line);
+        if(!matcher.find())
+            return Double.NaN;
+        if(matcher.group(2) != null)
+            return Double.parseDouble(matcher.group(2));
+        return matcher.group(1).equals("1-0") ? 1 : matcher.group(1).equals("0-1") ? 0 : 0.5;
+    }
+
+    /**
+     * Resolves a position to the quiet position at the end of its quiescence search and adds it.
+     * @param board the position, left unchanged
+     * @param result result of the game for white, 0 ... 1
+     * @return true if the position was added, false if the side to move is in check
+     */
+    public boolean addPosition(BitBoard board, double result) {
+        if(board.isCheck())
+            return false;
+        int[][] line = new int[MAX_PLY][MAX_PLY];
+        int[] length = new int[MAX_PLY];
+        BitBoard quiet = board.copy();
+        quiescence(quiet, -ChessAI.INFINITY, ChessAI.INFINITY, 0, line, length);
+        for(int k = 0; k < length[0]; k++)
+            quiet.makeMove(line[0][k]);
+        addFeatures(quiet, result);
+        return true;
+    }
+
+    // Captures-only search with the current weights. line[ply] holds the captures leading to the quiet position that
+    // decides the score, in length[ply] moves
+    private static int quiescence(BitBoard board, int alpha, int beta, int ply, int[][] line, int[] length) {
+        length[ply] = 0;
+        int standPat = Evaluation.evaluate(board);
+        if(standPat >= beta || ply == MAX_PLY - 1)
+            return standPat;
+        alpha = Math.max(alpha, standPat);
+        MoveList moves = new MoveList();
+        board.generateCaptures(moves);
+        for(int k = 0; k < moves.size(); k++) {
+            int move = moves.get(k);
+            if(MoveOrdering.losesMaterial(board, move))
+                continue;
+            board.makeMove(move);
+            int score = -quiescence(board, -beta, -alpha, ply + 1, line, length);
+            board.unmakeMove();
+            if(score > alpha) {
+                alpha = score;
+                line[ply][0] = move;
+                System.arraycopy(line[ply + 1], 0, line[ply], 1, length[ply + 1]);
+                length[ply] = length[ply + 1] + 1;
+                if(score >= beta)
+                    break;
+            }
+        }
+        return alpha;
+    }
+
+    private void addFeatures(BitBoard board, double result) {
+        int[] counts = new int[TERMS];
+        for(int square = 0; square < 64; square++) {
+            int piece = board.pieceAt(square);
+            if(piece == BitBoard.NO_PIECE)
+                continue;
+            int type = piece % 6;
+            boolean white = piece < 6;
+            counts[type] += white ? 1 : -1;
+            counts[TABLE_TERMS + type * 64 + (white ? square ^ 56 : square)] += white ? 1 : -1;
+        }
+        long whitePawns = board.getPieces(BitBoard.WHITE_PAWN);
+        long blackPawns = board.getPieces(BitBoard.BLACK_PAWN);
+        int[] whiteTerms = new int[Evaluation.PAWN_TERMS];
+        int[] blackTerms = new int[Evaluation.PAWN_TERMS];
+        Evaluation.pawnStructure(whitePawns, blackPawns, BitBoard.WHITE, whiteTerms);
+        Evaluation.pawnStructure(blackPawns, whitePawns, BitBoard.BLACK, blackTerms);
+        for(int term = 0; term < Evaluation.PAWN_TERMS; term++)
+            counts[PAWN_TERMS + term] = whiteTerms[term] - blackTerms[term];
+
+        int features = 0;
+        for(int count : counts)
+            if(count != 0)
+                features++;
+        if(size == results.length) {
+            results = Arrays.copyOf(results, size * 2);
+            phases = Arrays.copyOf(phases, size * 2);
+            featureStart = Arrays.copyOf(featureStart, size * 2 + 1);
+        }
+        int start = featureStart[size];
+        if(start + features > featureTerms.length) {
+            featureTerms = Arrays.copyOf(featureTerms, (start + features) * 2);
+            featureCounts = Arrays.copyOf(featureCounts, (start + features) * 2);
+        }
+        int k = start;
+        for(int term = 0; term < TERMS; term++) {
+            if(counts[term] != 0) {
+                featureTerms[k] = (short) term;
+                featureCounts[k] = (byte) counts[term];
+                k++;
+            }
+        }
+        results[size] = result;
+        phases[size] = (double) Math.min(board.getPhase(), Evaluation.MAX_PHASE) / Evaluation.MAX_PHASE;
+        featureStart[size + 1] = k;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position index of a position
+     * @param weights weights in the order of {@link Evaluation#getWeights()}
+     * @return the evaluation of the quiet position from the point of view of white
+     */
+    double evaluate(int position, double[] weights) {
+        double middlegame = 0, endgame = 0;
+        for(int k = featureStart[position]; k < featureStart[position + 1]; k++) {
+            middlegame += featureCounts[k] * weights[middlegameWeights[featureTerms[k]]];
+            endgame += featureCounts[k] * weights[endgameWeights[featureTerms[k]]];
+        }
+        return middlegame * phases[position] + endgame * (1 - phases[position]);
+    }
+
+    // Expected result for white of an evaluation
+    private double sigmoid(double evaluation) {
+        return 1 / (1 + Math.pow(10, -scale * evaluation / 400));
+    }
+
+    /**
+     * @param weights weights in the order of {@link Evaluation#getWeights()}
+     * @return the mean squared difference between the expected and the actual results
+     */
+    public double error(double[] weights) {
+        return run(weights, false)[0];
+    }
+
+    // Sums the squared error, and if asked its gradient, over all positions in parallel. Returns the mean error
+    // followed by the mean gradient
+    private double[] run(double[] weights, boolean gradient) {
+        int chunks = Math.max(1, Math.min(size, threads * 4));
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        for(int c = 0; c < chunks; c++) {
+            int from = (int) ((long) size * c / chunks);
+            int to = (int) ((long) size * (c + 1) / chunks);
+            tasks.add(() -> chunk(weights, from, to, gradient));
+        }
+        double[] total = new double[1 + (gradient ? weights.length : 0)];
+        try {
+            for(Future<double[]> part : pool.invokeAll(tasks)) {
+                double[] sums = part.get();
+                for(int k = 0; k < total.length; k++)
+                    total[k] += sums[k];
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("[Tuner] Error computation failed", e);
+        }
+        for(int k = 0; k < total.length; k++)
+            total[k] /= Math.max(1, size);
+        return total;
+    }
+
+    private double[] chunk(double[] weights, int from, int to, boolean gradient) {
+        double[] sums = new double[1 + (gradient ? weights.length : 0)];
+        double slope = scale * Math.log(10) / 400;
+        for(int n = from; n < to; n++) {
+            double expected = sigmoid(evaluate(n, weights));
+            double difference = results[n] - expected;
+            sums[0] += difference * difference;
+            if(!gradient)
+                continue;
+            // Derivative of the squared error with respect to the evaluation
+            double factor = -2 * difference * expected * (1 - expected) * slope;
+            double middlegame = factor * phases[n];
+            double endgame = factor * (1 - phases[n]);
+            for(int k = featureStart[n]; k < featureStart[n + 1]; k++) {
+                sums[1 + middlegameWeights[featureTerms[k]]] += middlegame * featureCounts[k];
+                sums[1 + endgameWeights[featureTerms[k]]] += endgame * featureCounts[k];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Fits the scale of the sigmoid to the weights, by narrowing down the scale with the lowest error.
+     * @param weights weights in the order of {@link Evaluation#getWeights()}
+     * @return the scale, also used from then on
+     */
+    public double fitScale(double[] weights) {
+        double low = 0.1, high = 5;
+        for(int step = 0; step < 40; step++) {
+            double a = low + (high - low) / 3, b = high - (high - low) / 3;
+            scale = a;
+            double errorA = error(weights);
+            scale = b;
+            double errorB = error(weights);
+            if(errorA < errorB)
+                high = b;
+            else
+                low = a;
+        }
+        scale = (low + high) / 2;
+        return scale;
+    }
+
+    /**
+     * Optimises the weights by gradient descent, printing the error and speed every few iterations.
+     * @param start the starting weights, in the order of {@link Evaluation#getWeights()}
+     * @param iterations number of passes over all positions
+     * @return the tuned weights
+     */
+    public double[] tune(double[] start, int iterations) {
+        double[] weights = start.clone();
+        double[] momentum = new double[weights.length];
+        double[] velocity = new double[weights.length];
+        long begin = System.nanoTime();
+        for(int iteration = 1; iteration <= iterations; iteration++) {
+            double[] errorAndGradient = run(weights, true);
+            for(int k = 0; k < weights.length; k++) {
+                double gradient = errorAndGradient[k + 1];
+                momentum[k] = BETA1 * momentum[k] + (1 - BETA1) * gradient;
+                velocity[k] = BETA2 * velocity[k] + (1 - BETA2) * gradient * gradient;
+                double m = momentum[k] / (1 - Math.pow(BETA1, iteration));
+                double v = velocity[k] / (1 - Math.pow(BETA2, iteration));
+                weights[k] -= LEARNING_RATE * m / (Math.sqrt(v) + EPSILON);
+            }
+            if(iteration % REPORT_INTERVAL == 0 || iteration == iterations) {
+                double seconds = (System.nanoTime() - begin) / 1e9;
+                System.out.printf("[Tuner] Iteration %d: error %.6f, %,.0f positions/s%n", iteration,
+                        errorAndGradient[0], (double) size * iteration / seconds);
+            }
+        }
+        return weights;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Tunes the evaluation weights on a positions file and writes them to a weights file.
+     * <p>
+     *     Usage: <code>Tuner &lt;positions file&gt; [weights file] [iterations] [threads]</code>. The weights file
+     *     defaults to {@value Evaluation#DEFAULT_WEIGHTS_FILE}, which the engine loads at startup.
+     * </p>
+     * @param args command line arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.out.println("Usage: Tuner <positions file> [weights file] [iterations] [threads]");
+            return;
+        }
+        Path output = Path.of(args.length > 1 ? args[1] : Evaluation.DEFAULT_WEIGHTS_FILE);
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Tuner tuner = new Tuner(threads);
+        long start = System.nanoTime();
+        int positions = tuner.load(Path.of(args[0]));
+        System.out.printf("[Tuner] %,d positions loaded in %.1f s, %d thread(s)%n", positions,
+                (System.nanoTime() - start) / 1e9, threads);
+
+        double[] weights = Arrays.stream(Evaluation.getWeights()).asDoubleStream().toArray();
+        System.out.printf("[Tuner] Sigmoid scale %.3f, starting error %.6f%n", tuner.fitScale(weights),
+                tuner.error(weights));
+        weights = tuner.tune(weights, iterations);
+        tuner.shutdown();
+
+        int[] tuned = new int[weights.length];
+        for(int k = 0; k < weights.length; k++)
+            tuned[k] = (int) Math.round(weights[k]);
+        Evaluation.setWeights(tuned);
+        Evaluation.saveWeights(output);
+        System.out.println("[Tuner] Weights written to " + output);
+    }
+}
@@ -0,0 +1,140 @@
+package chess;
+
+import java.util.Random;
+
+/**
+ * Random keys used to hash positions (Zobrist hashing). The hash of a position is the XOR of the key of every
+ * piece on its square, the side to move key when black is to move, the key of the castling rights and the key of
+ * the en passant column if there is one. Because XOR is its own inverse, a move only has to XOR the keys of what it
+ * changes, so the hash can be kept up to date incrementally.
+ * <p>
+ *     The keys are generated from a fixed seed, so a position has the same hash on every run. {@link BitBoard},
+ *     {@link Board} and {@link LightBoard} all hash the same position to the same value.
+ * </p>
+ * <p>
+ *     Setting the system property <code>chess.zobrist.debug</code> to true enables a debug mode in which every
+ *     incremental update is checked against a full recomputation, throwing an {@link IllegalStateException} on the
+ *     first mismatch.
+ * </p>
+ *
+ * @author Daniel Barac
+ */
+public final class Zobrist {
+    // PIECE_SQUARE[piece][square], indexed with the BitBoard piece constants
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long SIDE;
+    // Indexed with the 4 bit castling rights mask
+    static final long[] CASTLING = new long[16];
+    static final long[] EN_PASSANT = new long[8];
+
+    public static boolean debug = Boolean.getBoolean("chess.zobrist.debug");
+
+    static {
+        Random random = new Random(0x5DEECE66DL);
+        for(int piece = 0; piece < 12; piece++)
+            for(int square = 0; square < 64; square++)
+                PIECE_SQUARE[piece][square] = random.nextLong();
+        SIDE = random.nextLong();
+        for(int k = 0; k < 16; k++)
+            CASTLING[k] = random.nextLong();
+        for(int k = 0; k < 8; k++)
+            EN_PASSANT[k] = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * @param symbol piece in the char format used by {@link Board#getBoardAsMatrix()}
+     * @param square square index, i * 8 + j
+     * @return the key of the piece on the square, 0 for an empty square
+     */
+    public static long pieceKey(char symbol, int square) {
+        int piece = BitBoard.pieceFromSymbol(symbol);
+        return piece == BitBoard.NO_PIECE ? 0 : PIECE_SQUARE[piece][square];
+    }
+
+    /**
+     * @param turn the side to move
+     * @param castlingRights castling rights mask, as used by {@link BitBoard}
+     * @param enPassantSquare the en passant square, -1 if there is none
+     * @return the part of the hash that does not depend on the piece placement
+     */
+    public static long stateKey(PieceColour turn, int castlingRights, int enPassantSquare) {
+        long key = CASTLING[castlingRights];
+        if(turn == PieceColour.BLACK)
+            key ^= SIDE;
+        if(enPassantSquare >= 0)
+            key ^= EN_PASSANT[enPassantSquare & 7];
+        return key;
+    }
+
+    /**
+     * Computes the hash of a position given as a char matrix from scratch.
+     * @param matrix char[8][8] matrix, as returned by {@link Board#getBoardAsMatrix()}
+     * @param turn the side to move
+     * @param castlingRights castling rights mask, as used by {@link BitBoard}
+     * @param enPassantSquare the en passant square, -1 if there is none
+     * @return the 64 bit hash
+     */
+    public static long compute(char[][] matrix, PieceColour turn, int castlingRights, int enPassantSquare) {
+        return placementKey(matrix) ^ stateKey(turn, castlingRights, enPassantSquare);
+    }
+
+    /**
+     * @param matrix char[8][8] matrix, as returned by {@link Board#getBoardAsMatrix()}
+     * @return the part of the hash that depends on the piece placement
+     */
+    public static long placementKey(char[][] matrix) {
+        long key = 0;
+        for(int i = 0; i < 8; i++)
+            for(int j = 0; j < 8; j++)
+                key ^= pieceKey(matrix[i][j], BitBoard.square(i, j));
+        return key;
+    }
+
+    /**
+     * In debug mode, checks an incrementally updated hash against a full recomputation.
+     * @param incremental the incrementally updated hash
+     * @param full the recomputed hash
+     * @param where description of the update, used in the exception message
+     * @throws IllegalStateException if the two hashes differ
+     */
+    public static void verify(long incremental, long full, String where) {
+        if(incremental != full)
+            throw new IllegalStateException(String.format("[Zobrist] Incremental hash %016x differs from %016x after %s",
+                    incremental, full, where));
+    }
+
+    /**
+     * Computes the hash of a position from scratch.
+     * @param board the position
+     * @return the 64 bit hash
+     */
+    public static long compute(BitBoard board) {
+        long key = 0;
+        for(int square = 0; square < 64; square++) {
+            int piece = board.pieceAt(square);
+            if(piece != BitBoard.NO_PIECE)
+                key ^= PIECE_SQUARE[piece][square];
+        }
+        if(board.getSideToMove() == BitBoard.BLACK)
+            key ^= SIDE;
+        key ^= CASTLING[board.getCastlingRights()];
+        if(board.getEnPassantSquare() >= 0)
+            key ^= EN_PASSANT[board.getEnPassantSquare() & 7];
+        return key;
+    }
+
+    /**
+     * Computes the hash of the pawns of a position from scratch: the XOR of the keys of the pawns on their squares.
+     * @param board the position
+     * @return the 64 bit pawn hash
+     */
+    public static long computePawnKey(BitBoard board) {
+        long key = 0;
+        for(int piece : new int[] {BitBoard.WHITE_PAWN, BitBoard.BLACK_PAWN})
+            for(long pawns = board.getPieces(piece); pawns != 0; pawns &= pawns - 1)
+                key ^= PIECE_SQUARE[piece][Long.numberOfTrailingZeros(pawns)];
+        return key;
+    }
+}
@@ -1,5 +1,6 @@
 package chess.pieces;
 
+import chess.BitBoard;
 import chess.Board;
 import chess.Move;
 import chess.PieceColour;
@@ -33,22 +34,29 @@ public class King extends Piece {
     }
 
     @Override
-    public boolean isLegitMove(int i1, int j1, int i2, int j2) {
+    protected boolean isPseudoLegitMove(int i1, int j1, int i2, int j2) {
 
+        // Castling: the king and the rook must not have moved, the squares between them must be empty, and the king
+        // may not be in check or pass through an attacked square. The destination is checked like any other move
         int rookPos = (j1 - j2) > 0 ? 0 : 7;
         boolean castle = false;
-        if(board.hasPiece(i1, rookPos) && canCastle) {
-            try {
-                Rook r = (Rook) board.getPiece(i1, rookPos);
-                castle = board.isCheck() == null && this.canCastle && r.canCastle && i1 == i2 && Math.abs(j1 - j2) == 2 &&
-                        r.isLegitStraightMove(i1, rookPos, i1, j1 + (rookPos == 0 ? -1 : 1));
-           } catch(ClassCastException ignored) {}
+        if(canCastle && i1 == i2 && Math.abs(j1 - j2) == 2 && board.getPiece(i1, rookPos) instanceof Rook) {
+            Rook r = (Rook) board.getPiece(i1, rookPos);
+            PieceColour enemy = colour.invert();
+            castle = r.canCastle && r.getColour() == colour && r.isLegitStraightMove(i1, rookPos, i1, j1) &&
+                    !board.isSquareAttacked(BitBoard.square(i1, j1), enemy) &&
+                    !board.isSquareAttacked(BitBoard.square(i1, (j1 + j2) / 2), enemy);
         }
 
-        return super.isLegitMove(i1, j1, i2, j2) &&
+        return super.isPseudoLegitMove(i1, j1, i2, j2) &&
                 (Math.abs(i1 - i2) <= 1 && Math.abs(j1 - j2) <= 1 || castle);
     }
 
+    @Override
+    public int getPieceIndex() {
+        return pieceIndex(BitBoard.WHITE_KING);
+    }
+
     @Override
     public King deepcopy(Board b) {
         Piece temp2 = super.deepcopy(b);
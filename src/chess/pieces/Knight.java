@@ -1,5 +1,6 @@
 package chess.pieces;
 
+import chess.BitBoard;
 import chess.Board;
 import chess.Move;
 import chess.PieceColour;
@@ -22,14 +23,19 @@ public class Knight extends Piece {
     }
 
     @Override
-    public boolean isLegitMove(int i1, int j1, int i2, int j2) {
+    protected boolean isPseudoLegitMove(int i1, int j1, int i2, int j2) {
         // For a knight's move to be legal, the distance in one direction should be 1 and the distance in the other
         // should be 2
-        return super.isLegitMove(i1, j1, i2, j2) && ((
+        return super.isPseudoLegitMove(i1, j1, i2, j2) && ((
                         Math.abs(i1 - i2) == 2 && Math.abs(j1 - j2) == 1) ||
                         (Math.abs(i1 - i2) == 1 && Math.abs(j1 - j2) == 2));
     }
 
+    @Override
+    public int getPieceIndex() {
+        return pieceIndex(BitBoard.WHITE_KNIGHT);
+    }
+
     @Override
     public Knight deepcopy(Board b) {
         Piece temp2 = super.deepcopy(b);
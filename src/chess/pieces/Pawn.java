@@ -1,5 +1,6 @@
 package chess.pieces;
 
+import chess.BitBoard;
 import chess.Board;
 import chess.Move;
 import chess.PieceColour;
@@ -38,7 +39,7 @@ public class Pawn extends Piece {
     }
 
     @Override
-    public boolean isLegitMove(int i1, int j1, int i2, int j2) {
+    protected boolean isPseudoLegitMove(int i1, int j1, int i2, int j2) {
         // The conditions for the pawn to move legally are:
         //      -the displacement in the i direction should be 1, but it can be also 2 if the pawn is on its starting
         //      position (*1)
@@ -49,12 +50,17 @@ public class Pawn extends Piece {
         int di = Math.abs(i2 - i1);
         if(di == 0)
             return false;
-        return super.isLegitMove(i1, j1, i2, j2) && (
+        return super.isPseudoLegitMove(i1, j1, i2, j2) && (
                 di == 1 || (di <= 2 && (i1 == 1 || i1 == 6))) && // (*1)
                 di / (i2 - i1) == (this.colour == PieceColour.WHITE ? 1 : -1) && ( // (*2)
                 (j1 == j2 && !board.getBoard()[i2][j2].hasPiece()) || this.canCapture(i1, j1, i2, j2)); // (*3)
     }
 
+    @Override
+    public int getPieceIndex() {
+        return pieceIndex(BitBoard.WHITE_PAWN);
+    }
+
     @Override
     public Pawn deepcopy(Board b) {
         Piece temp2 = super.deepcopy(b);
@@ -1,5 +1,7 @@
 package chess.pieces;
 
+import chess.Attacks;
+import chess.BitBoard;
 import chess.Board;
 import chess.Move;
 import chess.PieceColour;
@@ -28,6 +30,14 @@ public class Piece {
 
     // i1 j1 are origin, i2 j2 are destination
     public boolean isLegitMove(int i1, int j1, int i2, int j2) {
+        // Only legal moves are ones that don't result in check. The rules of movement are checked first, as they are
+        // cheaper, and the king safety is checked on the live board instead of a copy
+        return isPseudoLegitMove(i1, j1, i2, j2) && !this.board.leavesKingInCheck(i1, j1, i2, j2);
+    }
+
+    // Checks the rules of movement of the piece, without checking that the king is safe after the move. Every piece
+    // overrides this with its own rules, calling the method of the superclass first
+    protected boolean isPseudoLegitMove(int i1, int j1, int i2, int j2) {
         if(i1 >= 0 && i1 < 8 && i2 >= 0 && i2 < 8 && j1 >= 0 && j1 < 8 && j2 >= 0 && j2 < 8) {
             Square[][] board = this.board.getBoard();
 
@@ -39,17 +49,8 @@ public class Piece {
             // If the destination contains a piece, it needs to be a different colour
             if (board[i2][j2].hasPiece()) {
                 Piece target = board[i2][j2].getPiece();
-                if(target.getColour() == this.colour)
-                    return false;
+                return target.getColour() != this.colour;
             }
-
-            // Only legal moves are ones that don't result in check
-            Board temp = this.board.deepcopy();
-            temp.forceMove(i1, j1, i2, j2, temp.getPiece(i1, j1));
-            Piece king = temp.isCheck();
-            if (king != null)
-                return king.colour != this.colour;
-
             return true;
         }
         return false;
@@ -58,66 +59,21 @@ public class Piece {
     // Because both the bishop and the queen can move diagonally, I created a new method that check that this move is
     // legit to avoid having the same code in multiple  places and to keep the code more compact
     public boolean isLegitDiagonalMove(int i1, int j1, int i2, int j2) {
-        // Created variables that store the displacement of the origin and the destination
-        int di = Math.abs(i1 - i2);
-        int dj = Math.abs(j1 - j2);
-        // The displacements mush be equal for the move to be diagonal
-        if(di == dj) {
-            // Created variables that store the orientation of movement in the i and j directions (+1 if increasing and
-            // -1 if decreasing)
-            int stepI, stepJ;
-            try {
-                stepI = di / (i2 - i1);
-                stepJ = dj / (j2 - j1);
-            } catch (ArithmeticException e) {
-                return false;
-            }
-            for (int d = 1; d < di; d++) {
-                // If there is any piece on the path from the origin to the destination(open interval), the move is not
-                // legal
-                if(board.getBoard()[i1 + d * stepI][j1 + d * stepJ].hasPiece())
-                    return false;
-            }
-            return true;
-        }
-        return false;
+        // The displacements must be equal and not zero for the move to be diagonal
+        int d = Math.abs(i1 - i2);
+        return d != 0 && d == Math.abs(j1 - j2) && isPathClear(i1, j1, i2, j2);
     }
 
     // As with the diagonal move, there are two pieces that can move straight, the queen and the rook
     public boolean isLegitStraightMove(int i1, int j1, int i2, int j2) {
         // For the move to be straight, either the i's or the j's need to be equal
-        if(i1 == i2) {
-            // Getting the direction of movement in the j direction (+1 if increasing and -1 if decreasing)
-            int step;
-            try {
-                step = Math.abs(j2 - j1) / (j2 - j1);
-            } catch(ArithmeticException e) {
-                return false;
-            }
-            for(int j = j1 + step; j != j2; j += step) {
-                // If there is any piece on the path from the origin to the destination(open interval), the move is not
-                // legal
-                if(board.getBoard()[i1][j].hasPiece())
-                    return false;
-            }
-            return true;
-        } else if(j1 == j2) {
-            // Getting the direction of movement in the i direction (+1 if increasing and -1 if decreasing)
-            int step;
-            try {
-                step = Math.abs(i2 - i1) / (i2 - i1);
-            } catch(ArithmeticException e) {
-                return false;
-            }
-            for(int i = i1 + step; i != i2; i += step) {
-                // If there is any piece on the path from the origin to the destination(open interval), the move is not
-                // legal
-                if(board.getBoard()[i][j1].hasPiece())
-                    return false;
-            }
-            return true;
-        }
-        return false;
+        return (i1 == i2) != (j1 == j2) && isPathClear(i1, j1, i2, j2);
+    }
+
+    // Checks that there is no piece on the path from the origin to the destination (open interval), for two squares
+    // on the same line
+    private boolean isPathClear(int i1, int j1, int i2, int j2) {
+        return (Attacks.between(BitBoard.square(i1, j1), BitBoard.square(i2, j2)) & board.getOccupied()) == 0;
     }
 
     public Piece deepcopy(Board b) {
@@ -173,6 +129,18 @@ public class Piece {
         return colour;
     }
 
+    /**
+     * @return the index of this piece among the {@link chess.BitBoard} piece constants, used for hashing
+     */
+    public int getPieceIndex() {
+        return BitBoard.NO_PIECE;
+    }
+
+    // Index of the white piece of this type plus 6 for black, following the BitBoard piece constants
+    protected int pieceIndex(int whitePiece) {
+        return colour == PieceColour.WHITE ? whitePiece : whitePiece + 6;
+    }
+
     @Override
     public String toString() {
         return  "<piece=" + this.getClass().getName().substring(13) +
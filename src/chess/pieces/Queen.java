@@ -1,5 +1,6 @@
 package chess.pieces;
 
+import chess.BitBoard;
 import chess.Board;
 import chess.Move;
 import chess.PieceColour;
@@ -22,12 +23,17 @@ public class Queen extends Piece {
     }
 
     @Override
-    public boolean isLegitMove(int i1, int j1, int i2, int j2) {
-        return super.isLegitMove(i1, j1, i2, j2) && (
+    protected boolean isPseudoLegitMove(int i1, int j1, int i2, int j2) {
+        return super.isPseudoLegitMove(i1, j1, i2, j2) && (
                 this.isLegitDiagonalMove(i1, j1, i2, j2) ||
                 this.isLegitStraightMove(i1, j1, i2, j2));
     }
 
+    @Override
+    public int getPieceIndex() {
+        return pieceIndex(BitBoard.WHITE_QUEEN);
+    }
+
     @Override
     public Queen deepcopy(Board b) {
         Piece temp2 = super.deepcopy(b);
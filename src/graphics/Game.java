@@ -1,10 +1,13 @@
 package graphics;
 
 import chess.ChessDriver;
+import chess.PackedMove;
+import chess.SearchResult;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.concurrent.CompletableFuture;
 
 public class Game extends JFrame implements MouseListener, MouseMotionListener {
     private final int BOARD_WIDTH = 600;
@@ -59,6 +62,8 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
         initBoard();
 //        System.out.println(driver.getBoard().getLegalMovesReadable());
 //        initPromBoard();
+        // The AI may have the first move
+        waitForAI();
     }
 
     public void initBoard() {
@@ -148,7 +153,8 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
             parent.add(chessPiece);
 
             if(situation.equals("PROMOTION")) {
-                PromotionPopup.create(x, y, driver, chessBoard);
+                // The AI answers once the piece is chosen
+                PromotionPopup.create(x, y, driver, chessBoard, this::waitForAI);
             }
 
             if(driver.isGameOver()) {
@@ -165,9 +171,22 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
         }
     }
 
+    // Plays the move of the AI once its search completes, on the event thread, without blocking it in the meantime.
+    // A search that was replaced by another one hands over to the new one
+    private void waitForAI() {
+        CompletableFuture<SearchResult> search = driver.getAISearch();
+        if(search != null)
+            search.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                if(driver.getAISearch() == search)
+                    aiMove();
+                else
+                    waitForAI();
+            }));
+    }
+
     private void aiMove() {
 //        System.out.println(driver.getLegalMovesReadable());
-        int[] move;
+        int move;
         try {
             move = driver.getChessAIMove();
             driver.makeAIMove();
@@ -175,8 +194,8 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
             System.out.print("[ChessAI] There is no move.\n");
             return;
         }
-        int[] start = coordBoardToScreen(move[0], move[1]);
-        int[] dest  = coordBoardToScreen(move[2], move[3]);
+        int[] start = coordBoardToScreen(PackedMove.fromRow(move), PackedMove.fromColumn(move));
+        int[] dest  = coordBoardToScreen(PackedMove.toRow(move), PackedMove.toColumn(move));
 
         try {
             Square square = (Square) chessBoard.getComponentAt(start[0], start[1]);
@@ -216,6 +235,9 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
     }
 
     public void mousePressed(MouseEvent e) {
+        // No moves while the AI is thinking
+        if (e.getButton() == MouseEvent.BUTTON1 && driver.getAISearch() != null)
+            return;
         if (e.getButton() == MouseEvent.BUTTON1) {
             chessPiece = null;
             try {
@@ -254,7 +276,7 @@ public class Game extends JFrame implements MouseListener, MouseMotionListener {
         if(chessPiece != null)
             movePiece(e.getX(), e.getY());
         if(chessPiece != null && driver.isComputerGame())
-            aiMove();
+            waitForAI();
         chessPiece = null;
     }
 
@@ -11,13 +11,16 @@ public class PromotionPopup extends JPopupMenu {
     private final JPanel chessBoard;
     private final int x, y;
     private final String turn;
+    // Called once the pawn has been promoted
+    private final Runnable promoted;
 
-    public PromotionPopup(int x, int y, ChessDriver driver, JPanel chessBoard) {
+    public PromotionPopup(int x, int y, ChessDriver driver, JPanel chessBoard, Runnable promoted) {
         setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
         this.driver = driver;
         this.turn = driver.getOtherTurn();
         this.x = x;
         this.y = y;
+        this.promoted = promoted;
 
         addPromoPopupOption("QUEEN");
         addPromoPopupOption("ROOK");
@@ -29,8 +32,8 @@ public class PromotionPopup extends JPopupMenu {
         this.setVisible(true);
     }
 
-    public static void create(int x, int y, ChessDriver driver, JPanel chessBoard) {
-        new PromotionPopup(x, y, driver, chessBoard);
+    public static void create(int x, int y, ChessDriver driver, JPanel chessBoard, Runnable promoted) {
+        new PromotionPopup(x, y, driver, chessBoard, promoted);
     }
 
     private void addPromoPopupOption(String piece) {
@@ -49,6 +52,7 @@ public class PromotionPopup extends JPopupMenu {
                     "assets/pieces/" + turn.toLowerCase().charAt(0) + piece.toLowerCase() + ".png"
             )));
             this.setVisible(false);
+            promoted.run();
         });
         this.add(menuItem);
     }
@@ -0,0 +1,31 @@
+package chess;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AttacksTest {
+
+    @Test
+    public void testSlidersMatchRayWalk() {
+        Random r = new Random(42);
+        for(int k = 0; k < 10000; k++) {
+            int square = r.nextInt(64);
+            long occupied = r.nextLong() & r.nextLong();
+            assertEquals(BitBoard.rookAttacks(square, occupied), Attacks.rook(square, occupied));
+            assertEquals(BitBoard.bishopAttacks(square, occupied), Attacks.bishop(square, occupied));
+        }
+    }
+
+    @Test
+    public void testEmptyBoard() {
+        assertEquals(14, Long.bitCount(Attacks.rook(0, 0)));
+        assertEquals(13, Long.bitCount(Attacks.bishop(BitBoard.square(3, 3), 0)));
+        assertEquals(27, Long.bitCount(Attacks.queen(BitBoard.square(3, 3), 0)));
+        assertEquals(2, Long.bitCount(Attacks.knight(0)));
+        assertEquals(8, Long.bitCount(Attacks.king(BitBoard.square(4, 4))));
+        assertEquals(1, Long.bitCount(Attacks.pawn(BitBoard.WHITE, BitBoard.square(1, 0))));
+    }
+}
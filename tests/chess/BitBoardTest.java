@@ -0,0 +1,142 @@
+package chess;
+
+import chess.pieces.*;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BitBoardTest {
+
+    @Test
+    public void testStartingPosition() {
+        BitBoard bitBoard = new BitBoard();
+        assertEquals(20, bitBoard.getAllLegalMoves().size());
+        assertEquals('k', bitBoard.getPiece(0, 4));
+        assertEquals('Q', bitBoard.getPiece(7, 3));
+        assertEquals(' ', bitBoard.getPiece(4, 4));
+    }
+
+    @Test
+    public void testGetAllLegalMoves() {
+        Board board = new Board(Board.BoardState.EMPTY);
+        board.setPiece(0, 0, new Queen(PieceColour.BLACK, board));
+        board.setPiece(1, 4, new Queen(PieceColour.BLACK, board));
+        board.setPiece(4, 4, new Bishop(PieceColour.WHITE, board));
+        board.setPiece(3, 4, new Rook(PieceColour.BLACK, board));
+        board.setPiece(1, 5, new Knight(PieceColour.WHITE, board));
+        board.setPiece(1, 1, new Pawn(PieceColour.WHITE, board));
+        board.setPiece(6, 2, new Pawn(PieceColour.WHITE, board));
+        // Bishop 9, knight 6, pawn on b2 2, pawn on c7 1
+        assertEquals(18, new BitBoard(board).getAllLegalMoves().size());
+    }
+
+    @Test
+    public void testMakeMoveAndCopy() {
+        BitBoard bitBoard = new BitBoard();
+        BitBoard copy = bitBoard.copy();
+        bitBoard.makeMove(1, 4, 3, 4);
+        assertEquals('p', bitBoard.getPiece(3, 4));
+        assertEquals(' ', bitBoard.getPiece(1, 4));
+        assertEquals(PieceColour.BLACK, bitBoard.getTurn());
+        assertEquals(BitBoard.square(2, 4), bitBoard.getEnPassantSquare());
+        assertEquals('p', copy.getPiece(1, 4));
+        assertEquals(PieceColour.WHITE, copy.getTurn());
+    }
+
+    @Test
+    public void testNoCastlingThroughAttackedSquare() {
+        char[][] matrix = new Board(Board.BoardState.EMPTY).getBoardAsMatrix();
+        matrix[0][4] = 'k';
+        matrix[0][7] = 'r';
+        matrix[0][0] = 'r';
+        matrix[7][5] = 'R';
+        BitBoard bitBoard = new BitBoard(matrix, PieceColour.WHITE);
+        boolean kingSide = false, queenSide = false;
+        for(int[] move : bitBoard.getAllLegalMoves()) {
+            if(move[1] == 4 && move[3] == 6) kingSide = true;
+            if(move[1] == 4 && move[3] == 2) queenSide = true;
+        }
+        assertFalse(kingSide);
+        assertTrue(queenSide);
+    }
+
+    @Test
+    public void testMakeUnmakeRestoresPosition() {
+        Random random = new Random(7);
+        for(int game = 0; game < 20; game++) {
+            BitBoard bitBoard = new BitBoard();
+            BitBoard start = bitBoard.copy();
+            MoveList moves = new MoveList();
+            int played = 0;
+            for(int ply = 0; ply < 150; ply++) {
+                moves.clear();
+                bitBoard.generateMoves(moves);
+                if(moves.isEmpty() || bitBoard.getPieces(BitBoard.WHITE_KING) == 0 ||
+                        bitBoard.getPieces(BitBoard.BLACK_KING) == 0)
+                    break;
+                bitBoard.makeMove(moves.get(random.nextInt(moves.size())));
+                assertEquals(Zobrist.compute(bitBoard), bitBoard.getKey());
+                played++;
+            }
+            assertEquals(played, bitBoard.getUndoSize());
+            while(bitBoard.getUndoSize() > 0)
+                bitBoard.unmakeMove();
+            assertEquals(start.getKey(), bitBoard.getKey());
+            for(int piece = 0; piece < 12; piece++)
+                assertEquals(start.getPieces(piece), bitBoard.getPieces(piece));
+            assertEquals(start.getCastlingRights(), bitBoard.getCastlingRights());
+            assertEquals(start.getEnPassantSquare(), bitBoard.getEnPassantSquare());
+            assertEquals(start.getTurn(), bitBoard.getTurn());
+        }
+    }
+
+    @Test
+    public void testLegalMoveCounts() {
+        // Kiwipete
+        assertEquals(48, BitBoard.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1")
+                .getAllLegalMoves().size());
+        // White is in check from the bishop on b6 and has 6 evasions
+        MoveList moves = new MoveList();
+        BitBoard.fromFen("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1").generateMoves(moves);
+        assertEquals(6, moves.size());
+    }
+
+    @Test
+    public void testEnPassantHorizontalPin() {
+        // Capturing on c6 would remove both pawns from the row and expose the king to the rook
+        BitBoard bitBoard = BitBoard.fromFen("8/8/8/KPp4r/8/8/8/7k w - c6 0 1");
+        for(int[] move : bitBoard.getAllLegalMoves())
+            assertFalse(move[0] == 4 && move[1] == 1 && move[3] == 2);
+        assertEquals(4, bitBoard.getAllLegalMoves().size());
+    }
+
+    @Test
+    public void testGenerateCaptures() {
+        // Every capture and promotion of the full generation, and nothing else, for positions with promotions, en
+        // passant, pins and checks
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard board = BitBoard.fromFen(position.fen);
+            MoveList all = new MoveList();
+            MoveList captures = new MoveList();
+            board.generateMoves(all);
+            board.generateCaptures(captures);
+            int expected = 0;
+            for(int k = 0; k < all.size(); k++)
+                if(PackedMove.isCapture(all.get(k)) || PackedMove.isPromotion(all.get(k))) {
+                    expected++;
+                    assertTrue(captures.contains(all.get(k)));
+                }
+            assertEquals(position.toString(), expected, captures.size());
+        }
+    }
+
+    @Test
+    public void testFen() {
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        assertEquals(fen, BitBoard.fromFen(fen).toFen());
+        assertEquals(new BitBoard().getKey(), BitBoard.fromFen(
+                "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1").getKey());
+    }
+}
@@ -2,7 +2,9 @@ package chess;
 
 import chess.pieces.King;
 import chess.pieces.Knight;
+import chess.pieces.Pawn;
 import chess.pieces.Queen;
+import chess.pieces.Rook;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -20,4 +22,65 @@ public class BoardTest {
         assertEquals(matrix[0][0], 'k');
     }
 
+    @Test
+    public void testPinnedPieceStaysOnLine() {
+        Board board = new Board(Board.BoardState.EMPTY);
+        board.setPiece(0, 4, new King(PieceColour.WHITE, board));
+        Rook rook = new Rook(PieceColour.WHITE, board);
+        board.setPiece(1, 4, rook);
+        board.setPiece(7, 4, new Rook(PieceColour.BLACK, board));
+        board.setPiece(7, 0, new King(PieceColour.BLACK, board));
+        char[][] before = board.getBoardAsMatrix();
+
+        // The rook can only move along the e file, up to and including the capture of the pinning rook
+        assertEquals(6, rook.getLegalMoves().size());
+        assertFalse(rook.isLegitMove(1, 4, 1, 0));
+        assertTrue(rook.isLegitMove(1, 4, 7, 4));
+        // Checking the moves leaves the board as it was
+        assertArrayEquals(before, board.getBoardAsMatrix());
+    }
+
+    @Test
+    public void testKingMovesAndEnPassant() {
+        Board board = new Board(Board.BoardState.EMPTY);
+        King king = new King(PieceColour.WHITE, board);
+        board.setPiece(4, 0, king);
+        board.setPiece(6, 2, new King(PieceColour.BLACK, board));
+        Pawn white = new Pawn(PieceColour.WHITE, board);
+        board.setPiece(4, 4, white);
+        Pawn black = new Pawn(PieceColour.BLACK, board);
+        board.setPiece(6, 3, black);
+        board.turn = PieceColour.BLACK;
+        board.movePiece(6, 3, 4, 3, black);
+
+        // The king may not move next to the other king
+        assertFalse(king.isLegitMove(4, 0, 5, 1));
+        assertTrue(king.isLegitMove(4, 0, 3, 1));
+        // e5xd6 en passant
+        assertTrue(white.isLegitMove(4, 4, 5, 3));
+        assertEquals(6, board.getLegalMoves().size());
+    }
+
+    @Test
+    public void testSquareAttackedAndCastling() {
+        Board board = new Board();
+        // 1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5
+        int[][] moves = {{1, 4, 3, 4}, {6, 4, 4, 4}, {0, 6, 2, 5}, {7, 1, 5, 2}, {0, 5, 3, 2}, {7, 5, 4, 2}};
+        for(int[] move : moves)
+            board.movePiece(move[0], move[1], move[2], move[3], board.getPiece(move[0], move[1]));
+
+        // The bishop on c5 attacks f2, the knight on c6 attacks d4 and e5
+        assertTrue(board.isSquareAttacked(BitBoard.square(1, 5), PieceColour.BLACK));
+        assertTrue(board.isSquareAttacked(BitBoard.square(3, 3), PieceColour.BLACK));
+        assertFalse(board.isSquareAttacked(BitBoard.square(2, 7), PieceColour.BLACK));
+        assertNull(board.isCheck());
+
+        King king = board.kings[0];
+        assertTrue(king.isLegitMove(0, 4, 0, 6));
+        assertFalse(king.isLegitMove(0, 4, 0, 2));
+
+        // With a black knight on h3 attacking g1 the king can no longer castle
+        board.setPiece(2, 7, new Knight(PieceColour.BLACK, board));
+        assertFalse(king.isLegitMove(0, 4, 0, 6));
+    }
 }
@@ -0,0 +1,195 @@
+package chess;
+
+import chess.pieces.King;
+import chess.pieces.Pawn;
+import chess.pieces.Queen;
+import chess.pieces.Rook;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChessAITest {
+
+    @Test
+    public void testSearchLimits() {
+        ChessAI ai = new ChessAI("WHITE");
+        ai.setBoard(new Board());
+
+        ai.findMove(SearchLimits.depth(3));
+        int depthNodes = ai.movesChecked;
+        assertTrue(depthNodes > 0);
+
+        // The search stops shortly after the node limit and still returns a legal move
+        int move = ai.findMove(SearchLimits.nodes(5000));
+        assertTrue(ai.movesChecked <= 5000 + 1024);
+        assertNotEquals(PackedMove.NULL_MOVE, move);
+
+        long start = System.currentTimeMillis();
+        move = ai.findMove(SearchLimits.moveTime(200));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertNotEquals(PackedMove.NULL_MOVE, move);
+    }
+
+    @Test
+    public void testClockBudget() {
+        assertEquals(0, SearchLimits.depth(5).getTimeBudgetMillis());
+        assertEquals(300, SearchLimits.moveTime(300).getTimeBudgetMillis());
+        // 60 s left with 30 moves to go and a 1 s increment: 2 s plus three quarters of the increment
+        long budget = SearchLimits.clock(60_050, 1000, 30).getTimeBudgetMillis();
+        assertEquals(2750, budget);
+        // Never more than half of the clock
+        assertTrue(SearchLimits.clock(1000, 5000, 1).getTimeBudgetMillis() <= 500);
+    }
+
+    @Test
+    public void testFindsMateInOne() {
+        Board board = new Board(Board.BoardState.EMPTY);
+        board.setPiece(7, 6, new King(PieceColour.BLACK, board));
+        for(int j = 5; j < 8; j++)
+            board.setPiece(6, j, new Pawn(PieceColour.BLACK, board));
+        board.setPiece(0, 0, new Rook(PieceColour.WHITE, board));
+        board.setPiece(0, 6, new King(PieceColour.WHITE, board));
+
+        ChessAI ai = new ChessAI("WHITE");
+        ai.setBoard(board);
+        int move = ai.findMove(SearchLimits.depth(4));
+        assertEquals("a1a8", PackedMove.toString(move));
+        // Mate on the first ply
+        assertEquals(ChessAI.MATE - 1, ai.getLastScore());
+        assertTrue(ChessAI.isMateScore(ai.getLastScore()));
+    }
+
+    @Test
+    public void testQuiescenceSeesRecapture() {
+        Board board = new Board(Board.BoardState.EMPTY);
+        board.setPiece(0, 0, new King(PieceColour.WHITE, board));
+        board.setPiece(0, 3, new Queen(PieceColour.WHITE, board));
+        board.setPiece(7, 7, new King(PieceColour.BLACK, board));
+        board.setPiece(4, 3, new Pawn(PieceColour.BLACK, board));
+        board.setPiece(5, 4, new Pawn(PieceColour.BLACK, board));
+
+        // At depth 1 Qxd5 wins a pawn, until the quiescence search sees exd5
+        ChessAI ai = new ChessAI("WHITE");
+        ai.setBoard(board);
+        int move = ai.findMove(SearchLimits.depth(1));
+        assertNotEquals("d1d5", PackedMove.toString(move));
+        assertTrue(ai.getLastScore() > 500);
+    }
+
+    @Test
+    public void testSelectiveSearch() {
+        BitBoard position = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        ChessAI fullWidth = new ChessAI("WHITE");
+        fullWidth.setEngineOptions(EngineOptions.fullWidth());
+        fullWidth.findMove(position, SearchLimits.depth(5));
+        ChessAI selective = new ChessAI("WHITE");
+        selective.findMove(position, SearchLimits.depth(5));
+        assertTrue(selective.movesChecked < fullWidth.movesChecked);
+
+        // The pruning does not hide a mate in two: 1. Qd8+ Bxd8 2. Re8#
+        BitBoard mate = BitBoard.fromFen("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0");
+        assertEquals("d5d8", PackedMove.toString(selective.findMove(mate, SearchLimits.depth(6))));
+        assertEquals(ChessAI.MATE - 3, selective.getLastScore());
+        // The search leaves the position as it was
+        assertEquals(BitBoard.fromFen("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0").getKey(),
+                mate.getKey());
+    }
+
+    @Test
+    public void testPrincipalVariation() {
+        BitBoard position = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        ChessAI ai = new ChessAI("WHITE");
+        SearchResult result = ai.search(position, SearchLimits.depth(6));
+        assertEquals(6, result.getDepth());
+        assertEquals(ai.getLastScore(), result.getScore());
+        int[] line = result.getPrincipalVariation();
+        assertTrue(line.length >= 2);
+        assertEquals(result.getBestMove(), line[0]);
+        // Every move of the line is legal in the position reached by the moves before it
+        MoveList moves = new MoveList();
+        for(int move : line) {
+            moves.clear();
+            position.generateMoves(moves);
+            assertTrue(PackedMove.toString(move), moves.contains(move));
+            position.makeMove(move);
+        }
+
+        // The line of a mate in two ends with the mate
+        result = ai.search(BitBoard.fromFen("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0"),
+                SearchLimits.depth(6));
+        assertEquals("d5d8 e7d8 e1e8", result.getPrincipalVariationString());
+        assertEquals(2, ChessAI.mateDistance(result.getScore()));
+    }
+
+    @Test
+    public void testLazySmp() {
+        ChessAI ai = new ChessAI("WHITE");
+        ai.getEngineOptions().setThreads(3);
+        BitBoard position = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        SearchResult result = ai.search(position, SearchLimits.depth(5));
+        assertEquals(5, result.getDepth());
+        // The helpers count towards the nodes of the result
+        assertTrue(result.getNodes() > ai.movesChecked);
+        MoveList moves = new MoveList();
+        position.generateMoves(moves);
+        assertTrue(moves.contains(result.getBestMove()));
+
+        // The helpers stop with the main thread, which still finds the mate
+        result = ai.search(BitBoard.fromFen("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0"),
+                SearchLimits.depth(20));
+        assertEquals("d5d8", PackedMove.toString(result.getBestMove()));
+        assertEquals(ChessAI.MATE - 3, result.getScore());
+        ai.shutdown();
+    }
+
+    @Test
+    public void testYoungBrothersWait() {
+        ChessAI ai = new ChessAI("WHITE");
+        ai.getEngineOptions().setThreads(3);
+        ai.getEngineOptions().setParallelMode(EngineOptions.ParallelMode.YBWC);
+        BitBoard position = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        SearchResult result = ai.search(position, SearchLimits.depth(5));
+        assertEquals(5, result.getDepth());
+        // The line is put together from the lines of the workers at the split points
+        MoveList moves = new MoveList();
+        for(int move : result.getPrincipalVariation()) {
+            moves.clear();
+            position.generateMoves(moves);
+            assertTrue(PackedMove.toString(move), moves.contains(move));
+            position.makeMove(move);
+        }
+
+        result = ai.search(BitBoard.fromFen("r1b2k1r/ppp1bppp/8/1B1Q4/5q2/2P5/PPP2PPP/R3R1K1 w - - 1 0"),
+                SearchLimits.depth(20));
+        assertEquals("d5d8 e7d8 e1e8", result.getPrincipalVariationString());
+        assertEquals(ChessAI.MATE - 3, result.getScore());
+
+        // The node limit counts the nodes of all workers together; each of them may run on until its next check
+        result = ai.search(BitBoard.fromFen(Perft.Position.POSITION_6.fen), SearchLimits.nodes(20000));
+        assertTrue(result.getNodes() < 2 * 20000);
+        ai.shutdown();
+    }
+
+    @Test
+    public void testDeterministicSearch() {
+        BitBoard position = BitBoard.fromFen(Perft.Position.POSITION_4.fen);
+        SearchResult first = new ChessAI("WHITE").search(position, SearchLimits.depth(5));
+        SearchResult second = new ChessAI("WHITE").search(position, SearchLimits.depth(5));
+        assertEquals(first.getPrincipalVariationString(), second.getPrincipalVariationString());
+        assertEquals(first.getScore(), second.getScore());
+        assertEquals(first.getNodes(), second.getNodes());
+
+        // Variety changes the root scores, but the same seed repeats the search exactly
+        EngineOptions options = new EngineOptions();
+        options.setVariety(30);
+        options.setSeed(5);
+        ChessAI ai = new ChessAI("WHITE");
+        ai.setEngineOptions(options);
+        first = ai.search(position, SearchLimits.depth(4));
+        ai = new ChessAI("WHITE");
+        ai.setEngineOptions(options);
+        second = ai.search(position, SearchLimits.depth(4));
+        assertEquals(first.getBestMove(), second.getBestMove());
+        assertEquals(first.getScore(), second.getScore());
+    }
+}
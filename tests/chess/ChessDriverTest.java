@@ -0,0 +1,72 @@
+package chess;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ChessDriverTest {
+
+    @Test
+    public void testCheckMoveAndDestinations() {
+        ChessDriver driver = new ChessDriver();
+        assertEquals(20, driver.getLegalMoveCache().size());
+        assertTrue(driver.checkMove(1, 4, 3, 4));
+        assertFalse(driver.checkMove(1, 4, 4, 4));
+        // Black can not move first
+        assertFalse(driver.checkMove(6, 4, 4, 4));
+        assertEquals(1L << BitBoard.square(2, 4) | 1L << BitBoard.square(3, 4), driver.getLegalDestinations(1, 4));
+
+        driver.makeMove(1, 4, 3, 4);
+        assertEquals("BLACK", driver.getTurn());
+        assertTrue(driver.checkMove(6, 4, 4, 4));
+        assertFalse(driver.checkMove(1, 3, 3, 3));
+        // An illegal move is ignored
+        driver.makeMove(6, 4, 3, 4);
+        assertEquals("BLACK", driver.getTurn());
+    }
+
+    @Test
+    public void testCheckMate() {
+        ChessDriver driver = new ChessDriver();
+        // 1. f3 e5 2. g4 Qh4#
+        int[][] moves = {{1, 5, 2, 5}, {6, 4, 4, 4}, {1, 6, 3, 6}, {7, 3, 3, 7}};
+        for(int[] move : moves) {
+            assertFalse(driver.isGameOver());
+            driver.makeMove(move[0], move[1], move[2], move[3]);
+        }
+        assertTrue(driver.getLegalMoveCache().isCheck());
+        assertTrue(driver.isGameOver());
+        assertEquals("BLACK", driver.getWinner());
+    }
+
+    @Test
+    public void testAIAnswersEveryMove() {
+        // The colour may be given in any case
+        ChessDriver driver = new ChessDriver("black");
+        try {
+            assertTrue(driver.isComputerGame());
+            assertNull(driver.getAISearch());
+            int[][] moves = {{1, 4, 3, 4}, {1, 3, 3, 3}};
+            for(int[] move : moves) {
+                driver.makeMove(move[0], move[1], move[2], move[3]);
+                assertNotNull(driver.getAISearch());
+                // An illegal move leaves the position, and so the search, as it is
+                CompletableFuture<SearchResult> search = driver.getAISearch();
+                driver.makeMove(0, 0, 5, 5);
+                assertSame(search, driver.getAISearch());
+                // Play the best move found so far instead of waiting for the whole second
+                driver.stopAI();
+                int aiMove = driver.getChessAIMove();
+                assertTrue(driver.checkMove(PackedMove.fromRow(aiMove), PackedMove.fromColumn(aiMove),
+                        PackedMove.toRow(aiMove), PackedMove.toColumn(aiMove)));
+                driver.makeAIMove();
+                assertEquals("WHITE", driver.getTurn());
+                assertNull(driver.getAISearch());
+            }
+        } finally {
+            driver.shutdown();
+        }
+    }
+}
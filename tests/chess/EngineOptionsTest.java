@@ -0,0 +1,66 @@
+package chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EngineOptionsTest {
+
+    @Test
+    public void testSetOption() {
+        EngineOptions options = new EngineOptions();
+        assertTrue(options.isNullMove());
+        options.setOption("NullMove", "false");
+        options.setOption("lmrfulldepthmoves", "5");
+        assertFalse(options.isVerbose());
+        options.setOption("Verbose", "true");
+        assertTrue(options.isVerbose());
+        assertFalse(options.isNullMove());
+        assertEquals(5, options.getLmrFullDepthMoves());
+
+        EngineOptions copy = options.copy();
+        assertEquals(options.toString(), copy.toString());
+        copy.setFutilityMargin(90);
+        assertEquals(150, options.getFutilityMargin());
+
+        // Any seed survives the copy
+        options.setSeed(-1);
+        assertEquals(-1, options.copy().getSeed());
+
+        assertFalse(EngineOptions.fullWidth().isLateMoveReductions());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOption() {
+        new EngineOptions().setOption("Contempt", "10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValue() {
+        new EngineOptions().setOption("Futility", "yes");
+    }
+
+    @Test
+    public void testValueOutOfRange() {
+        EngineOptions options = new EngineOptions();
+        String[][] invalid = {{"LmrMinDepth", "1"}, {"NullMoveMinDepth", "0"}, {"FutilityDepth", "0"},
+                {"ReverseFutilityDepth", "0"}, {"NullMoveReduction", "0"}, {"Threads", "0"}, {"Variety", "-5"},
+                {"FutilityMargin", "100000"}};
+        for(String[] option : invalid) {
+            try {
+                options.setOption(option[0], option[1]);
+                fail(option[0] + "=" + option[1] + " is out of range");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(new EngineOptions().toString(), options.toString());
+
+        // The setters limit the value to the range instead
+        options.setLmrMinDepth(1);
+        assertEquals(2, options.getLmrMinDepth());
+        options.setFutilityDepth(0);
+        assertEquals(1, options.getFutilityDepth());
+        options.setOption("LmrMinDepth", "2");
+        assertEquals(2, options.getLmrMinDepth());
+    }
+}
@@ -0,0 +1,79 @@
+package chess;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EngineServiceTest {
+    private static final BitBoard MATE_IN_ONE = BitBoard.fromFen("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1");
+    private static final SearchLimits UNLIMITED = SearchLimits.depth(SearchLimits.MAX_DEPTH);
+
+    @Test
+    public void testSearchesOneAfterTheOther() throws Exception {
+        EngineService engine = new EngineService(new ChessAI("WHITE"));
+        try {
+            // The same engine serves any number of searches
+            for(int k = 0; k < 3; k++) {
+                SearchResult result = engine.submit(MATE_IN_ONE, SearchLimits.depth(3)).get(10, TimeUnit.SECONDS);
+                assertEquals("d1d8", PackedMove.toString(result.getBestMove()));
+            }
+            assertFalse(engine.isSearching());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        EngineService engine = new EngineService(new ChessAI("WHITE"));
+        try {
+            CompletableFuture<SearchResult> search = engine.submit(BitBoard.fromFen(Perft.Position.INITIAL.fen),
+                    UNLIMITED);
+            Thread.sleep(200);
+            engine.stop();
+            SearchResult result = search.get(10, TimeUnit.SECONDS);
+            assertNotEquals(PackedMove.NULL_MOVE, result.getBestMove());
+            assertTrue(result.getDepth() > 0);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        EngineService engine = new EngineService(new ChessAI("WHITE"));
+        try {
+            CompletableFuture<SearchResult> running = engine.submit(BitBoard.fromFen(Perft.Position.INITIAL.fen),
+                    UNLIMITED);
+            CompletableFuture<SearchResult> queued = engine.submit(BitBoard.fromFen(Perft.Position.KIWIPETE.fen),
+                    UNLIMITED);
+            CompletableFuture<SearchResult> next = engine.submit(MATE_IN_ONE, SearchLimits.depth(3));
+            Thread.sleep(100);
+            // Cancelling the running search stops it and the queued one never runs
+            queued.cancel(false);
+            running.cancel(false);
+            assertEquals("d1d8", PackedMove.toString(next.get(10, TimeUnit.SECONDS).getBestMove()));
+            assertTrue(running.isCancelled());
+            assertTrue(queued.isCancelled());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() {
+        EngineService engine = new EngineService(new ChessAI("WHITE"));
+        CompletableFuture<SearchResult> search = engine.submit(BitBoard.fromFen(Perft.Position.INITIAL.fen), UNLIMITED);
+        engine.shutdown();
+        assertTrue(search.isCancelled());
+        try {
+            engine.submit(MATE_IN_ONE, SearchLimits.depth(1));
+            fail("The service does not take searches after it shut down");
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package chess;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EvaluationTest {
+
+    private static void assertTermsMatch(BitBoard board) {
+        int[] terms = Evaluation.compute(board);
+        assertEquals(terms[0], board.getMiddlegameScore());
+        assertEquals(terms[1], board.getEndgameScore());
+        assertEquals(terms[2], board.getPhase());
+    }
+
+    // Swaps the colours and flips the board vertically
+    static String mirror(String fen) {
+        String[] fields = fen.split(" ");
+        String[] rows = fields[0].split("/");
+        StringBuilder placement = new StringBuilder();
+        for(int r = 7; r >= 0; r--) {
+            for(char c : rows[r].toCharArray())
+                placement.append(Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+            if(r > 0)
+                placement.append('/');
+        }
+        return placement + (fields[1].equals("w") ? " b" : " w") + " - - 0 1";
+    }
+
+    @Test
+    public void testStartPosition() {
+        BitBoard board = new BitBoard();
+        assertEquals(Evaluation.MAX_PHASE, board.getPhase());
+        assertEquals(0, board.getMiddlegameScore());
+        assertEquals(0, board.getEndgameScore());
+        assertEquals(0, Evaluation.evaluate(board));
+    }
+
+    @Test
+    public void testMirroredPositionsScoreTheSame() {
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard board = BitBoard.fromFen(position.fen);
+            BitBoard mirrored = BitBoard.fromFen(mirror(position.fen));
+            assertEquals(position.toString(), Evaluation.evaluate(board), Evaluation.evaluate(mirrored));
+            assertEquals(board.getPhase(), mirrored.getPhase());
+        }
+    }
+
+    @Test
+    public void testTapering() {
+        assertEquals(100, Evaluation.taper(100, 20, Evaluation.MAX_PHASE));
+        assertEquals(20, Evaluation.taper(100, 20, 0));
+        assertEquals(60, Evaluation.taper(100, 20, Evaluation.MAX_PHASE / 2));
+        // Promotions can raise the phase past its starting value
+        assertEquals(100, Evaluation.taper(100, 20, Evaluation.MAX_PHASE + 4));
+    }
+
+    @Test
+    public void testIncrementalTermsInRandomGames() {
+        Random random = new Random(11);
+        for(int game = 0; game < 20; game++) {
+            BitBoard board = BitBoard.fromFen(Perft.Position.values()[game % Perft.Position.values().length].fen);
+            BitBoard start = board.copy();
+            MoveList moves = new MoveList();
+            for(int ply = 0; ply < 150; ply++) {
+                moves.clear();
+                board.generateMoves(moves);
+                if(moves.isEmpty())
+                    break;
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+                assertTermsMatch(board);
+                assertTermsMatch(board.copy());
+            }
+            while(board.getUndoSize() > 0)
+                board.unmakeMove();
+            assertEquals(start.getMiddlegameScore(), board.getMiddlegameScore());
+            assertEquals(start.getEndgameScore(), board.getEndgameScore());
+            assertEquals(start.getPhase(), board.getPhase());
+        }
+    }
+
+    @Test
+    public void testPackedScores() {
+        for(int middlegame : new int[] {-300, -1, 0, 1, 250})
+            for(int endgame : new int[] {-120, -1, 0, 1, 400}) {
+                int packed = Evaluation.pack(middlegame, endgame);
+                assertEquals(middlegame, Evaluation.middlegame(packed));
+                assertEquals(endgame, Evaluation.endgame(packed));
+            }
+        int sum = Evaluation.pack(10, -20) - Evaluation.pack(-5, 7);
+        assertEquals(15, Evaluation.middlegame(sum));
+        assertEquals(-27, Evaluation.endgame(sum));
+    }
+
+    @Test
+    public void testPawnStructure() {
+        // Only the passed pawn on e5 differs between the two sides
+        int passed = Evaluation.pawnStructure(BitBoard.fromFen("4k3/p7/8/4P3/8/8/P7/4K3 w - - 0 1"));
+        assertEquals(Evaluation.PASSED_MIDDLEGAME[4] + Evaluation.ISOLATED[0], Evaluation.middlegame(passed));
+        assertEquals(Evaluation.PASSED_ENDGAME[4] + Evaluation.ISOLATED[1], Evaluation.endgame(passed));
+        // The d pawns are doubled and block each other's way, the black ones on c6 and d5 stop them from being passed
+        int doubled = Evaluation.pawnStructure(BitBoard.fromFen("4k3/8/2p5/3p4/3P4/3P4/8/4K3 w - - 0 1"));
+        assertEquals(Evaluation.DOUBLED[0] + 2 * Evaluation.ISOLATED[0],
+                Evaluation.middlegame(doubled));
+        // The same pawns found in the pawn hash table
+        PawnHashTable table = new PawnHashTable(16);
+        BitBoard board = BitBoard.fromFen("4k3/8/2p5/3p4/3P4/3P4/8/4K3 w - - 0 1");
+        assertEquals(doubled, table.probe(board));
+        board.makeMove(0, 4, 1, 4);
+        assertEquals(doubled, table.probe(board));
+        assertEquals(0.5, table.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testPawnKey() {
+        Random random = new Random(5);
+        BitBoard board = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        MoveList moves = new MoveList();
+        for(int ply = 0; ply < 100; ply++) {
+            moves.clear();
+            board.generateMoves(moves);
+            if(moves.isEmpty())
+                break;
+            int move = moves.get(random.nextInt(moves.size()));
+            long pawnKey = board.getPawnKey();
+            board.makeMove(move);
+            assertEquals(Zobrist.computePawnKey(board), board.getPawnKey());
+            // Only moves of pawns and captures of pawns change the pawn key
+            if(PackedMove.piece(move) % 6 != BitBoard.WHITE_PAWN &&
+                    PackedMove.captured(move) % 6 != BitBoard.WHITE_PAWN)
+                assertEquals(pawnKey, board.getPawnKey());
+        }
+    }
+
+    @Test
+    public void testSaveAndLoadWeights() throws IOException {
+        int[] weights = Evaluation.getWeights();
+        Path file = Files.createTempFile("evaluation", ".weights");
+        try {
+            Evaluation.saveWeights(file);
+            int[] changed = weights.clone();
+            changed[Evaluation.weightIndex("MiddlegameValues", BitBoard.WHITE_KNIGHT)] += 50;
+            Evaluation.setWeights(changed);
+            BitBoard board = BitBoard.fromFen("4k3/8/8/8/8/8/8/1N2K3 w - - 0 1");
+            assertEquals(Evaluation.compute(BitBoard.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1"))[0] + 50 +
+                    weights[Evaluation.weightIndex("MiddlegameValues", BitBoard.WHITE_KNIGHT)] +
+                    weights[Evaluation.weightIndex(Evaluation.middlegameTableName(BitBoard.WHITE_KNIGHT), 57)],
+                    board.getMiddlegameScore());
+            Evaluation.loadWeights(file);
+            assertArrayEquals(weights, Evaluation.getWeights());
+
+            Files.write(file, List.of("Doubled 1 2 3"));
+            try {
+                Evaluation.loadWeights(file);
+                fail("Doubled has two weights");
+            } catch (IOException expected) {
+            }
+        } finally {
+            Evaluation.setWeights(weights);
+            Files.delete(file);
+        }
+    }
+}
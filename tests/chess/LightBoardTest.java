@@ -15,7 +15,6 @@ public class LightBoardTest {
     @Before
     public void setup() {
         board = new Board(Board.BoardState.EMPTY);
-        lightBoard = new LightBoard(board);
     }
 
     @Test
@@ -28,6 +27,8 @@ public class LightBoardTest {
         board.setPiece(1, 1, new Pawn(PieceColour.WHITE, board));
         board.setPiece(6, 1, new Pawn(PieceColour.BLACK, board));
         board.setPiece(6, 2, new Pawn(PieceColour.WHITE, board));
+        // The light board copies the position, so it is created after the pieces are placed
+        lightBoard = new LightBoard(board);
         ArrayList<Move> boardMoves = board.getLegalMoves();
         ArrayList<int[]> lBoardMoves = lightBoard.getAllLegalMoves();
         assertEquals(boardMoves.size(), lBoardMoves.size());
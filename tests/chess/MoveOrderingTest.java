@@ -0,0 +1,43 @@
+package chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MoveOrderingTest {
+
+    @Test
+    public void testOrder() {
+        BitBoard board = BitBoard.fromFen("4k3/8/8/3q4/4P3/8/8/3QK3 w - - 0 1");
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        int[] scores = new int[moves.size()];
+        int hashMove = find(moves, "e1f1");
+        int killer = find(moves, "d1a4");
+
+        MoveOrdering ordering = new MoveOrdering(8);
+        // A cutoff by d1a4 at ply 2 makes it a killer move there
+        MoveList searched = new MoveList();
+        searched.add(find(moves, "d1b3"));
+        searched.add(killer);
+        ordering.cutoff(searched, 1, 2, 3, PackedMove.NULL_MOVE);
+
+        ordering.score(board, moves, scores, hashMove, 2, PackedMove.NULL_MOVE);
+        assertEquals("e1f1", PackedMove.toString(MoveOrdering.next(moves, scores, 0)));
+        // The pawn takes the queen before the queen does
+        assertEquals("e4d5", PackedMove.toString(MoveOrdering.next(moves, scores, 1)));
+        assertEquals("d1d5", PackedMove.toString(MoveOrdering.next(moves, scores, 2)));
+        assertEquals("d1a4", PackedMove.toString(MoveOrdering.next(moves, scores, 3)));
+        // The move searched before the cutoff lost history, so it comes last
+        for(int k = 4; k < moves.size(); k++)
+            MoveOrdering.next(moves, scores, k);
+        assertEquals("d1b3", PackedMove.toString(moves.get(moves.size() - 1)));
+    }
+
+    private static int find(MoveList moves, String move) {
+        for(int k = 0; k < moves.size(); k++)
+            if(PackedMove.toString(moves.get(k)).equals(move))
+                return moves.get(k);
+        throw new IllegalArgumentException(move);
+    }
+}
@@ -0,0 +1,91 @@
+package chess;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NetworkTest {
+    private static final Network NETWORK = Network.random(32, 3);
+
+    private static Accumulator refreshed(BitBoard board) {
+        Accumulator accumulator = new Accumulator(NETWORK);
+        accumulator.refresh(board);
+        return accumulator;
+    }
+
+    @Test
+    public void testIncrementalAccumulatorInRandomGames() {
+        Random random = new Random(13);
+        for(int game = 0; game < 10; game++) {
+            BitBoard board = BitBoard.fromFen(Perft.Position.values()[game % Perft.Position.values().length].fen);
+            board.setNetwork(NETWORK);
+            Accumulator start = board.getAccumulator().copy();
+            MoveList moves = new MoveList();
+            for(int ply = 0; ply < 100; ply++) {
+                moves.clear();
+                board.generateMoves(moves);
+                if(moves.isEmpty())
+                    break;
+                board.makeMove(moves.get(random.nextInt(moves.size())));
+                assertTrue(board.getAccumulator().matches(refreshed(board)));
+                // A copy keeps its own accumulator
+                assertTrue(board.copy().getAccumulator().matches(refreshed(board)));
+                assertNotSame(board.getAccumulator(), board.copy().getAccumulator());
+            }
+            while(board.getUndoSize() > 0)
+                board.unmakeMove();
+            assertTrue(board.getAccumulator().matches(start));
+        }
+    }
+
+    @Test
+    public void testMirroredPositionsScoreTheSame() {
+        // Both sides see the board from their own side, so swapping the colours does not change the score of the side
+        // to move
+        BitBoard board = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        BitBoard mirrored = BitBoard.fromFen(EvaluationTest.mirror(Perft.Position.KIWIPETE.fen));
+        board.setNetwork(NETWORK);
+        mirrored.setNetwork(NETWORK);
+        assertEquals(NETWORK.evaluate(board.getAccumulator(), board.getSideToMove()),
+                NETWORK.evaluate(mirrored.getAccumulator(), mirrored.getSideToMove()));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path file = Files.createTempFile("network", ".nnue");
+        try {
+            NETWORK.save(file);
+            Network loaded = Network.load(file);
+            assertEquals(NETWORK.getHiddenSize(), loaded.getHiddenSize());
+            BitBoard board = BitBoard.fromFen(Perft.Position.POSITION_5.fen);
+            board.setNetwork(NETWORK);
+            int score = NETWORK.evaluate(board.getAccumulator(), board.getSideToMove());
+            board.setNetwork(loaded);
+            assertEquals(score, loaded.evaluate(board.getAccumulator(), board.getSideToMove()));
+
+            Files.write(file, new byte[] {'N', 'N', 'U', 'E', 2, 0, 0, 0});
+            try {
+                Network.load(file);
+                fail("A truncated file is not a network");
+            } catch (IOException expected) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSearchWithNetwork() {
+        ChessAI ai = new ChessAI("WHITE");
+        ai.setNetwork(NETWORK);
+        BitBoard position = BitBoard.fromFen("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1");
+        assertEquals("d1d8", PackedMove.toString(ai.findMove(position, SearchLimits.depth(4))));
+        // The position searched is left without an accumulator
+        assertNull(position.getAccumulator());
+    }
+}
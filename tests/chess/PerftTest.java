@@ -0,0 +1,41 @@
+package chess;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PerftTest {
+
+    @Test
+    public void testStandardPositions() {
+        Perft perft = new Perft();
+        for(Perft.Position position : Perft.Position.values()) {
+            int depth = position == Perft.Position.POSITION_3 ? 4 : 3;
+            assertEquals(position.toString(), position.expected(depth), perft.perft(BitBoard.fromFen(position.fen), depth));
+        }
+    }
+
+    @Test
+    public void testParallelWithHashTable() {
+        Perft perft = new Perft(4, 4);
+        BitBoard board = BitBoard.fromFen(Perft.Position.KIWIPETE.fen);
+        assertEquals(Perft.Position.KIWIPETE.expected(3), perft.perft(board, 3));
+        // Same result from the hash table
+        assertEquals(Perft.Position.KIWIPETE.expected(3), perft.perft(board, 3));
+        assertEquals(Perft.Position.KIWIPETE.fen, board.toFen());
+        perft.shutdown();
+    }
+
+    @Test
+    public void testDivide() {
+        Map<String, Long> divide = new Perft().divide(new BitBoard(), 2);
+        assertEquals(20, divide.size());
+        assertEquals(Long.valueOf(20), divide.get("e2e4"));
+        long total = 0;
+        for(long nodes : divide.values())
+            total += nodes;
+        assertEquals(400, total);
+    }
+}
@@ -0,0 +1,61 @@
+package chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SEETest {
+
+    private static int see(String fen, String move) {
+        BitBoard board = BitBoard.fromFen(fen);
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        for(int k = 0; k < moves.size(); k++)
+            if(PackedMove.toString(moves.get(k)).equals(move))
+                return board.see(moves.get(k));
+        throw new AssertionError("No move " + move + " in " + fen);
+    }
+
+    @Test
+    public void testSimpleCaptures() {
+        // Undefended pawn
+        assertEquals(100, see("4k3/8/8/3p4/4P3/8/8/4K3 w - - 0 1", "e4d5"));
+        // Pawn for pawn
+        assertEquals(0, see("4k3/8/4p3/3p4/4P3/8/8/4K3 w - - 0 1", "e4d5"));
+        // Queen for a defended pawn
+        assertEquals(-800, see("4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1", "d1d5"));
+        // Capturing with the king is only possible on an undefended square
+        assertEquals(100, see("4k3/8/8/8/8/8/3p4/4K3 w - - 0 1", "e1d2"));
+    }
+
+    @Test
+    public void testXRays() {
+        // The rook on d1 backs up the one on d2, so black does not gain by recapturing
+        assertEquals(100, see("4k3/3r4/8/3p4/8/8/3R4/3RK3 w - - 0 1", "d2d5"));
+        // The queen behind the black rook wins the exchange
+        assertEquals(-400, see("3qk3/3r4/8/3p4/8/8/3R4/3RK3 w - - 0 1", "d2d5"));
+        assertEquals(100, see("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1", "e1e5"));
+        assertEquals(-200, see("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1", "d3e5"));
+    }
+
+    @Test
+    public void testSpecialMoves() {
+        // The pawn captured en passant is not on the destination square
+        assertEquals(100, see("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6"));
+        // A promotion that is recaptured wins the rook for the pawn
+        assertEquals(400, see("3rk3/2P5/8/8/8/8/8/4K3 w - - 0 1", "c7d8q"));
+        assertEquals(-100, see("2r1k3/3P4/8/8/8/8/8/4K3 w - - 0 1", "d7d8q"));
+    }
+
+    @Test
+    public void testLosingCapturesOrderedLast() {
+        BitBoard board = BitBoard.fromFen("4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1");
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        int[] scores = new int[moves.size()];
+        new MoveOrdering(4).score(board, moves, scores, PackedMove.NULL_MOVE, 0, PackedMove.NULL_MOVE);
+        for(int k = 0; k < moves.size(); k++)
+            MoveOrdering.next(moves, scores, k);
+        assertEquals("d1d5", PackedMove.toString(moves.get(moves.size() - 1)));
+    }
+}
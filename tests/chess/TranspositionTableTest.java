@@ -0,0 +1,77 @@
+package chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        BitBoard board = new BitBoard();
+        MoveList moves = new MoveList();
+        board.generateMoves(moves);
+        long key = board.getKey();
+
+        assertEquals(0, table.probe(key));
+        table.store(key, moves.get(3), -125, 6, TranspositionTable.BOUND_LOWER);
+        long entry = table.probe(key);
+        assertNotEquals(0, entry);
+        assertEquals(moves.get(3), TranspositionTable.move(entry));
+        assertEquals(-125, TranspositionTable.score(entry));
+        assertEquals(6, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.BOUND_LOWER, TranspositionTable.bound(entry));
+
+        // Storing the same position again replaces the entry and keeps the move when the new result has none
+        table.store(key, PackedMove.NULL_MOVE, 40000, 7, TranspositionTable.BOUND_EXACT);
+        entry = table.probe(key);
+        assertEquals(moves.get(3), TranspositionTable.move(entry));
+        assertEquals(32767, TranspositionTable.score(entry));
+        assertEquals(7, TranspositionTable.depth(entry));
+        assertEquals(2, table.getHits());
+        assertEquals(3, table.getProbes());
+    }
+
+    @Test
+    public void testFullBucketReplacesShallowestEntry() {
+        TranspositionTable table = new TranspositionTable(1);
+        // Keys with the same upper half fall into the same bucket
+        long base = 0x1234567800000000L;
+        for(int k = 1; k <= TranspositionTable.ENTRIES_PER_BUCKET; k++)
+            table.store(base + k, PackedMove.NULL_MOVE, k, 10 + k, TranspositionTable.BOUND_EXACT);
+        table.store(base + 100, PackedMove.NULL_MOVE, 0, 20, TranspositionTable.BOUND_EXACT);
+
+        assertEquals(0, table.probe(base + 1));
+        for(int k = 2; k <= TranspositionTable.ENTRIES_PER_BUCKET; k++)
+            assertEquals(k, TranspositionTable.score(table.probe(base + k)));
+        assertNotEquals(0, table.probe(base + 100));
+        assertEquals(1, table.getCollisions());
+
+        // Entries of an older search go first, even when they are deeper
+        table.newSearch();
+        table.store(base + 200, PackedMove.NULL_MOVE, 0, 1, TranspositionTable.BOUND_EXACT);
+        assertNotEquals(0, table.probe(base + 200));
+        assertEquals(0, table.probe(base + 2));
+    }
+
+    @Test
+    public void testTornEntryReadsAsMiss() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 0x0F0F0F0F12345678L;
+        table.store(key, PackedMove.NULL_MOVE, 50, 3, TranspositionTable.BOUND_UPPER);
+        assertEquals(0, table.probe(key ^ 1));
+        table.clear();
+        assertEquals(0, table.probe(key));
+        assertEquals(0, table.getFillRate(), 0);
+    }
+
+    @Test
+    public void testSearchUsesTable() {
+        ChessAI ai = new ChessAI("BLACK");
+        ai.setBoard(new Board());
+        int move = ai.findMove(SearchLimits.depth(5));
+        assertNotEquals(PackedMove.NULL_MOVE, move);
+        assertTrue(ai.getTranspositionTable().getHits() > 0);
+    }
+}
@@ -0,0 +1,86 @@
+package chess;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TunerTest {
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 [0.5]",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1 \"1/2-1/2\";",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1 0-1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1 1-0",
+            "4k3/8/8/3q4/8/8/3PP3/4K3 b - - 0 1 [0.0]",
+            "4k3/pp6/8/8/8/8/PPP5/4K3 w - - 0 1 [1.0]",
+            "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3 0-1",
+    };
+
+    private static double[] weights() {
+        return Arrays.stream(Evaluation.getWeights()).asDoubleStream().toArray();
+    }
+
+    private static Tuner load(int threads) throws IOException {
+        Path file = Files.createTempFile("positions", ".txt");
+        try {
+            Files.write(file, List.of(POSITIONS));
+            Tuner tuner = new Tuner(threads);
+            // The last position is checkmate, so it is skipped
+            assertEquals(POSITIONS.length - 1, tuner.load(file));
+            return tuner;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParseResult() {
+        assertEquals(1, Tuner.parseResult("8/8/8/8/8/8/8/8 w - - c9 \"1-0\";"), 0);
+        assertEquals(0.5, Tuner.parseResult("8/8/8/8/8/8/8/8 w - - 0 1 1/2-1/2"), 0);
+        assertEquals(0, Tuner.parseResult("8/8/8/8/8/8/8/8 w - - 0 1 [0.0]"), 0);
+        assertTrue(Double.isNaN(Tuner.parseResult("8/8/8/8/8/8/8/8 w - - 0 1")));
+    }
+
+    @Test
+    public void testLinearModelMatchesEvaluation() {
+        // Positions without captures are their own quiet position, so the model must give the evaluation back
+        Tuner tuner = new Tuner(1);
+        double[] weights = weights();
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard board = BitBoard.fromFen(position.fen);
+            MoveList captures = new MoveList();
+            board.generateCaptures(captures);
+            if(board.isCheck() || !captures.isEmpty())
+                continue;
+            assertTrue(tuner.addPosition(board, 0.5));
+            int expected = Evaluation.evaluate(board) * (board.getSideToMove() == BitBoard.WHITE ? 1 : -1);
+            assertEquals(position.name(), expected, tuner.evaluate(tuner.size() - 1, weights), 1);
+        }
+        assertTrue(tuner.size() > 0);
+        tuner.shutdown();
+    }
+
+    @Test
+    public void testErrorIsTheSameOnAnyNumberOfThreads() throws IOException {
+        Tuner single = load(1), parallel = load(4);
+        assertEquals(single.error(weights()), parallel.error(weights()), 1e-12);
+        single.shutdown();
+        parallel.shutdown();
+    }
+
+    @Test
+    public void testTuningReducesTheError() throws IOException {
+        Tuner tuner = load(2);
+        double[] weights = weights();
+        tuner.fitScale(weights);
+        double before = tuner.error(weights);
+        double after = tuner.error(tuner.tune(weights, 20));
+        assertTrue(after + " < " + before, after < before);
+        tuner.shutdown();
+    }
+}
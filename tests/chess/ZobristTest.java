@@ -0,0 +1,98 @@
+package chess;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ZobristTest {
+
+    @Before
+    public void enableDebug() {
+        Zobrist.debug = true;
+    }
+
+    @After
+    public void disableDebug() {
+        Zobrist.debug = false;
+    }
+
+    @Test
+    public void testSameKeyOnEveryBoard() {
+        Board board = new Board();
+        LightBoard lightBoard = new LightBoard(board);
+        BitBoard bitBoard = new BitBoard(board);
+        assertEquals(bitBoard.getKey(), board.getKey());
+        assertEquals(bitBoard.getKey(), lightBoard.getKey());
+
+        // 1. e4 e5 2. Nf3
+        int[][] moves = {{1, 4, 3, 4}, {6, 4, 4, 4}, {0, 6, 2, 5}};
+        for(int[] move : moves) {
+            board.movePiece(move[0], move[1], move[2], move[3], board.getPiece(move[0], move[1]));
+            lightBoard.makeMove(move[0], move[1], move[2], move[3]);
+            bitBoard.makeMove(move[0], move[1], move[2], move[3]);
+            assertEquals(bitBoard.getKey(), board.getKey());
+            assertEquals(bitBoard.getKey(), lightBoard.getKey());
+        }
+        assertEquals(new BitBoard(board), bitBoard);
+        assertEquals(Zobrist.compute(bitBoard), new BitBoard(board).getKey());
+    }
+
+    @Test
+    public void testKeyOfNewBoards() {
+        // The constructors hash the pieces as they add them and only add the side, castling and en passant terms
+        for(Perft.Position position : Perft.Position.values()) {
+            BitBoard board = BitBoard.fromFen(position.fen);
+            assertEquals(position.name(), Zobrist.compute(board), board.getKey());
+        }
+        BitBoard enPassant = BitBoard.fromFen("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1");
+        assertEquals(Zobrist.compute(enPassant), enPassant.getKey());
+        // The same position from a matrix, lowercase for white
+        char[][] matrix = new char[8][8];
+        for(char[] row : matrix)
+            Arrays.fill(row, ' ');
+        matrix[0][4] = 'k';
+        matrix[4][4] = 'p';
+        matrix[4][3] = 'P';
+        matrix[7][4] = 'K';
+        BitBoard fromMatrix = new BitBoard(matrix, PieceColour.WHITE, 0, enPassant.getEnPassantSquare());
+        assertEquals(enPassant.getKey(), fromMatrix.getKey());
+    }
+
+    @Test
+    public void testTranspositionsHaveEqualKeys() {
+        LightBoard a = new LightBoard();
+        a.makeMove(0, 6, 2, 5);
+        a.makeMove(7, 6, 5, 5);
+        a.makeMove(0, 1, 2, 2);
+        LightBoard b = new LightBoard();
+        b.makeMove(0, 1, 2, 2);
+        b.makeMove(7, 6, 5, 5);
+        b.makeMove(0, 6, 2, 5);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        a.makeMove(5, 5, 7, 6);
+        assertNotEquals(a, b);
+    }
+
+    @Test
+    public void testIncrementalKeyInRandomGames() {
+        Random random = new Random(3);
+        for(int game = 0; game < 10; game++) {
+            LightBoard lightBoard = new LightBoard();
+            for(int ply = 0; ply < 100; ply++) {
+                ArrayList<int[]> moves = lightBoard.getAllLegalMoves();
+                if(moves.isEmpty())
+                    break;
+                int[] move = moves.get(random.nextInt(moves.size()));
+                // makeMove throws if the incremental key differs from a full recomputation
+                lightBoard.makeMove(move[0], move[1], move[2], move[3]);
+            }
+        }
+    }
+}